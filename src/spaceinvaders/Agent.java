@@ -0,0 +1,33 @@
+package spaceinvaders;
+
+/**
+ * A player that drives the ship of a headless world, e.g. a bot being
+ * evaluated by the {@link BatchRunner}.
+ *
+ * Before each step the agent observes the world and sets the controls for
+ * that step. The world is passed so that agents can read whatever they
+ * need from it without it being copied; an agent must only read it.
+ */
+public interface Agent {
+
+    /**
+     * Choose the controls for the next step
+     *
+     * @param world The world to observe, which must not be changed
+     * @param input The controls to set for the step
+     */
+    void act(GameWorld world, InputState input);
+
+    /**
+     * Creates an agent for each independent game, so agents may keep state
+     * without being shared between threads
+     */
+    interface Factory {
+
+        /**
+         * @param seed The seed for any randomness the agent uses
+         * @return A new agent
+         */
+        Agent create(long seed);
+    }
+}
@@ -0,0 +1,424 @@
+package spaceinvaders;
+
+/**
+ * The block of space invader aliens, held as a single aggregate rather than
+ * one entity per alien. Every alien in the formation moves together, so the
+ * formation keeps one origin and one horizontal speed, and which aliens are
+ * still alive is a bitmask over the rows and columns of the grid.
+ *
+ * Moving the formation, reversing it at the edge of the screen and speeding
+ * it up as aliens die are all O(1) whatever its size. A shot is tested
+ * against the formation by working out which grid cells it overlaps from
+ * the origin and spacing, so only the one or two aliens it could touch are
+ * ever compared.
+ *
+ * Each column keeps its bottom-most living alien as its shooter, and each
+ * alien is linked to the next living alien up and down its column, so
+ * passing on the right to shoot when a shooter dies is O(1). The columns are
+ * evenly spaced and so already sorted by x, finding the shooters above a
+ * point is a division rather than a search.
+ *
+ * Aliens are identified by their index in the grid, row * columns + column.
+ */
+public class AlienFormation {
+
+    /**
+     * The time each frame of the aliens' animation is shown for (ms)
+     */
+    private static final int FRAME_TIME = 100;
+
+    /**
+     * The game in which the formation exists
+     */
+    private final GameWorld game;
+    /**
+     * The size of the grid
+     */
+    private final int rows, columns;
+    /**
+     * The distance between neighbouring aliens
+     */
+    private final int spacingX, spacingY;
+    /**
+     * The location of the alien at row 0, column 0, alive or not
+     */
+    private double x, y;
+    /**
+     * The origin at the start of the last step
+     */
+    private double previousX, previousY;
+    /**
+     * The speed at which the formation moves horizontally (pixels/sec)
+     */
+    private double dx;
+    /**
+     * A bit for each alien in the grid, set while the alien is alive
+     */
+    private final long[] alive;
+    /**
+     * The index of the alien allowed to shoot in each column, -1 once the
+     * column has been destroyed
+     */
+    private final int[] shooters;
+    /**
+     * The index of the next living alien up and down the column from each
+     * alien, -1 if there is none
+     */
+    private final int[] above, below;
+    /**
+     * The number of aliens alive
+     */
+    private int aliveCount;
+    /**
+     * The number of aliens alive in each column and each row
+     */
+    private final int[] columnCounts, rowCounts;
+    /**
+     * The first and last columns and the last row with an alien alive
+     */
+    private int firstColumn, lastColumn, lastRow;
+    /**
+     * The sprite currently shown for every alien
+     */
+    private Sprite sprite;
+
+    /**
+     * Create a full formation of aliens, the bottom row allowed to shoot
+     *
+     * @param game The game in which the formation is being created
+     * @param ref The sprite which should be displayed for the aliens
+     * @param altRef The sprite the aliens' animation alternates with
+     * @param rows The number of rows of aliens
+     * @param columns The number of aliens in each row
+     * @param x The initial x location of the top left alien
+     * @param y The initial y location of the top left alien
+     * @param spacingX The distance between neighbouring columns
+     * @param spacingY The distance between neighbouring rows
+     * @param speed The initial horizontal speed, moving left (pixels/sec)
+     */
+    public AlienFormation(GameWorld game, String ref, String altRef, int rows, int columns,
+            int x, int y, int spacingX, int spacingY, double speed) {
+        this.game = game;
+        this.rows = rows;
+        this.columns = columns;
+        this.spacingX = spacingX;
+        this.spacingY = spacingY;
+        this.x = previousX = x;
+        this.y = previousY = y;
+        this.dx = -speed;
+
+        int size = rows * columns;
+        alive = new long[(size + 63) >>> 6];
+        shooters = new int[columns];
+        above = new int[size];
+        below = new int[size];
+        columnCounts = new int[columns];
+        rowCounts = new int[rows];
+
+        for (int i = 0; i < size; i++) {
+            alive[i >>> 6] |= 1L << i;
+            above[i] = i >= columns ? i - columns : -1;
+            below[i] = i + columns < size ? i + columns : -1;
+        }
+        for (int column = 0; column < columns; column++) {
+            shooters[column] = (rows - 1) * columns + column;
+            columnCounts[column] = rows;
+        }
+        for (int row = 0; row < rows; row++) {
+            rowCounts[row] = columns;
+        }
+
+        aliveCount = rows * columns;
+        firstColumn = 0;
+        lastColumn = columns - 1;
+        lastRow = rows - 1;
+
+        animate(SpriteStore.get().getSprite(ref), SpriteStore.get().getSprite(altRef));
+    }
+
+    /**
+     * Swap every alien between two frames, the first frame is shown for
+     * two periods before the swapping starts
+     */
+    private void animate(final Sprite frame, final Sprite altFrame) {
+        sprite = frame;
+
+        game.getTimers().scheduleRepeating(FRAME_TIME, FRAME_TIME, new Runnable() {
+            private boolean stepper = false;
+
+            @Override
+            public void run() {
+                stepper = !stepper;
+                sprite = stepper ? frame : altFrame;
+            }
+        });
+    }
+
+    /**
+     * Record the current origin as the previous one, called at the start of
+     * each simulation step
+     */
+    void savePrevious() {
+        previousX = x;
+        previousY = y;
+    }
+
+    /**
+     * Move the formation based on time elapsed, requesting a logic update if
+     * its outermost aliens have reached the side of the screen
+     *
+     * @param delta The time that has elapsed since last move (ms)
+     */
+    public void move(long delta) {
+        if (aliveCount > 0) {
+            // if we have reached the left hand side of the screen and
+            // are moving left then request a logic update
+            if ((dx < 0) && (x + firstColumn * spacingX < 10)) {
+                game.updateLogic();
+            }
+            // and vice vesa, if we have reached the right hand side of
+            // the screen and are moving right, request a logic update
+            if ((dx > 0) && (x + lastColumn * spacingX > 750)) {
+                game.updateLogic();
+            }
+        }
+
+        // proceed with normal move
+        x += (delta * dx) / 1000;
+    }
+
+    /**
+     * Update the game logic related to the aliens, swapping their direction
+     * and moving them down the screen a bit
+     */
+    public void doLogic() {
+        dx = -dx;
+        y += 10;
+
+        // if we've reached the bottom of the screen then the player
+        // dies
+        if (aliveCount > 0 && y + lastRow * spacingY > 570) {
+            game.notifyDeath();
+        }
+    }
+
+    /**
+     * Speed up every alien in the formation
+     *
+     * @param factor The factor to multiply the speed by
+     */
+    public void speedUp(double factor) {
+        dx *= factor;
+    }
+
+    /**
+     * Find the first alien, in row order, hit by a sprite. Only the grid
+     * cells the sprite's bounds could reach are checked, and when the
+     * world's collisions are pixel accurate an alien whose bounds overlap
+     * is only hit if their opaque pixels do.
+     *
+     * @param hx The x location of the sprite
+     * @param hy The y location of the sprite
+     * @param hitter The sprite that may hit an alien
+     * @return The index of the alien hit, or -1 if none
+     */
+    public int findHit(int hx, int hy, Sprite hitter) {
+        if (aliveCount == 0) {
+            return -1;
+        }
+
+        int width = hitter.getWidth(), height = hitter.getHeight();
+        int alienWidth = sprite.getWidth(), alienHeight = sprite.getHeight();
+        boolean pixels = game.isPixelCollisions();
+
+        // the cells the rectangle could reach, widened by a cell either way
+        // to allow for rounding, the exact test below rejects the extras
+        int minColumn = Math.max(firstColumn, (int) Math.floor((hx - alienWidth - x) / spacingX));
+        int maxColumn = Math.min(lastColumn, (int) Math.floor((hx + width - x) / spacingX) + 1);
+        int minRow = Math.max(0, (int) Math.floor((hy - alienHeight - y) / spacingY));
+        int maxRow = Math.min(lastRow, (int) Math.floor((hy + height - y) / spacingY) + 1);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int alien = row * columns + column;
+
+                if (!isAlive(alien)) {
+                    continue;
+                }
+
+                int alienX = (int) (x + column * spacingX);
+                int alienY = (int) (y + row * spacingY);
+
+                if (alienX < hx + width && hx < alienX + alienWidth
+                        && alienY < hy + height && hy < alienY + alienHeight
+                        && (!pixels || sprite.getMask().overlaps(hitter.getMask(), hx - alienX, hy - alienY))) {
+                    return alien;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Remove an alien from the formation
+     *
+     * @param alien The index of the alien to remove
+     * @return True if the alien was allowed to shoot
+     */
+    public boolean kill(int alien) {
+        int row = alien / columns, column = alien % columns;
+        boolean shooter = shooters[column] == alien;
+
+        alive[alien >>> 6] &= ~(1L << alien);
+        aliveCount--;
+
+        // unlink the alien from its column, it's still linked to its
+        // neighbours so that its shot can be passed on
+        if (above[alien] >= 0) {
+            below[above[alien]] = below[alien];
+        }
+        if (below[alien] >= 0) {
+            above[below[alien]] = above[alien];
+        }
+        columnCounts[column]--;
+        rowCounts[row]--;
+
+        // shrink the bounds of the aliens still alive, each column and row
+        // is only passed over once as the formation is destroyed
+        while (firstColumn < lastColumn && columnCounts[firstColumn] == 0) {
+            firstColumn++;
+        }
+        while (lastColumn > firstColumn && columnCounts[lastColumn] == 0) {
+            lastColumn--;
+        }
+        while (lastRow > 0 && rowCounts[lastRow] == 0) {
+            lastRow--;
+        }
+
+        return shooter;
+    }
+
+    /**
+     * Leave the shooting capabilities of an alien that has just died to the
+     * next living alien up its column, which becomes the column's
+     * bottom-most alien
+     *
+     * @param from The index of the alien that has died
+     */
+    public void transferShotPower(int from) {
+        shooters[from % columns] = above[from];
+    }
+
+    /**
+     * Copy the formation's location, sprite and alive aliens into a
+     * snapshot for drawing
+     *
+     * @param snapshot The snapshot to copy into
+     */
+    void capture(WorldSnapshot snapshot) {
+        snapshot.formationSprite = sprite;
+        snapshot.formationPX = previousX;
+        snapshot.formationPY = previousY;
+        snapshot.formationX = x;
+        snapshot.formationY = y;
+        snapshot.columns = columns;
+        snapshot.spacingX = spacingX;
+        snapshot.spacingY = spacingY;
+
+        if (snapshot.alive.length != alive.length) {
+            snapshot.alive = new long[alive.length];
+        }
+        System.arraycopy(alive, 0, snapshot.alive, 0, alive.length);
+    }
+
+    /**
+     * @param alien The index of an alien
+     * @return True if the alien is alive
+     */
+    public boolean isAlive(int alien) {
+        return (alive[alien >>> 6] & (1L << alien)) != 0;
+    }
+
+    /**
+     * @param column The column to look up
+     * @return The index of the alien allowed to shoot in the column, or -1
+     * if the column has been destroyed
+     */
+    public int getShooter(int column) {
+        return shooters[column];
+    }
+
+    /**
+     * Find the first column whose aliens could reach past a given x
+     * location. Columns before it lie entirely to its left.
+     *
+     * @param hx The x location
+     * @return The first column that could reach past the location, which
+     * may be past the last column
+     */
+    public int getFirstColumnOver(int hx) {
+        int column = (int) Math.floor((hx - sprite.getWidth() - x) / spacingX);
+
+        return Math.max(firstColumn, column);
+    }
+
+    /**
+     * @param column The column to look up
+     * @return The x location of the aliens in the column
+     */
+    public int getColumnX(int column) {
+        return (int) (x + column * spacingX);
+    }
+
+    /**
+     * @param alien The index of an alien
+     * @return The x location of the alien
+     */
+    public int getX(int alien) {
+        return getColumnX(alien % columns);
+    }
+
+    /**
+     * @param alien The index of an alien
+     * @return The y location of the alien
+     */
+    public int getY(int alien) {
+        return (int) (y + (alien / columns) * spacingY);
+    }
+
+    /**
+     * @return The sprite currently shown for every alien
+     */
+    public Sprite getSprite() {
+        return sprite;
+    }
+
+    /**
+     * @return The horizontal speed of the formation (pixels/sec)
+     */
+    public double getHorizontalMovement() {
+        return dx;
+    }
+
+    /**
+     * @return The number of aliens alive
+     */
+    public int getAliveCount() {
+        return aliveCount;
+    }
+
+    /**
+     * @return The number of rows in the grid
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of columns in the grid
+     */
+    public int getColumns() {
+        return columns;
+    }
+}
@@ -0,0 +1,264 @@
+package spaceinvaders;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Loads the images of a manifest in parallel, one task per image spread
+ * over a pool of threads, into ARGB pixels. Images found in a
+ * {@link DecodedImageCache} are copied from it rather than decoded, and
+ * images that had to be decoded are added to it.
+ */
+public class AssetLoader {
+
+    /**
+     * An image that has been loaded
+     */
+    public static class Asset {
+
+        final String ref;
+        final int width, height;
+        /**
+         * The ARGB pixels of the image, row by row
+         */
+        final int[] pixels;
+        /**
+         * The time taken to read and decode the image, or copy it from the
+         * cache (ns)
+         */
+        final long nanos;
+        /**
+         * True if the image came from the cache
+         */
+        final boolean cached;
+
+        Asset(String ref, int width, int height, int[] pixels, long nanos, boolean cached) {
+            this.ref = ref;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.nanos = nanos;
+            this.cached = cached;
+        }
+
+        /**
+         * @return A buffered image over the pixels, which it shares rather
+         * than copies, laid out as {@link BufferedImage#TYPE_INT_ARGB}
+         */
+        public BufferedImage toImage() {
+            ColorModel argb = ColorModel.getRGBdefault();
+            WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+                    width, height, width, new int[] {0xff0000, 0xff00, 0xff, 0xff000000}, null);
+
+            return new BufferedImage(argb, raster, false, null);
+        }
+
+        public String getRef() {
+            return ref;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+    }
+
+    /**
+     * The timings of a load
+     */
+    public static class Report {
+
+        /**
+         * The images loaded, in manifest order
+         */
+        final List<Asset> assets = new ArrayList<Asset>();
+        /**
+         * The number of threads used
+         */
+        int threads;
+        /**
+         * The time from starting the load to every image being loaded (ns)
+         */
+        long loadNanos;
+        /**
+         * The time from starting the load to every sprite being ready to
+         * draw, set by whoever turns the images into sprites (ns)
+         */
+        long readyNanos;
+
+        public List<Asset> getAssets() {
+            return assets;
+        }
+
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+
+        public long getReadyNanos() {
+            return readyNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            int cached = 0;
+            long total = 0;
+
+            for (Asset asset : assets) {
+                report.append(String.format("  %-44s %4dx%-4d %8.2f ms  %s%n", asset.ref, asset.width,
+                        asset.height, asset.nanos / 1e6, asset.cached ? "cache" : "decoded"));
+                total += asset.nanos;
+                if (asset.cached) {
+                    cached++;
+                }
+            }
+
+            return String.format("Assets ready in %.2f ms (loaded in %.2f ms on %d threads, "
+                    + "%.2f ms of work, %d of %d from cache)%n", readyNanos / 1e6, loadNanos / 1e6,
+                    threads, total / 1e6, cached, assets.size()) + report;
+        }
+    }
+
+    /**
+     * Load every image of a manifest
+     *
+     * @param refs The references of the images to load
+     * @param cache The cache of decoded images, or null for none
+     * @param threads The number of threads to load with
+     * @return The loaded images and their timings
+     * @throws IOException Indicates an image couldn't be found or decoded
+     */
+    public static Report load(List<String> refs, final DecodedImageCache cache, int threads) throws IOException {
+        long start = System.nanoTime();
+        Report report = new Report();
+        report.threads = threads;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "AssetLoader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            List<Future<Asset>> tasks = new ArrayList<Future<Asset>>();
+
+            for (final String ref : refs) {
+                tasks.add(executor.submit(new Callable<Asset>() {
+                    public Asset call() throws IOException {
+                        return loadAsset(ref, cache);
+                    }
+                }));
+            }
+
+            for (Future<Asset> task : tasks) {
+                report.assets.add(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted loading assets", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        report.loadNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Load a single image, from the cache if it's there
+     *
+     * @param ref The reference of the image
+     * @param cache The cache of decoded images, or null for none
+     * @return The loaded image
+     * @throws IOException Indicates the image couldn't be found or decoded
+     */
+    static Asset loadAsset(String ref, DecodedImageCache cache) throws IOException {
+        long start = System.nanoTime();
+        byte[] source = readResource(ref);
+
+        CRC32 crc = new CRC32();
+        crc.update(source);
+
+        if (cache != null) {
+            DecodedImageCache.Entry entry = cache.get(ref, crc.getValue(), source.length);
+
+            if (entry != null) {
+                return new Asset(ref, entry.getWidth(), entry.getHeight(), entry.getPixels(),
+                        System.nanoTime() - start, true);
+            }
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+
+        if (image == null) {
+            throw new IOException("Can't decode ref: " + ref);
+        }
+
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        if (cache != null) {
+            cache.put(ref, crc.getValue(), source.length, width, height, pixels);
+        }
+
+        return new Asset(ref, width, height, pixels, System.nanoTime() - start, false);
+    }
+
+    private static byte[] readResource(String ref) throws IOException {
+        InputStream in = AssetLoader.class.getResourceAsStream(ref);
+
+        if (in == null) {
+            throw new IOException("Can't find ref: " + ref);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package spaceinvaders;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The list of images the game uses, read from {@code assets/manifest.txt}
+ * so that they can all be loaded together at startup rather than when
+ * first drawn.
+ *
+ * Each line of the manifest names the kind of asset, {@code atlas} for a
+ * small sprite packed into the sprite atlas or {@code image} for a large
+ * image loaded on its own, followed by its reference. Blank lines and
+ * lines starting with # are ignored.
+ */
+public class AssetManifest {
+
+    /**
+     * The reference of the game's manifest
+     */
+    public static final String DEFAULT = "assets/manifest.txt";
+
+    /**
+     * The references of the sprites packed into the atlas, back to front
+     */
+    private final List<String> atlasRefs = new ArrayList<String>();
+    /**
+     * The references of the images loaded on their own
+     */
+    private final List<String> imageRefs = new ArrayList<String>();
+
+    /**
+     * Read a manifest from the resources
+     *
+     * @param ref The reference to the manifest
+     * @return The manifest read
+     * @throws IOException Indicates the manifest is missing or malformed
+     */
+    public static AssetManifest load(String ref) throws IOException {
+        InputStream in = AssetManifest.class.getResourceAsStream(ref);
+
+        if (in == null) {
+            throw new IOException("Can't find manifest: " + ref);
+        }
+
+        AssetManifest manifest = new AssetManifest();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+
+        try {
+            String line;
+            int number = 0;
+
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\\s+");
+
+                if (parts.length != 2) {
+                    throw new IOException(ref + ":" + number + ": expected a kind and a reference");
+                }
+
+                if (parts[0].equals("atlas")) {
+                    manifest.atlasRefs.add(parts[1]);
+                } else if (parts[0].equals("image")) {
+                    manifest.imageRefs.add(parts[1]);
+                } else {
+                    throw new IOException(ref + ":" + number + ": unknown kind of asset " + parts[0]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * @return The references of the sprites packed into the atlas, back to
+     * front
+     */
+    public List<String> getAtlasRefs() {
+        return Collections.unmodifiableList(atlasRefs);
+    }
+
+    /**
+     * @return The references of the images loaded on their own
+     */
+    public List<String> getImageRefs() {
+        return Collections.unmodifiableList(imageRefs);
+    }
+
+    /**
+     * @return Every reference in the manifest
+     */
+    public List<String> getAllRefs() {
+        List<String> refs = new ArrayList<String>(atlasRefs);
+        refs.addAll(imageRefs);
+        return refs;
+    }
+}
@@ -0,0 +1,355 @@
+package spaceinvaders;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays many headless games in parallel with an {@link Agent} at the
+ * controls, for evaluating bots and balancing the levels.
+ *
+ * <pre>
+ * java spaceinvaders.BatchRunner [-games n] [-threads n] [-agent random|tracker]
+ *     [-seed n] [-maxSteps n] [-gamesPerTask n]
+ * </pre>
+ *
+ * Each game is a single attempt at a level, the levels taking turns so
+ * that each is played about as often. The games are split into tasks that
+ * each step their own world on one thread, so the worlds share nothing but
+ * the read-only sprites in the {@link SpriteStore}. Every task counts its
+ * own results and the counts are only added together as the tasks are
+ * joined, so the threads never contend and the rate scales with the cores.
+ * A task's world is seeded from the batch seed and the task's index, so a
+ * batch plays out the same whatever the number of threads.
+ */
+public class BatchRunner {
+
+    /**
+     * The number of levels a game can be played on
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * The counts from a number of games
+     */
+    public static class Stats {
+
+        /**
+         * The number of games played
+         */
+        long games;
+        /**
+         * The number of steps taken over every game
+         */
+        long steps;
+        /**
+         * The number of games on each level, indexed from 1
+         */
+        long[] played = new long[LEVELS + 1];
+        /**
+         * The number of games won on each level
+         */
+        long[] won = new long[LEVELS + 1];
+        /**
+         * The number of games on each level that were neither won nor lost
+         * within the step limit
+         */
+        long[] timedOut = new long[LEVELS + 1];
+        /**
+         * The names of the entity pools, null until a world's pools have
+         * been counted
+         */
+        String[] poolNames;
+        /**
+         * The most entities each pool had in use at once in any one world
+         */
+        int[] poolHighWater;
+        /**
+         * The number of entities each pool created over every world
+         */
+        long[] poolCreated;
+        /**
+         * The wall clock time taken to play the games (ns)
+         */
+        long nanos;
+
+        /**
+         * Add the counts from other games into these
+         */
+        void add(Stats other) {
+            games += other.games;
+            steps += other.steps;
+            for (int level = 1; level <= LEVELS; level++) {
+                played[level] += other.played[level];
+                won[level] += other.won[level];
+                timedOut[level] += other.timedOut[level];
+            }
+
+            if (other.poolNames == null) {
+                return;
+            }
+            if (poolNames == null) {
+                poolNames = other.poolNames;
+                poolHighWater = new int[poolNames.length];
+                poolCreated = new long[poolNames.length];
+            }
+            for (int i = 0; i < poolNames.length; i++) {
+                poolHighWater[i] = Math.max(poolHighWater[i], other.poolHighWater[i]);
+                poolCreated[i] += other.poolCreated[i];
+            }
+        }
+
+        /**
+         * Count the entity pools of a world that has finished its games
+         */
+        void addPools(List<EntityPool<?>> pools) {
+            Stats counted = new Stats();
+
+            counted.poolNames = new String[pools.size()];
+            counted.poolHighWater = new int[pools.size()];
+            counted.poolCreated = new long[pools.size()];
+            for (int i = 0; i < pools.size(); i++) {
+                counted.poolNames[i] = pools.get(i).getName();
+                counted.poolHighWater[i] = pools.get(i).getHighWater();
+                counted.poolCreated[i] = pools.get(i).getCreated();
+            }
+            add(counted);
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        /**
+         * @param level The level, from 1 to 4
+         * @return The fraction of the games on the level that were won
+         */
+        public double getWinRate(int level) {
+            return played[level] == 0 ? 0 : won[level] / (double) played[level];
+        }
+
+        public double getGamesPerSecond() {
+            return games * 1e9 / nanos;
+        }
+
+        public double getStepsPerSecond() {
+            return steps * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * Plays a range of tasks, splitting it in half until each half is a
+     * single task
+     */
+    private class Batch extends RecursiveTask<Stats> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The range of task indices to play
+         */
+        private final int from, to;
+
+        Batch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from == 1) {
+                return playTask(from);
+            }
+
+            int middle = (from + to) >>> 1;
+            Batch left = new Batch(from, middle);
+            left.fork();
+            Stats stats = new Batch(middle, to).compute();
+            stats.add(left.join());
+
+            return stats;
+        }
+    }
+
+    /**
+     * Creates the agent for each task
+     */
+    private final Agent.Factory agents;
+    /**
+     * The seed that every world and agent is seeded from
+     */
+    private final long seed;
+    /**
+     * The number of games to play
+     */
+    private int games = 1000;
+    /**
+     * The number of consecutive games each task plays in its world
+     */
+    private int gamesPerTask = 8;
+    /**
+     * The number of steps after which a game is given up as timed out
+     */
+    private int maxSteps = 60000;
+
+    /**
+     * Create a runner
+     *
+     * @param agents Creates the agent at the controls of each task's world
+     * @param seed The seed for the worlds and agents
+     */
+    public BatchRunner(Agent.Factory agents, long seed) {
+        this.agents = agents;
+        this.seed = seed;
+    }
+
+    /**
+     * Play every game of the batch
+     *
+     * @param pool The pool to play the tasks on
+     * @return The counts from every game
+     */
+    public Stats run(ForkJoinPool pool) {
+        int tasks = (games + gamesPerTask - 1) / gamesPerTask;
+        long start = System.nanoTime();
+
+        Stats stats = tasks == 0 ? new Stats() : pool.invoke(new Batch(0, tasks));
+        stats.nanos = System.nanoTime() - start;
+
+        return stats;
+    }
+
+    /**
+     * Play one task's games one after another in a world of its own
+     *
+     * @param task The index of the task
+     * @return The counts from the task's games
+     */
+    Stats playTask(int task) {
+        GameWorld world = new GameWorld(seed + task);
+        Agent agent = agents.create(seed * 31 + task);
+        InputState input = new InputState();
+        Stats stats = new Stats();
+
+        int first = task * gamesPerTask;
+        int last = Math.min(games, first + gamesPerTask);
+
+        for (int game = first; game < last; game++) {
+            int level = game % LEVELS + 1;
+
+            world.setLevel(level);
+            world.startGame();
+            input.clear();
+
+            int steps = 0;
+            while (!world.isWaitingForKeyPress() && steps < maxSteps) {
+                agent.act(world, input);
+                world.step(SimulationLoop.DEFAULT_STEP_NANOS, input);
+                steps++;
+            }
+
+            stats.games++;
+            stats.steps += steps;
+            stats.played[level]++;
+            if (!world.isWaitingForKeyPress()) {
+                stats.timedOut[level]++;
+            } else if (world.getLevel() != level) {
+                // only winning moves the world on to another level
+                stats.won[level]++;
+            }
+        }
+        stats.addPools(world.getPools());
+
+        return stats;
+    }
+
+    public void setGames(int games) {
+        this.games = games;
+    }
+
+    public void setGamesPerTask(int gamesPerTask) {
+        this.gamesPerTask = Math.max(1, gamesPerTask);
+    }
+
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Print the rates and the outcome on each level
+     */
+    static void report(Stats stats, int threads) {
+        System.out.printf("%d games, %d steps in %.2fs on %d threads%n",
+                stats.games, stats.steps, stats.nanos / 1e9, threads);
+        System.out.printf("  %.1f games/s, %.0f steps/s%n", stats.getGamesPerSecond(), stats.getStepsPerSecond());
+
+        for (int level = 1; level <= LEVELS; level++) {
+            long played = stats.played[level];
+            long lost = played - stats.won[level] - stats.timedOut[level];
+
+            System.out.printf("  level %d: %d played, %d won, %d lost, %d timed out, win rate %.1f%%%n",
+                    level, played, stats.won[level], lost, stats.timedOut[level], 100 * stats.getWinRate(level));
+        }
+
+        if (stats.poolNames != null) {
+            for (int i = 0; i < stats.poolNames.length; i++) {
+                System.out.printf("  pool %s: high water %d, %d created%n",
+                        stats.poolNames[i], stats.poolHighWater[i], stats.poolCreated[i]);
+            }
+        }
+    }
+
+    public static void main(String argv[]) {
+        // the games never open a window
+        System.setProperty("java.awt.headless", "true");
+
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int gamesPerTask = 8;
+        int maxSteps = 60000;
+        long seed = 1;
+        Agent.Factory agents = TrackingAgent.FACTORY;
+
+        for (int i = 0; i + 1 < argv.length; i += 2) {
+            String value = argv[i + 1];
+
+            if (argv[i].equals("-games")) {
+                games = Integer.parseInt(value);
+            } else if (argv[i].equals("-threads")) {
+                threads = Integer.parseInt(value);
+            } else if (argv[i].equals("-gamesPerTask")) {
+                gamesPerTask = Integer.parseInt(value);
+            } else if (argv[i].equals("-maxSteps")) {
+                maxSteps = Integer.parseInt(value);
+            } else if (argv[i].equals("-seed")) {
+                seed = Long.parseLong(value);
+            } else if (argv[i].equals("-agent")) {
+                if (value.equals("random")) {
+                    agents = RandomAgent.FACTORY;
+                } else if (value.equals("tracker")) {
+                    agents = TrackingAgent.FACTORY;
+                } else {
+                    throw new IllegalArgumentException("Unknown agent: " + value);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + argv[i]);
+            }
+        }
+
+        BatchRunner runner = new BatchRunner(agents, seed);
+        runner.setGames(games);
+        runner.setGamesPerTask(gamesPerTask);
+        runner.setMaxSteps(maxSteps);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            report(runner.run(pool), threads);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Micro benchmarks of the game's hot paths, each run over a range of entity
+ * counts.
+ * <p>
+ * Every benchmark is warmed up and then measured over several timed
+ * iterations in the manner of JMH, reporting the average time per operation
+ * with its spread across iterations. Results are written as text, CSV, or
+ * JSON laid out like JMH's own JSON output so the runs of different engine
+ * versions can be compared by tools.
+ * <p>
+ * Run with, for example:
+ * <pre>
+ * java -cp build/classes spaceinvaders.Benchmark -sizes 30,1000,100000 -format json -out bench.json
+ * </pre>
+ * Options are -include (a regular expression matched against benchmark
+ * names), -sizes, -warmup (ms), -iterations, -time (ms per iteration),
+ * -format (text, csv or json) and -out (a file, otherwise standard out).
+ */
+public class Benchmark {
+
+    /**
+     * The entity counts benchmarks are run with unless told otherwise
+     */
+    private static final int[] DEFAULT_SIZES = {30, 300, 3000, 30000, 100000};
+
+    /**
+     * Somewhere to put the results of benchmarked code so the JIT can't
+     * remove it as dead
+     */
+    private static volatile long sink;
+
+    /**
+     * A benchmarked piece of code and the state it works on
+     */
+    abstract static class Case {
+
+        /**
+         * The name of the benchmark
+         */
+        final String name;
+        /**
+         * The largest entity count to run the benchmark with, e.g. for
+         * quadratic code
+         */
+        final int maxSize;
+        /**
+         * True if the benchmark depends on the entity count, otherwise it
+         * is only run once
+         */
+        final boolean sized;
+
+        Case(String name, int maxSize, boolean sized) {
+            this.name = name;
+            this.maxSize = maxSize;
+            this.sized = sized;
+        }
+
+        /**
+         * Build the state for a run
+         *
+         * @param size The number of entities to benchmark with
+         */
+        abstract void setUp(int size);
+
+        /**
+         * Run the benchmarked code once
+         *
+         * @return A value computed by the code
+         */
+        abstract long run();
+
+        /**
+         * @return The number of operations each run performs
+         */
+        abstract int operations();
+    }
+
+    /**
+     * The result of benchmarking one case at one size
+     */
+    static class Result {
+
+        final String name;
+        final int size;
+        /**
+         * The average time per operation in each iteration (ns)
+         */
+        final double[] iterations;
+
+        Result(String name, int size, double[] iterations) {
+            this.name = name;
+            this.size = size;
+            this.iterations = iterations;
+        }
+
+        double score() {
+            double total = 0;
+            for (double iteration : iterations) {
+                total += iteration;
+            }
+            return total / iterations.length;
+        }
+
+        /**
+         * @return The half-width of a rough 99.9% confidence interval
+         */
+        double error() {
+            if (iterations.length < 2) {
+                return Double.NaN;
+            }
+
+            double mean = score(), squares = 0;
+            for (double iteration : iterations) {
+                squares += (iteration - mean) * (iteration - mean);
+            }
+            return 3.29 * Math.sqrt(squares / (iterations.length - 1)) / Math.sqrt(iterations.length);
+        }
+    }
+
+    private long warmupMillis = 500;
+    private int iterationCount = 5;
+    private long iterationMillis = 200;
+
+    /**
+     * Benchmark a case at one size
+     *
+     * @param benchmark The case to run
+     * @param size The number of entities
+     * @return The time per operation of each measured iteration
+     */
+    Result measure(Case benchmark, int size) {
+        benchmark.setUp(size);
+
+        long result = 0;
+        long warmupEnd = System.nanoTime() + warmupMillis * 1000000L;
+
+        while (System.nanoTime() < warmupEnd) {
+            result += benchmark.run();
+        }
+
+        double[] iterations = new double[iterationCount];
+
+        for (int i = 0; i < iterationCount; i++) {
+            long start = System.nanoTime();
+            long end = start + iterationMillis * 1000000L;
+            long runs = 0, now;
+
+            do {
+                result += benchmark.run();
+                runs++;
+                now = System.nanoTime();
+            } while (now < end);
+
+            iterations[i] = (double) (now - start) / (runs * benchmark.operations());
+        }
+
+        sink += result;
+
+        return new Result(benchmark.name, benchmark.sized ? size : 0, iterations);
+    }
+
+    /**
+     * @return Every benchmark case
+     */
+    static List<Case> cases() {
+        List<Case> cases = new ArrayList<Case>();
+
+        cases.add(new Case("entity.move", Integer.MAX_VALUE, true) {
+            Entity[] entities;
+
+            void setUp(int size) {
+                EntityStore store = new EntityStore();
+                entities = shots(new GameWorld(), size);
+                for (Entity entity : entities) {
+                    store.add(entity);
+                }
+            }
+
+            long run() {
+                for (Entity entity : entities) {
+                    entity.move(10);
+                }
+                return entities.length;
+            }
+
+            int operations() {
+                return entities.length;
+            }
+        });
+
+        cases.add(new Case("archetype.move", Integer.MAX_VALUE, true) {
+            EntityStore.Archetype archetype;
+
+            void setUp(int size) {
+                EntityStore store = new EntityStore();
+                for (Entity entity : shots(new GameWorld(), size)) {
+                    store.add(entity);
+                }
+                archetype = store.archetype(CollisionLayer.PLAYER_SHOT);
+            }
+
+            long run() {
+                archetype.move(10);
+                return archetype.size();
+            }
+
+            int operations() {
+                return archetype.size();
+            }
+        });
+
+        cases.add(new Case("entity.collidesWith", Integer.MAX_VALUE, true) {
+            Entity[] entities;
+
+            void setUp(int size) {
+                entities = shots(new GameWorld(), size);
+            }
+
+            long run() {
+                long hits = 0;
+                for (int i = 0; i < entities.length; i++) {
+                    if (entities[i].collidesWith(entities[(i + 1) % entities.length])) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+
+            int operations() {
+                return entities.length;
+            }
+        });
+
+        cases.add(new Case("entity.hasTarget", Integer.MAX_VALUE, true) {
+            Entity[] entities;
+            Entity ship;
+
+            void setUp(int size) {
+                GameWorld world = new GameWorld();
+                entities = shots(world, size);
+                ship = world.getShip();
+            }
+
+            long run() {
+                long hits = 0;
+                for (Entity entity : entities) {
+                    if (entity.hasTarget(ship)) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+
+            int operations() {
+                return entities.length;
+            }
+        });
+
+        cases.add(collisionCase("world.collisions.grid", Integer.MAX_VALUE, true, true));
+        cases.add(collisionCase("world.collisions.grid.boundingBox", Integer.MAX_VALUE, true, false));
+        cases.add(collisionCase("world.collisions.bruteForce", 10000, false, true));
+
+        cases.add(new Case("spriteStore.getSprite.hit", 0, false) {
+            String[] refs = {"sprites/ship.gif", "sprites/shot.gif", "assets/drawables/meteor.gif",
+                "assets/drawables/explosion0.gif", "assets/drawables/alien_level_1.gif"};
+            int next;
+
+            void setUp(int size) {
+                for (String ref : refs) {
+                    SpriteStore.get().getSprite(ref);
+                }
+            }
+
+            long run() {
+                next = (next + 1) % refs.length;
+                return SpriteStore.get().getSprite(refs[next]).getWidth();
+            }
+
+            int operations() {
+                return 1;
+            }
+        });
+
+        cases.add(new Case("spriteStore.getSprite.miss", 0, false) {
+            void setUp(int size) {
+            }
+
+            long run() {
+                // a fresh store has nothing cached, so the image is loaded
+                return new SpriteStore().getSprite("assets/drawables/battle_round_4.jpg").getWidth();
+            }
+
+            int operations() {
+                return 1;
+            }
+        });
+
+        cases.add(new Case("world.findShooter", Integer.MAX_VALUE, true) {
+            GameWorld world;
+
+            void setUp(int size) {
+                world = formation(size);
+            }
+
+            long run() {
+                return world.findShooter() < 0 ? 0 : 1;
+            }
+
+            int operations() {
+                return 1;
+            }
+        });
+
+        cases.add(new Case("world.transferShotPower", Integer.MAX_VALUE, true) {
+            AlienFormation formation;
+            int next;
+
+            void setUp(int size) {
+                formation = formation(size).getFormation();
+            }
+
+            long run() {
+                next = (next + 1) % (formation.getRows() * formation.getColumns());
+                formation.transferShotPower(next);
+                return next;
+            }
+
+            int operations() {
+                return 1;
+            }
+        });
+
+        cases.add(renderCase("render.java2d", 0));
+        cases.add(renderCase("render.software", 1));
+        cases.add(renderCase("render.software.parallel", Runtime.getRuntime().availableProcessors()));
+
+        return cases;
+    }
+
+    /**
+     * A benchmark of composing one frame of a world full of shots, meteors
+     * and explosions into an offscreen image
+     *
+     * @param threads The number of threads to write the pixels directly
+     * with, or 0 to draw through Java2D
+     */
+    private static Case renderCase(String name, final int threads) {
+        return new Case(name, Integer.MAX_VALUE, true) {
+            ImageBackend backend;
+            RenderCompositor compositor;
+            WorldSnapshot snapshot;
+
+            void setUp(int size) {
+                GameWorld world = new GameWorld();
+                world.startGame();
+
+                Random random = new Random(size);
+                for (int i = 0; i < size; i++) {
+                    int x = random.nextInt(GameWorld.WIDTH), y = random.nextInt(GameWorld.HEIGHT);
+
+                    if (i % 10 == 0) {
+                        world.postSpawn(new MeteorEntity(world, x, y));
+                    } else if (i % 10 == 1) {
+                        world.createExplosionAt(x, y);
+                    } else {
+                        world.postSpawn(new ShotEntity(world, "sprites/shot.gif", x, y));
+                    }
+                }
+                world.step(0, new InputState());
+
+                snapshot = new WorldSnapshot();
+                snapshot.capture(world);
+                backend = new ImageBackend(BufferedImage.TYPE_INT_RGB);
+                if (compositor != null) {
+                    compositor.setSoftwareRendering(0);
+                }
+                compositor = new RenderCompositor(backend.getConfiguration());
+                compositor.setSoftwareRendering(threads);
+            }
+
+            long run() {
+                Graphics2D g = backend.getDrawGraphics();
+                compositor.render(g, snapshot, 0.5);
+                g.dispose();
+                return snapshot.getCount();
+            }
+
+            int operations() {
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * A benchmark of one collision pass over a world of shots and meteors
+     *
+     * @param pixels True if collisions should be pixel accurate
+     */
+    private static Case collisionCase(String name, int maxSize, final boolean grid, final boolean pixels) {
+        return new Case(name, maxSize, true) {
+            GameWorld world;
+            int size;
+
+            void setUp(int size) {
+                this.size = size;
+                world = new GameWorld();
+                world.setGridCollisions(grid);
+
+                // a storm of alien shots with a meteor in every 50 entities,
+                // kept above the ship so they only hit each other
+                Random random = new Random(size);
+                for (int i = 0; i < size; i++) {
+                    int x = random.nextInt(GameWorld.WIDTH), y = random.nextInt(450);
+
+                    if (i % 50 == 0) {
+                        world.postSpawn(new MeteorEntity(world, x, y));
+                    } else {
+                        ShotEntity shot = new ShotEntity(world, "assets/drawables/alien_shot.gif", x, y);
+
+                        shot.setCollisionLayer(CollisionLayer.ALIEN_SHOT);
+                        world.postSpawn(shot);
+                    }
+                }
+                world.step(0, new InputState());
+                // only after the first step, so each mode times the same
+                // entities rather than the survivors of its own collisions
+                world.setPixelCollisions(pixels);
+            }
+
+            long run() {
+                world.resolveCollisions();
+                return size;
+            }
+
+            int operations() {
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * Create player shots scattered over the screen
+     */
+    private static Entity[] shots(GameWorld world, int size) {
+        Random random = new Random(size);
+        Entity[] shots = new Entity[size];
+
+        for (int i = 0; i < size; i++) {
+            shots[i] = new ShotEntity(world, "sprites/shot.gif",
+                    random.nextInt(GameWorld.WIDTH), random.nextInt(GameWorld.HEIGHT));
+        }
+
+        return shots;
+    }
+
+    /**
+     * Create a world whose formation has been grown to at least the given
+     * number of aliens, by adding columns beside the usual 10 and rows below
+     * the usual 3
+     */
+    private static GameWorld formation(int size) {
+        GameWorld world = new GameWorld();
+        int columns = Math.max(10, (int) Math.ceil(Math.sqrt(size)));
+        int rows = Math.max(3, (size + columns - 1) / columns);
+
+        world.createFormation(rows, columns);
+        world.step(0, new InputState());
+
+        return world;
+    }
+
+    /**
+     * Write the results as text
+     */
+    static void writeText(List<Result> results, PrintWriter out) {
+        out.printf("%-32s %8s %14s %12s  %s%n", "Benchmark", "size", "Score", "Error", "Units");
+        for (Result result : results) {
+            out.printf("%-32s %8s %14.3f %12.3f  ns/op%n", result.name,
+                    result.size == 0 ? "-" : Integer.toString(result.size), result.score(), result.error());
+        }
+    }
+
+    /**
+     * Write the results as CSV, one row per benchmark and size
+     */
+    static void writeCsv(List<Result> results, PrintWriter out) {
+        out.println("benchmark,size,mode,iterations,score,error,unit");
+        for (Result result : results) {
+            out.println(result.name + "," + result.size + ",avgt," + result.iterations.length + ","
+                    + result.score() + "," + result.error() + ",ns/op");
+        }
+    }
+
+    /**
+     * Write the results as JSON in the layout JMH uses
+     */
+    static void writeJson(List<Result> results, PrintWriter out) {
+        out.println("[");
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+
+            out.println("    {");
+            out.println("        \"benchmark\" : \"spaceinvaders." + result.name + "\",");
+            out.println("        \"mode\" : \"avgt\",");
+            out.println("        \"measurementIterations\" : " + result.iterations.length + ",");
+            out.println("        \"params\" : {");
+            out.println("            \"size\" : \"" + result.size + "\"");
+            out.println("        },");
+            out.println("        \"primaryMetric\" : {");
+            out.println("            \"score\" : " + result.score() + ",");
+            out.println("            \"scoreError\" : " + (Double.isNaN(result.error()) ? "\"NaN\"" : result.error()) + ",");
+            out.println("            \"scoreUnit\" : \"ns/op\",");
+            out.print("            \"rawData\" : [ [ ");
+            for (int i = 0; i < result.iterations.length; i++) {
+                out.print((i == 0 ? "" : ", ") + result.iterations[i]);
+            }
+            out.println(" ] ]");
+            out.println("        }");
+            out.println("    }" + (r < results.size() - 1 ? "," : ""));
+        }
+        out.println("]");
+    }
+
+    /**
+     * Run the benchmarks
+     *
+     * @param argv The options to run with
+     * @throws IOException Indicates the results couldn't be written
+     */
+    public static void main(String argv[]) throws IOException {
+        // the benchmarks never open a window
+        System.setProperty("java.awt.headless", "true");
+
+        Benchmark benchmark = new Benchmark();
+        Pattern include = Pattern.compile(".*");
+        int[] sizes = DEFAULT_SIZES;
+        String format = "text";
+        String file = null;
+
+        for (int i = 0; i + 1 < argv.length; i += 2) {
+            String value = argv[i + 1];
+
+            if (argv[i].equals("-include")) {
+                include = Pattern.compile(value);
+            } else if (argv[i].equals("-sizes")) {
+                String[] parts = value.split(",");
+                sizes = new int[parts.length];
+                for (int s = 0; s < parts.length; s++) {
+                    sizes[s] = Integer.parseInt(parts[s].trim());
+                }
+            } else if (argv[i].equals("-warmup")) {
+                benchmark.warmupMillis = Long.parseLong(value);
+            } else if (argv[i].equals("-iterations")) {
+                benchmark.iterationCount = Integer.parseInt(value);
+            } else if (argv[i].equals("-time")) {
+                benchmark.iterationMillis = Long.parseLong(value);
+            } else if (argv[i].equals("-format")) {
+                format = value;
+            } else if (argv[i].equals("-out")) {
+                file = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + argv[i]);
+            }
+        }
+
+        List<Result> results = new ArrayList<Result>();
+
+        for (Case benchmarkCase : cases()) {
+            if (!include.matcher(benchmarkCase.name).find()) {
+                continue;
+            }
+
+            if (!benchmarkCase.sized) {
+                results.add(benchmark.measure(benchmarkCase, 1));
+                System.err.println("# " + benchmarkCase.name);
+                continue;
+            }
+
+            for (int size : sizes) {
+                if (size <= benchmarkCase.maxSize) {
+                    System.err.println("# " + benchmarkCase.name + " size=" + size);
+                    results.add(benchmark.measure(benchmarkCase, size));
+                }
+            }
+        }
+
+        Writer writer = file == null ? new OutputStreamWriter(System.out) : new FileWriter(file);
+        PrintWriter out = new PrintWriter(writer);
+
+        if (format.equals("csv")) {
+            writeCsv(results, out);
+        } else if (format.equals("json")) {
+            writeJson(results, out);
+        } else {
+            writeText(results, out);
+        }
+        out.flush();
+
+        if (file != null) {
+            out.close();
+        }
+    }
+}
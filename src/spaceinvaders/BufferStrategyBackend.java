@@ -0,0 +1,59 @@
+package spaceinvaders;
+
+import java.awt.Canvas;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferStrategy;
+
+/**
+ * Draws frames onto a canvas through a buffer strategy, letting AWT manage
+ * accelerated page flipping or blitting of the back buffer.
+ */
+public class BufferStrategyBackend implements RenderBackend {
+
+    /**
+     * The canvas being drawn on
+     */
+    private final Canvas canvas;
+    /**
+     * The strategy that allows us to use accelerate page flipping
+     */
+    private final BufferStrategy strategy;
+
+    /**
+     * Create a backend drawing on a canvas, which must be displayable
+     *
+     * @param canvas The canvas to draw on
+     * @param buffers The number of buffers to create
+     */
+    public BufferStrategyBackend(Canvas canvas, int buffers) {
+        this.canvas = canvas;
+
+        canvas.createBufferStrategy(buffers);
+        strategy = canvas.getBufferStrategy();
+    }
+
+    public GraphicsConfiguration getConfiguration() {
+        return canvas.getGraphicsConfiguration();
+    }
+
+    public Graphics2D getDrawGraphics() {
+        return (Graphics2D) strategy.getDrawGraphics();
+    }
+
+    public boolean contentsRestored() {
+        return strategy.contentsRestored();
+    }
+
+    /**
+     * A flipped back buffer holds an older frame, a blitted one keeps the
+     * last frame drawn
+     */
+    public boolean isRetained() {
+        return !strategy.getCapabilities().isPageFlipping();
+    }
+
+    public void show() {
+        strategy.show();
+    }
+}
@@ -0,0 +1,206 @@
+package spaceinvaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid used as the broad phase of collision detection. Each entity
+ * is registered in every cell its bounds overlap, and only entities sharing a
+ * cell are offered as candidate pairs to the narrow phase
+ * ({@link Entity#collidesWith(Entity)}).
+ *
+ * Cell membership is maintained incrementally: an entity is only moved
+ * between cells when the range of cells it covers changes. Entities outside
+ * the playing area are clamped into the border cells.
+ *
+ * Candidate pairs are reported as indices into the entity list, sorted in the
+ * same order as the brute force pair loop visits them so that collision
+ * notifications happen in exactly the same order.
+ */
+class CollisionGrid {
+
+    /**
+     * The size of each (square) cell in pixels
+     */
+    private final int cellSize;
+    /**
+     * The number of cells across and down the grid
+     */
+    private final int columns, rows;
+    /**
+     * The entities in each cell, indexed by row * columns + column
+     */
+    private final ArrayList<Entity>[] cells;
+    /**
+     * The candidate pairs found by the last query, packed as
+     * (lower index << 32 | higher index)
+     */
+    private long[] pairs = new long[256];
+    /**
+     * The number of candidate pairs found by the last query
+     */
+    private int pairCount;
+
+    /**
+     * Create a grid covering an area of the given size
+     *
+     * @param width The width of the area in pixels
+     * @param height The height of the area in pixels
+     * @param cellSize The size of each cell, normally the size of the largest
+     * sprite so that an entity covers at most 2x2 cells
+     */
+    CollisionGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+
+        // an array of a generic type can only be made by casting
+        @SuppressWarnings("unchecked")
+        ArrayList<Entity>[] cells = (ArrayList<Entity>[]) new ArrayList<?>[columns * rows];
+        this.cells = cells;
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new ArrayList<Entity>(4);
+        }
+    }
+
+    /**
+     * Bring the cells an entity is registered in up to date with its current
+     * position. Entities not yet in the grid are added.
+     *
+     * @param entity The entity that may have moved
+     */
+    void update(Entity entity) {
+        int minX = column(entity.getX());
+        int minY = row(entity.getY());
+        int maxX = column(entity.getX() + entity.sprite.getWidth() - 1);
+        int maxY = row(entity.getY() + entity.sprite.getHeight() - 1);
+
+        if (entity.gridMinX == minX && entity.gridMinY == minY
+                && entity.gridMaxX == maxX && entity.gridMaxY == maxY) {
+            return;
+        }
+
+        remove(entity);
+
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                cells[cy * columns + cx].add(entity);
+            }
+        }
+
+        entity.gridMinX = minX;
+        entity.gridMinY = minY;
+        entity.gridMaxX = maxX;
+        entity.gridMaxY = maxY;
+    }
+
+    /**
+     * Remove an entity from all the cells it is registered in
+     *
+     * @param entity The entity to remove
+     */
+    void remove(Entity entity) {
+        if (entity.gridMinX < 0) {
+            return;
+        }
+
+        for (int cy = entity.gridMinY; cy <= entity.gridMaxY; cy++) {
+            for (int cx = entity.gridMinX; cx <= entity.gridMaxX; cx++) {
+                cells[cy * columns + cx].remove(entity);
+            }
+        }
+
+        entity.gridMinX = -1;
+    }
+
+    /**
+     * Remove every entity from the grid
+     *
+     * @param entities The entities currently registered
+     */
+    void clear(List<Entity> entities) {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i].clear();
+        }
+        for (int i = 0; i < entities.size(); i++) {
+            entities.get(i).gridMinX = -1;
+        }
+    }
+
+    /**
+     * Find all the pairs of entities that share at least one cell and are on
+     * layers that can collide. Each
+     * entity's index must have been set to its position in the entity list.
+     *
+     * @return The number of candidate pairs found
+     */
+    int findPairs() {
+        pairCount = 0;
+
+        for (int c = 0; c < cells.length; c++) {
+            ArrayList<Entity> cell = cells[c];
+
+            for (int i = 0; i < cell.size(); i++) {
+                Entity first = cell.get(i);
+                int a = first.index;
+
+                for (int j = i + 1; j < cell.size(); j++) {
+                    Entity second = cell.get(j);
+
+                    if (!CollisionTable.canCollide(first, second)) {
+                        continue;
+                    }
+
+                    int b = second.index;
+
+                    if (pairCount == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[pairCount++] = a < b
+                            ? ((long) a << 32) | b
+                            : ((long) b << 32) | a;
+                }
+            }
+        }
+
+        // sort into the brute force visiting order and drop the duplicates
+        // produced by entities sharing more than one cell
+        Arrays.sort(pairs, 0, pairCount);
+
+        int unique = 0;
+        for (int i = 0; i < pairCount; i++) {
+            if (unique == 0 || pairs[unique - 1] != pairs[i]) {
+                pairs[unique++] = pairs[i];
+            }
+        }
+        pairCount = unique;
+
+        return pairCount;
+    }
+
+    /**
+     * @param pair The index of a pair found by the last query
+     * @return The lower entity index of the pair
+     */
+    int first(int pair) {
+        return (int) (pairs[pair] >>> 32);
+    }
+
+    /**
+     * @param pair The index of a pair found by the last query
+     * @return The higher entity index of the pair
+     */
+    int second(int pair) {
+        return (int) pairs[pair];
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, x / cellSize));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / cellSize));
+    }
+}
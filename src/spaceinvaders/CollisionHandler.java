@@ -0,0 +1,16 @@
+package spaceinvaders;
+
+/**
+ * The response to a collision between two entities on a particular pair of
+ * layers, registered in a {@link CollisionTable}.
+ */
+public interface CollisionHandler {
+
+    /**
+     * Notification that two entities have collided
+     *
+     * @param first The entity on the first layer the handler was registered for
+     * @param second The entity on the second layer the handler was registered for
+     */
+    void collided(Entity first, Entity second);
+}
@@ -0,0 +1,60 @@
+package spaceinvaders;
+
+/**
+ * The collision layers entities are placed on. Each layer has a mask of the
+ * layers it can collide with, pairs of entities whose layers can't interact
+ * (e.g. two alien shots, or an explosion and anything) are rejected before their
+ * bounds are ever compared.
+ *
+ * The masks are symmetric: if layer A can collide with layer B then B can
+ * collide with A. Every pair allowed here has a handler registered in the
+ * world's {@link CollisionTable}.
+ */
+public final class CollisionLayer {
+
+    /** Entities that never collide */
+    public static final int NONE = 0;
+    /** The player's ship */
+    public static final int SHIP = 1;
+    /** The aliens, held by the {@link AlienFormation} which resolves its own hits */
+    public static final int ALIEN = 2;
+    /** Shots fired by the player */
+    public static final int PLAYER_SHOT = 3;
+    /** Shots fired by the aliens */
+    public static final int ALIEN_SHOT = 4;
+    /** The meteors falling in the last level */
+    public static final int METEOR = 5;
+    /** Explosions, purely decorative */
+    public static final int EXPLOSION = 6;
+    /** The number of layers */
+    public static final int COUNT = 7;
+
+    /** The mask of layers each layer can collide with, indexed by layer */
+    private static final int[] MASKS = new int[COUNT];
+
+    static {
+        MASKS[SHIP] = bit(ALIEN_SHOT) | bit(METEOR);
+        MASKS[PLAYER_SHOT] = bit(METEOR);
+        MASKS[ALIEN_SHOT] = bit(SHIP) | bit(METEOR);
+        MASKS[METEOR] = bit(SHIP) | bit(PLAYER_SHOT) | bit(ALIEN_SHOT) | bit(METEOR);
+    }
+
+    private CollisionLayer() {
+    }
+
+    /**
+     * @param layer The layer to get the bit for
+     * @return The bit representing the layer in a collision mask
+     */
+    public static int bit(int layer) {
+        return 1 << layer;
+    }
+
+    /**
+     * @param layer The layer to get the mask for
+     * @return The mask of layers that the given layer can collide with
+     */
+    public static int mask(int layer) {
+        return MASKS[layer];
+    }
+}
@@ -0,0 +1,70 @@
+package spaceinvaders;
+
+/**
+ * The collision responses of the game, keyed by the pair of layers of the
+ * colliding entities. Each pair of layers has at most one handler which
+ * resolves the collision for both entities, so no entity has to work out
+ * what it has hit.
+ */
+public class CollisionTable {
+
+    /**
+     * The handlers indexed by (first layer * layer count + second layer)
+     */
+    private final CollisionHandler[] handlers = new CollisionHandler[CollisionLayer.COUNT * CollisionLayer.COUNT];
+    /**
+     * True for each table slot where the registered handler takes its
+     * arguments in the opposite order to the slot
+     */
+    private final boolean[] swapped = new boolean[handlers.length];
+
+    /**
+     * Register the response to a collision between entities on two layers
+     *
+     * @param first The layer of the first entity passed to the handler
+     * @param second The layer of the second entity passed to the handler
+     * @param handler The response to the collision
+     */
+    public void register(int first, int second, CollisionHandler handler) {
+        if ((CollisionLayer.mask(first) & CollisionLayer.bit(second)) == 0) {
+            throw new IllegalArgumentException("Layers " + first + " and " + second + " can't collide");
+        }
+
+        handlers[first * CollisionLayer.COUNT + second] = handler;
+        handlers[second * CollisionLayer.COUNT + first] = handler;
+        swapped[first * CollisionLayer.COUNT + second] = false;
+        swapped[second * CollisionLayer.COUNT + first] = first != second;
+    }
+
+    /**
+     * Check whether two entities are on layers that can collide at all
+     *
+     * @param a The first entity
+     * @param b The second entity
+     * @return True if the entities' layers can collide
+     */
+    public static boolean canCollide(Entity a, Entity b) {
+        return (a.collisionMask & CollisionLayer.bit(b.layer)) != 0;
+    }
+
+    /**
+     * Resolve a collision between two entities using the handler for their
+     * layers
+     *
+     * @param a The first entity
+     * @param b The second entity
+     */
+    public void dispatch(Entity a, Entity b) {
+        int slot = a.layer * CollisionLayer.COUNT + b.layer;
+        CollisionHandler handler = handlers[slot];
+
+        if (handler == null) {
+            return;
+        }
+        if (swapped[slot]) {
+            handler.collided(b, a);
+        } else {
+            handler.collided(a, b);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package spaceinvaders;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free queue of {@link WorldCommand}s with many producers and a
+ * single consumer. Any thread may post a command at any time without
+ * blocking; the simulation drains the queue once per step, so the world's
+ * entity list is only ever changed by the thread stepping it.
+ *
+ * Producers swap themselves in as the tail with a single atomic operation
+ * and then link the previous tail to their node. A command whose link
+ * hasn't been made yet when the queue is drained is simply picked up by the
+ * next drain.
+ */
+public class CommandQueue {
+
+    /**
+     * A command waiting in the queue
+     */
+    private static final class Node {
+
+        /**
+         * The command, cleared once applied
+         */
+        WorldCommand command;
+        /**
+         * The node posted after this one
+         */
+        volatile Node next;
+
+        Node(WorldCommand command) {
+            this.command = command;
+        }
+    }
+
+    /**
+     * The last node posted, shared by the producers
+     */
+    private final AtomicReference<Node> tail;
+    /**
+     * The last node applied, only used by the consumer
+     */
+    private Node head;
+
+    /**
+     * Create an empty queue
+     */
+    public CommandQueue() {
+        head = new Node(null);
+        tail = new AtomicReference<Node>(head);
+    }
+
+    /**
+     * Post a command to be applied at the start of the next step. Safe to
+     * call from any thread.
+     *
+     * @param command The command to apply
+     */
+    public void post(WorldCommand command) {
+        Node node = new Node(command);
+        Node previous = tail.getAndSet(node);
+
+        previous.next = node;
+    }
+
+    /**
+     * Apply every command that has been posted, in the order they were
+     * posted. Must only be called from the thread stepping the world.
+     *
+     * @param world The world to apply the commands to
+     * @return The number of commands applied
+     */
+    public int drain(GameWorld world) {
+        int count = 0;
+        Node next;
+
+        while ((next = head.next) != null) {
+            WorldCommand command = next.command;
+
+            next.command = null;
+            head = next;
+            command.apply(world);
+            count++;
+        }
+
+        return count;
+    }
+}
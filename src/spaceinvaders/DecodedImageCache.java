@@ -0,0 +1,385 @@
+package spaceinvaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file of already decoded images, so that later launches of the game can
+ * skip GIF and JPEG decoding altogether.
+ *
+ * Each image is stored as its ARGB pixels along with the length and CRC of
+ * the file it was decoded from; an image whose source has changed is
+ * decoded again. The file is memory mapped when opened, so cached pixels
+ * are copied straight from the page cache.
+ *
+ * The cache is rewritten in full when images have been added. As a file
+ * that is mapped can't be replaced on every platform, each rewrite goes to
+ * a new generation of the file, named after it with the generation number
+ * appended, and the newest generation is the one opened. Older generations
+ * are deleted once nothing maps them, which may be at the next rewrite.
+ */
+public class DecodedImageCache {
+
+    /**
+     * The first word of a cache file
+     */
+    private static final int MAGIC = 0x53494443;
+    /**
+     * The version of the file layout
+     */
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The file the cache is kept in, whose generations are written beside it
+     */
+    private final File file;
+    /**
+     * The generation of the file that was opened, 0 for the file itself
+     */
+    private int generation;
+    /**
+     * The cached images read from the file, by reference
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    /**
+     * The images decoded since the cache was opened, by reference
+     */
+    private final Map<String, Entry> added = new LinkedHashMap<String, Entry>();
+    /**
+     * The mapped contents of the file, null if there was no usable file
+     */
+    private MappedByteBuffer map;
+
+    /**
+     * Open a cache, reading the index of the images in its file. A missing,
+     * unreadable or out of date file leaves the cache empty.
+     *
+     * @param file The file the cache is kept in
+     */
+    public DecodedImageCache(File file) {
+        this.file = file;
+
+        for (int found : listGenerations()) {
+            generation = Math.max(generation, found);
+        }
+
+        File newest = generationFile(generation);
+        if (!newest.isFile()) {
+            return;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(newest.toPath(), StandardOpenOption.READ);
+
+            try {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                // the mapping stays valid once the channel is closed
+                channel.close();
+            }
+
+            readIndex();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable asset cache " + newest + ": " + e);
+            entries.clear();
+            map = null;
+        }
+    }
+
+    /**
+     * Open the cache in the file given by {@code -Dspaceinvaders.assetCache},
+     * by default {@code .spaceinvaders/assets.cache} in the user's home
+     *
+     * @return The cache, or null if it has been turned off with
+     * {@code -Dspaceinvaders.assetCache=none}
+     */
+    public static DecodedImageCache openDefault() {
+        String path = System.getProperty("spaceinvaders.assetCache");
+
+        if ("none".equals(path)) {
+            return null;
+        }
+        if (path == null) {
+            path = System.getProperty("user.home") + File.separator + ".spaceinvaders"
+                    + File.separator + "assets.cache";
+        }
+
+        return new DecodedImageCache(new File(path));
+    }
+
+    /**
+     * @param generation A generation of the cache's file
+     * @return The file holding that generation
+     */
+    private File generationFile(int generation) {
+        return generation == 0 ? file : new File(file.getPath() + "." + generation);
+    }
+
+    /**
+     * Find the generations of the cache's file that are on disk
+     *
+     * @return The generations found, in no particular order
+     */
+    private List<Integer> listGenerations() {
+        List<Integer> generations = new ArrayList<Integer>();
+        File parent = file.getAbsoluteFile().getParentFile();
+        String[] names = parent == null ? null : parent.list();
+
+        if (names == null) {
+            return generations;
+        }
+
+        String prefix = file.getName() + ".";
+        for (String name : names) {
+            if (name.equals(file.getName())) {
+                generations.add(0);
+            } else if (name.startsWith(prefix)) {
+                try {
+                    int found = Integer.parseInt(name.substring(prefix.length()));
+                    if (found > 0) {
+                        generations.add(found);
+                    }
+                } catch (NumberFormatException e) {
+                    // not a generation, such as a half written one
+                }
+            }
+        }
+
+        return generations;
+    }
+
+    /**
+     * Read the entries at the start of the mapped file
+     */
+    private void readIndex() throws IOException {
+        ByteBuffer in = map.duplicate();
+
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("not an asset cache of this version");
+        }
+
+        int count = in.getInt();
+
+        for (int i = 0; i < count; i++) {
+            byte[] ref = new byte[in.getShort()];
+            in.get(ref);
+
+            Entry entry = new Entry(in.getLong(), in.getInt(), in.getInt(), in.getInt());
+            entry.offset = in.getLong();
+
+            if (entry.offset + 4L * entry.width * entry.height > map.capacity()) {
+                throw new IOException("truncated");
+            }
+
+            entries.put(new String(ref, UTF8), entry);
+        }
+    }
+
+    /**
+     * Look up the pixels of an image. This can be called from several
+     * threads at once.
+     *
+     * @param ref The reference of the image
+     * @param crc The CRC of the image's source file
+     * @param length The length of the image's source file
+     * @return The cached image, or null if it isn't cached or its source
+     * has changed
+     */
+    public Entry get(String ref, long crc, int length) {
+        Entry entry = entries.get(ref);
+
+        if (entry == null || entry.crc != crc || entry.length != length) {
+            return null;
+        }
+
+        int[] pixels = new int[entry.width * entry.height];
+        ByteBuffer in = map.duplicate();
+
+        in.position((int) entry.offset);
+        in.asIntBuffer().get(pixels);
+
+        Entry copy = new Entry(crc, length, entry.width, entry.height);
+        copy.pixels = pixels;
+        return copy;
+    }
+
+    /**
+     * Add a freshly decoded image, to be written when the cache is saved
+     *
+     * @param ref The reference of the image
+     * @param crc The CRC of the image's source file
+     * @param length The length of the image's source file
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param pixels The ARGB pixels of the image
+     */
+    public synchronized void put(String ref, long crc, int length, int width, int height, int[] pixels) {
+        Entry entry = new Entry(crc, length, width, height);
+        entry.pixels = pixels;
+        added.put(ref, entry);
+    }
+
+    /**
+     * Write the cache to the next generation of its file if images have
+     * been added, then delete the older generations that can be. The cached
+     * images that weren't replaced are kept.
+     *
+     * @throws IOException Indicates the file couldn't be written
+     */
+    public synchronized void save() throws IOException {
+        if (added.isEmpty()) {
+            return;
+        }
+
+        Map<String, Entry> all = new LinkedHashMap<String, Entry>();
+
+        for (Map.Entry<String, Entry> cached : entries.entrySet()) {
+            if (!added.containsKey(cached.getKey())) {
+                Entry entry = cached.getValue();
+                all.put(cached.getKey(), get(cached.getKey(), entry.crc, entry.length));
+            }
+        }
+        all.putAll(added);
+
+        // lay out the index followed by the pixels
+        long indexSize = 12;
+        for (String ref : all.keySet()) {
+            indexSize += 2 + ref.getBytes(UTF8).length + 8 + 4 + 4 + 4 + 8;
+        }
+
+        long size = indexSize;
+        for (Entry entry : all.values()) {
+            entry.offset = size;
+            size += 4L * entry.width * entry.height;
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        // the file mapped stays where it is, so that nothing replaces it
+        int next = generation;
+        for (int found : listGenerations()) {
+            next = Math.max(next, found);
+        }
+        next++;
+
+        File target = generationFile(next);
+        File temp = new File(target.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(all.size());
+
+            for (Map.Entry<String, Entry> item : all.entrySet()) {
+                byte[] ref = item.getKey().getBytes(UTF8);
+                Entry entry = item.getValue();
+
+                out.putShort((short) ref.length);
+                out.put(ref);
+                out.putLong(entry.crc);
+                out.putInt(entry.length);
+                out.putInt(entry.width);
+                out.putInt(entry.height);
+                out.putLong(entry.offset);
+            }
+
+            for (Entry entry : all.values()) {
+                out.asIntBuffer().put(entry.pixels);
+                out.position(out.position() + 4 * entry.pixels.length);
+            }
+
+            out.force();
+        } finally {
+            channel.close();
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // a generation still mapped can't be deleted on some platforms, it
+        // goes after a later save instead
+        for (int found : listGenerations()) {
+            if (found < next) {
+                generationFile(found).delete();
+            }
+        }
+
+        added.clear();
+    }
+
+    /**
+     * @return The file the cache is kept in, whose generations are written
+     * beside it
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * An image in the cache
+     */
+    public static class Entry {
+
+        /**
+         * The CRC and length of the file the image was decoded from
+         */
+        final long crc;
+        final int length;
+        /**
+         * The size of the image
+         */
+        final int width, height;
+        /**
+         * The location of the pixels in the file
+         */
+        long offset;
+        /**
+         * The ARGB pixels of the image, row by row
+         */
+        int[] pixels;
+
+        Entry(long crc, int length, int width, int height) {
+            this.crc = crc;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int[] getPixels() {
+            return pixels;
+        }
+    }
+}
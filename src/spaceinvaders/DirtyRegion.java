@@ -0,0 +1,154 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * A set of rectangles of the screen that need to be redrawn, kept within
+ * the bounds of the screen.
+ *
+ * Rectangles are added as they are found and then merged, so that any two
+ * that overlap or touch become the single rectangle bounding both. The
+ * merged rectangles never overlap, so each pixel is only redrawn once and
+ * the area they cover is simply their sum.
+ */
+public class DirtyRegion {
+
+    /**
+     * The number of rectangles held
+     */
+    private int count;
+    /**
+     * The left, top, right and bottom edges of each rectangle, the right
+     * and bottom exclusive
+     */
+    private int[] left = new int[64], top = new int[64], right = new int[64], bottom = new int[64];
+
+    /**
+     * Remove every rectangle
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Add a rectangle, clipped to the screen
+     *
+     * @param x The x location of the rectangle
+     * @param y The y location of the rectangle
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    public void add(int x, int y, int width, int height) {
+        int x0 = Math.max(0, x), y0 = Math.max(0, y);
+        int x1 = Math.min(GameWorld.WIDTH, x + width), y1 = Math.min(GameWorld.HEIGHT, y + height);
+
+        if (x0 < x1 && y0 < y1) {
+            append(x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Add every rectangle of another region
+     *
+     * @param other The region to add
+     */
+    public void addAll(DirtyRegion other) {
+        for (int i = 0; i < other.count; i++) {
+            append(other.left[i], other.top[i], other.right[i], other.bottom[i]);
+        }
+    }
+
+    private void append(int x0, int y0, int x1, int y1) {
+        if (count == left.length) {
+            int capacity = count * 2;
+
+            left = Arrays.copyOf(left, capacity);
+            top = Arrays.copyOf(top, capacity);
+            right = Arrays.copyOf(right, capacity);
+            bottom = Arrays.copyOf(bottom, capacity);
+        }
+
+        left[count] = x0;
+        top[count] = y0;
+        right[count] = x1;
+        bottom[count] = y1;
+        count++;
+    }
+
+    /**
+     * Merge every pair of rectangles that overlap or touch, until none do.
+     * The rectangles are taken once each, in order, and kept at the front;
+     * one taken swallows every kept rectangle it meets, looking again after
+     * each as it grows, so the kept rectangles never meet one another.
+     */
+    public void merge() {
+        int kept = 0;
+
+        for (int i = 0; i < count; i++) {
+            int x0 = left[i], y0 = top[i], x1 = right[i], y1 = bottom[i];
+
+            for (int j = 0; j < kept; j++) {
+                if (left[j] <= x1 && right[j] >= x0 && top[j] <= y1 && bottom[j] >= y0) {
+                    x0 = Math.min(x0, left[j]);
+                    y0 = Math.min(y0, top[j]);
+                    x1 = Math.max(x1, right[j]);
+                    y1 = Math.max(y1, bottom[j]);
+
+                    // move the last kept rectangle into the gap, and look
+                    // again from the start as this one has grown
+                    kept--;
+                    left[j] = left[kept];
+                    top[j] = top[kept];
+                    right[j] = right[kept];
+                    bottom[j] = bottom[kept];
+                    j = -1;
+                }
+            }
+
+            // never past the rectangle just taken, which is already read
+            left[kept] = x0;
+            top[kept] = y0;
+            right[kept] = x1;
+            bottom[kept] = y1;
+            kept++;
+        }
+        count = kept;
+    }
+
+    /**
+     * @return The number of pixels covered, only exact once merged and never
+     * less before
+     */
+    public int getArea() {
+        int area = 0;
+
+        for (int i = 0; i < count; i++) {
+            area += (right[i] - left[i]) * (bottom[i] - top[i]);
+        }
+
+        return area;
+    }
+
+    /**
+     * @return The number of rectangles held
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getX(int i) {
+        return left[i];
+    }
+
+    public int getY(int i) {
+        return top[i];
+    }
+
+    public int getWidth(int i) {
+        return right[i] - left[i];
+    }
+
+    public int getHeight(int i) {
+        return bottom[i] - top[i];
+    }
+}
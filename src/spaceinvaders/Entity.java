@@ -1,7 +1,6 @@
 package spaceinvaders;
 
 import java.awt.Graphics;
-import java.awt.Rectangle;
 
 /**
  * An entity represents any element that appears in the game. The
@@ -14,23 +13,40 @@ import java.awt.Rectangle;
  * they will be display half way through a pixel but allows us not lose
  * accuracy as we move.
  * 
+ * Once an entity has been added to a world its location and speed are
+ * held in the columns of an {@link EntityStore.Archetype} and the entity
+ * becomes a view onto its slot there. This lets the world move all the
+ * entities of a type in one tight loop over primitive arrays.
+ * 
  * @author Kevin Glass
  */
 public abstract class Entity {
-	/** The current x location of this entity */ 
-	protected double x;
-	/** The current y location of this entity */
-	protected double y;
+	/** The x location of this entity while it isn't in a store */ 
+	private double x;
+	/** The y location of this entity while it isn't in a store */
+	private double y;
 	/** The sprite that represents this entity */
 	protected Sprite sprite;
-	/** The current speed of this entity horizontally (pixels/sec) */
-	protected double dx;
-	/** The current speed of this entity vertically (pixels/sec) */
-	protected double dy;
-	/** The rectangle used for this entity during collisions  resolution */
-	private Rectangle me = new Rectangle();
-	/** The rectangle used for other entities during collision resolution */
-	private Rectangle him = new Rectangle();
+	/** The speed of this entity horizontally while it isn't in a store (pixels/sec) */
+	private double dx;
+	/** The speed of this entity vertically while it isn't in a store (pixels/sec) */
+	private double dy;
+	/** The archetype holding this entity's location and speed, null if not in a store */
+	EntityStore.Archetype archetype;
+	/** The slot of this entity in its archetype's columns */
+	int slot;
+	/** The collision layer this entity is on */
+	int layer = CollisionLayer.NONE;
+	/** The layers this entity can collide with */
+	int collisionMask;
+	/** The pool this entity is returned to when it leaves the world, null if not pooled */
+	EntityPool<?> pool;
+	/** True if this entity has been marked for removal from the world this step */
+	boolean removalPending;
+	/** The position of this entity in the world's entity list during collision resolution */
+	int index;
+	/** The range of collision grid cells this entity is registered in, gridMinX is -1 when not registered */
+	int gridMinX = -1, gridMinY, gridMaxX, gridMaxY;
 	
 	/**
 	 * Construct a entity based on a sprite image and a location.
@@ -53,8 +69,8 @@ public abstract class Entity {
 	 */
 	public void move(long delta) {
 		// update the location of the entity based on move speeds
-		x += (delta * dx) / 1000;
-		y += (delta * dy) / 1000;
+		setLocation(getExactX() + (delta * getHorizontalMovement()) / 1000,
+				getExactY() + (delta * getVerticalMovement()) / 1000);
 	}
 	
 	/**
@@ -63,7 +79,11 @@ public abstract class Entity {
 	 * @param dx The horizontal speed of this entity (pixels/sec)
 	 */
 	public void setHorizontalMovement(double dx) {
-		this.dx = dx;
+		if (archetype != null) {
+			archetype.dx[slot] = dx;
+		} else {
+			this.dx = dx;
+		}
 	}
 
 	/**
@@ -72,7 +92,11 @@ public abstract class Entity {
 	 * @param dx The vertical speed of this entity (pixels/sec)
 	 */
 	public void setVerticalMovement(double dy) {
-		this.dy = dy;
+		if (archetype != null) {
+			archetype.dy[slot] = dy;
+		} else {
+			this.dy = dy;
+		}
 	}
 	
 	/**
@@ -81,7 +105,7 @@ public abstract class Entity {
 	 * @return The horizontal speed of this entity (pixels/sec)
 	 */
 	public double getHorizontalMovement() {
-		return dx;
+		return archetype != null ? archetype.dx[slot] : dx;
 	}
 
 	/**
@@ -90,7 +114,41 @@ public abstract class Entity {
 	 * @return The vertical speed of this entity (pixels/sec)
 	 */
 	public double getVerticalMovement() {
-		return dy;
+		return archetype != null ? archetype.dy[slot] : dy;
+	}
+	
+	/**
+	 * Move this entity to a new location
+	 * 
+	 * @param x The new x location of this entity
+	 * @param y The new y location of this entity
+	 */
+	public void setLocation(double x, double y) {
+		if (archetype != null) {
+			archetype.x[slot] = x;
+			archetype.y[slot] = y;
+		} else {
+			this.x = x;
+			this.y = y;
+		}
+	}
+	
+	/**
+	 * Get the x location of this entity, including any partial pixel
+	 * 
+	 * @return The x location of this entity
+	 */
+	public double getExactX() {
+		return archetype != null ? archetype.x[slot] : x;
+	}
+	
+	/**
+	 * Get the y location of this entity, including any partial pixel
+	 * 
+	 * @return The y location of this entity
+	 */
+	public double getExactY() {
+		return archetype != null ? archetype.y[slot] : y;
 	}
 	
 	/**
@@ -99,7 +157,48 @@ public abstract class Entity {
 	 * @param g The graphics context on which to draw
 	 */
 	public void draw(Graphics g) {
-		sprite.draw(g,(int) x,(int) y);
+		sprite.draw(g,getX(),getY());
+	}
+	
+	/**
+	 * Draw this entity part way between where it was at the start of the
+	 * last simulation step and where it is now
+	 * 
+	 * @param g The graphics context on which to draw
+	 * @param alpha How far between the two locations to draw, from 0 to 1
+	 */
+	public void draw(Graphics g, double alpha) {
+		sprite.draw(g,(int) getRenderX(alpha),(int) getRenderY(alpha));
+	}
+	
+	/**
+	 * Get the x location to render this entity at
+	 * 
+	 * @param alpha How far between the previous and current location, from 0 to 1
+	 * @return The interpolated x location
+	 */
+	public double getRenderX(double alpha) {
+		if (archetype == null) {
+			return x;
+		}
+		
+		double previous = archetype.px[slot];
+		return previous + (archetype.x[slot] - previous) * alpha;
+	}
+	
+	/**
+	 * Get the y location to render this entity at
+	 * 
+	 * @param alpha How far between the previous and current location, from 0 to 1
+	 * @return The interpolated y location
+	 */
+	public double getRenderY(double alpha) {
+		if (archetype == null) {
+			return y;
+		}
+		
+		double previous = archetype.py[slot];
+		return previous + (archetype.y[slot] - previous) * alpha;
 	}
 	
 	/**
@@ -115,7 +214,7 @@ public abstract class Entity {
 	 * @return The x location of this entity
 	 */
 	public int getX() {
-		return (int) x;
+		return (int) getExactX();
 	}
 
 	/**
@@ -124,7 +223,7 @@ public abstract class Entity {
 	 * @return The y location of this entity
 	 */
 	public int getY() {
-		return (int) y;
+		return (int) getExactY();
 	}
 	
 	/**
@@ -134,10 +233,24 @@ public abstract class Entity {
 	 * @return True if the entities collide with each other
 	 */
 	public boolean collidesWith(Entity other) {
-		me.setBounds((int) x,(int) y,sprite.getWidth(),sprite.getHeight());
-		him.setBounds((int) other.x,(int) other.y,other.sprite.getWidth(),other.sprite.getHeight());
+		int myX = getX();
+		int myY = getY();
+		int hisX = other.getX();
+		int hisY = other.getY();
 
-		return me.intersects(him);
+		return myX < hisX + other.sprite.getWidth() && hisX < myX + sprite.getWidth()
+				&& myY < hisY + other.sprite.getHeight() && hisY < myY + sprite.getHeight();
+	}
+	
+	/**
+	 * Check if the opaque pixels of this entity's sprite touch those of
+	 * another's. Only worth asking once their bounds are known to overlap.
+	 * 
+	 * @param other The other entity to check collision against
+	 * @return True if the entities' opaque pixels overlap
+	 */
+	public boolean pixelsOverlap(Entity other) {
+		return sprite.getMask().overlaps(other.sprite.getMask(), other.getX() - getX(), other.getY() - getY());
 	}
         
         /**
@@ -147,16 +260,63 @@ public abstract class Entity {
          * 
          */
         public boolean hasTarget(Entity other){
-		me.setBounds((int) x, 0, sprite.getWidth(), 600);
-		him.setBounds((int) other.x, 0, other.sprite.getWidth(), 600);
+		int myX = getX();
+		int hisX = other.getX();
 
-		return me.intersects(him);
+		return myX < hisX + other.sprite.getWidth() && hisX < myX + sprite.getWidth();
         }
 	
 	/**
-	 * Notification that this entity collided with another.
+	 * Move this entity's location and speed into a slot of an archetype's
+	 * columns, from now on the entity is a view onto that slot
 	 * 
-	 * @param other The entity with which this entity collided.
+	 * @param archetype The archetype to hold the entity
 	 */
-	public abstract void collidedWith(Entity other);
-}
\ No newline at end of file
+	void attach(EntityStore.Archetype archetype) {
+		this.slot = archetype.add(x, y, dx, dy, this);
+		this.archetype = archetype;
+	}
+	
+	/**
+	 * Take this entity's location and speed back out of its archetype so
+	 * that it remains usable after leaving the store
+	 */
+	void detach() {
+		EntityStore.Archetype from = archetype;
+		
+		x = from.x[slot];
+		y = from.y[slot];
+		dx = from.dx[slot];
+		dy = from.dy[slot];
+		archetype = null;
+		from.remove(slot);
+	}
+	
+	/**
+	 * Place this entity on a collision layer, it will then only be tested
+	 * against entities on the layers that layer can collide with.
+	 * 
+	 * @param layer The collision layer, one of the {@link CollisionLayer} constants
+	 */
+	public void setCollisionLayer(int layer) {
+		this.layer = layer;
+		this.collisionMask = CollisionLayer.mask(layer);
+		
+		// entities are stored by layer, so move to the matching archetype
+		if (archetype != null && archetype.layer != layer) {
+			EntityStore store = archetype.store;
+			
+			detach();
+			attach(store.archetype(layer));
+		}
+	}
+	
+	/**
+	 * Get the collision layer this entity is on
+	 * 
+	 * @return The collision layer of this entity
+	 */
+	public int getCollisionLayer() {
+		return layer;
+	}
+}
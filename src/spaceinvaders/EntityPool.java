@@ -0,0 +1,168 @@
+package spaceinvaders;
+
+/**
+ * A bounded pool of entities of one type that are created and destroyed
+ * frequently (shots, meteors, explosions). Entities removed from the world
+ * are handed back to their pool and reused for the next spawn, so steady
+ * state play allocates no new entities.
+ *
+ * The pool keeps up to its capacity of free entities; entities released
+ * when the pool is full are left for the garbage collector. The number in
+ * use and its high-water mark are kept so the capacity can be sized for the
+ * heaviest waves.
+ *
+ * @param <T> The type of entity pooled
+ */
+public class EntityPool<T extends Entity> {
+
+    /**
+     * Creates the entities of a pool when there are none free
+     *
+     * @param <T> The type of entity created
+     */
+    public interface Factory<T extends Entity> {
+
+        /**
+         * @return A new entity, it will be reset before it is used
+         */
+        T create();
+    }
+
+    /**
+     * The name of the pool used when reporting
+     */
+    private final String name;
+    /**
+     * Creates entities when the pool is empty
+     */
+    private final Factory<T> factory;
+    /**
+     * The entities waiting to be reused
+     */
+    private final Entity[] free;
+    /**
+     * The number of entities waiting to be reused
+     */
+    private int freeCount;
+    /**
+     * The number of entities obtained and not yet released
+     */
+    private int inUse;
+    /**
+     * The most entities that have been in use at once
+     */
+    private int highWater;
+    /**
+     * The number of entities the factory has created
+     */
+    private int created;
+    /**
+     * The number of released entities dropped because the pool was full
+     */
+    private int dropped;
+
+    /**
+     * Create an empty pool
+     *
+     * @param name The name of the pool used when reporting
+     * @param capacity The most free entities to keep
+     * @param factory Creates the entities when there are none free
+     */
+    public EntityPool(String name, int capacity, Factory<T> factory) {
+        this.name = name;
+        this.free = new Entity[capacity];
+        this.factory = factory;
+    }
+
+    /**
+     * Take an entity from the pool, creating one if none are free. The
+     * caller must reset the entity's state before using it.
+     *
+     * @return An entity not in use
+     */
+    @SuppressWarnings("unchecked")
+    public T obtain() {
+        T entity;
+
+        if (freeCount > 0) {
+            entity = (T) free[--freeCount];
+            free[freeCount] = null;
+        } else {
+            entity = factory.create();
+            entity.pool = this;
+            created++;
+        }
+
+        inUse++;
+        highWater = Math.max(highWater, inUse);
+
+        return entity;
+    }
+
+    /**
+     * Hand an entity back once it has left the world
+     *
+     * @param entity The entity to reuse
+     */
+    void release(Entity entity) {
+        inUse--;
+
+        if (freeCount < free.length) {
+            free[freeCount++] = entity;
+        } else {
+            dropped++;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The most free entities this pool keeps
+     */
+    public int getCapacity() {
+        return free.length;
+    }
+
+    /**
+     * @return The number of entities waiting to be reused
+     */
+    public int getFreeCount() {
+        return freeCount;
+    }
+
+    /**
+     * @return The number of entities currently in use
+     */
+    public int getInUse() {
+        return inUse;
+    }
+
+    /**
+     * @return The most entities that have been in use at once
+     */
+    public int getHighWater() {
+        return highWater;
+    }
+
+    /**
+     * @return The number of entities the pool has had to create
+     */
+    public int getCreated() {
+        return created;
+    }
+
+    /**
+     * @return The number of released entities dropped because the pool was full
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": capacity=" + free.length + " free=" + freeCount + " inUse=" + inUse
+                + " highWater=" + highWater + " created=" + created + " dropped=" + dropped;
+    }
+}
@@ -0,0 +1,264 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * Dense storage for the location and speed of every entity in a world. The
+ * entities are grouped into archetypes, one per collision layer (ship,
+ * aliens, player shots, alien shots, meteors, explosions), and each
+ * archetype keeps its entities in parallel primitive columns.
+ *
+ * Moving every entity of an archetype is then a tight loop over four
+ * {@code double[]}s, and removing an entity is an O(1) swap with the last
+ * slot. {@link Entity} objects act as views onto their slot; an archetype
+ * slot may also be used without a view, e.g. for bulk particles.
+ */
+public class EntityStore {
+
+    /**
+     * The archetypes indexed by collision layer
+     */
+    private final Archetype[] archetypes = new Archetype[CollisionLayer.COUNT];
+
+    /**
+     * Create an empty store
+     */
+    public EntityStore() {
+        for (int i = 0; i < archetypes.length; i++) {
+            archetypes[i] = new Archetype(this, i);
+        }
+    }
+
+    /**
+     * Get the archetype holding the entities on a collision layer
+     *
+     * @param layer The collision layer of the entities
+     * @return The archetype for that layer
+     */
+    public Archetype archetype(int layer) {
+        return archetypes[layer];
+    }
+
+    /**
+     * Add an entity to the archetype for its collision layer
+     *
+     * @param entity The entity to add
+     */
+    public void add(Entity entity) {
+        entity.attach(archetypes[entity.getCollisionLayer()]);
+    }
+
+    /**
+     * Remove an entity from the store, the entity keeps its last location
+     * and speed. Removing an entity that isn't in the store does nothing.
+     *
+     * @param entity The entity to remove
+     */
+    public void remove(Entity entity) {
+        if (entity.archetype != null && entity.archetype.store == this) {
+            entity.detach();
+        }
+    }
+
+    /**
+     * Remove every entity from the store
+     */
+    public void clear() {
+        for (int i = 0; i < archetypes.length; i++) {
+            Archetype archetype = archetypes[i];
+
+            while (archetype.size > 0) {
+                Entity view = archetype.views[archetype.size - 1];
+
+                if (view != null) {
+                    view.detach();
+                } else {
+                    archetype.remove(archetype.size - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the current location of every entity as its previous location,
+     * called at the start of each simulation step
+     */
+    public void savePrevious() {
+        for (int i = 0; i < archetypes.length; i++) {
+            archetypes[i].savePrevious();
+        }
+    }
+
+    /**
+     * @return The number of entities in all archetypes
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < archetypes.length; i++) {
+            size += archetypes[i].size;
+        }
+        return size;
+    }
+
+    /**
+     * The entities of a single type, stored as parallel columns indexed by
+     * slot. Slots 0 to size-1 are always in use.
+     */
+    public static class Archetype {
+
+        /**
+         * The store this archetype belongs to
+         */
+        final EntityStore store;
+        /**
+         * The collision layer of the entities in this archetype
+         */
+        final int layer;
+        /**
+         * The number of slots in use
+         */
+        int size;
+        /**
+         * The location of each entity
+         */
+        double[] x = new double[16], y = new double[16];
+        /**
+         * The location of each entity at the start of the last step
+         */
+        double[] px = new double[16], py = new double[16];
+        /**
+         * The speed of each entity (pixels/sec)
+         */
+        double[] dx = new double[16], dy = new double[16];
+        /**
+         * The entity viewing each slot, or null for slots without a view
+         */
+        Entity[] views = new Entity[16];
+
+        Archetype(EntityStore store, int layer) {
+            this.store = store;
+            this.layer = layer;
+        }
+
+        /**
+         * Add an entry to the end of the columns
+         *
+         * @return The slot the entry was stored in
+         */
+        int add(double x, double y, double dx, double dy, Entity view) {
+            if (size == this.x.length) {
+                int capacity = size * 2;
+
+                this.x = Arrays.copyOf(this.x, capacity);
+                this.y = Arrays.copyOf(this.y, capacity);
+                this.dx = Arrays.copyOf(this.dx, capacity);
+                this.dy = Arrays.copyOf(this.dy, capacity);
+                this.px = Arrays.copyOf(this.px, capacity);
+                this.py = Arrays.copyOf(this.py, capacity);
+                this.views = Arrays.copyOf(this.views, capacity);
+            }
+
+            int slot = size++;
+
+            this.x[slot] = x;
+            this.y[slot] = y;
+            this.dx[slot] = dx;
+            this.dy[slot] = dy;
+            this.px[slot] = x;
+            this.py[slot] = y;
+            this.views[slot] = view;
+
+            return slot;
+        }
+
+        /**
+         * Add an entry without a view
+         *
+         * @param x The initial x location
+         * @param y The initial y location
+         * @param dx The horizontal speed (pixels/sec)
+         * @param dy The vertical speed (pixels/sec)
+         * @return The slot the entry was stored in
+         */
+        public int add(double x, double y, double dx, double dy) {
+            return add(x, y, dx, dy, null);
+        }
+
+        /**
+         * Remove an entry by moving the last entry into its slot
+         *
+         * @param slot The slot to remove
+         */
+        public void remove(int slot) {
+            int last = --size;
+
+            if (slot != last) {
+                x[slot] = x[last];
+                y[slot] = y[last];
+                dx[slot] = dx[last];
+                dy[slot] = dy[last];
+                px[slot] = px[last];
+                py[slot] = py[last];
+                views[slot] = views[last];
+
+                if (views[slot] != null) {
+                    views[slot].slot = slot;
+                }
+            }
+
+            views[last] = null;
+        }
+
+        /**
+         * Record the current location of every entry as its previous location
+         */
+        void savePrevious() {
+            System.arraycopy(x, 0, px, 0, size);
+            System.arraycopy(y, 0, py, 0, size);
+        }
+
+        /**
+         * Move every entry based on a certain amount of time passing
+         *
+         * @param delta The amount of time that has passed in milliseconds
+         */
+        public void move(long delta) {
+            double[] x = this.x, y = this.y, dx = this.dx, dy = this.dy;
+
+            for (int i = 0; i < size; i++) {
+                x[i] += (delta * dx[i]) / 1000;
+                y[i] += (delta * dy[i]) / 1000;
+            }
+        }
+
+        /**
+         * @return The number of entries in this archetype
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return The collision layer of the entries in this archetype
+         */
+        public int getLayer() {
+            return layer;
+        }
+
+        public double getX(int slot) {
+            return x[slot];
+        }
+
+        public double getY(int slot) {
+            return y[slot];
+        }
+
+        /**
+         * @param slot The slot to look up
+         * @return The entity viewing the slot, or null if it has no view
+         */
+        public Entity getView(int slot) {
+            return views[slot];
+        }
+    }
+}
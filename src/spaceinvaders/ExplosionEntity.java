@@ -5,8 +5,6 @@
  */
 package spaceinvaders;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javafx.scene.media.AudioClip;
 
 /**
@@ -17,39 +15,74 @@ public class ExplosionEntity extends Entity {
 
     public static AudioClip explosionClip;
     
+    /**
+     * The game in which the explosion exists
+     */
+    private GameWorld game;
+    
+    /**
+     * The two frames of the explosion's animation
+     */
+    private final Sprite firstFrame, secondFrame;
+    
+    /**
+     * The timer moving the explosion through its animation
+     */
+    private final TimerWheel.Timer timer;
+    
     /**
      * 
+     * @param game The game in which the explosion is created
      * @param x The x coordinate of where to create the explosion
      * @param y The y coordinate of where to create the explosion
      * 
      */
-    public ExplosionEntity( int x, int y) {
+    public ExplosionEntity(GameWorld game, int x, int y) {
         super("assets/drawables/explosion0.gif", x, y);
         
-        if(explosionClip == null)
-            explosionClip = new AudioClip(getClass().getResource("assets/audio/explosion.mp3").toString());
-        
-        new Thread(new Runnable() { 
+        this.game = game;
+        this.firstFrame = sprite;
+        this.secondFrame = SpriteStore.get().getSprite("assets/drawables/explosion1.gif");
+        this.timer = new TimerWheel.Timer(new Runnable() {
             @Override
             public void run() {
-                try {
-                    Thread.sleep(100);
-                    ExplosionEntity.this.sprite = SpriteStore.get().getSprite("assets/drawables/explosion1.gif");
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
+                if (sprite == firstFrame) {
+                    sprite = secondFrame;
+                    ExplosionEntity.this.game.getTimers().schedule(timer, 50);
+                } else {
+                    ExplosionEntity.this.game.removeEntity(ExplosionEntity.this);
                 }
             }
-        }).start();
+        });
+        setCollisionLayer(CollisionLayer.EXPLOSION);
+        
+        reset(x, y);
     }
 
-    @Override
-    public void collidedWith(Entity other) {}
-    
+    /**
+     * Start the explosion again at a new location, used when it is reused
+     * from a pool
+     * 
+     * @param x The x coordinate of where to create the explosion
+     * @param y The y coordinate of where to create the explosion
+     */
+    void reset(int x, int y) {
+        setLocation(x, y);
+        sprite = firstFrame;
+        
+        // switch to the second frame after 100 ms and clear the
+        // explosion away once it has been showing for 150 ms
+        game.getTimers().schedule(timer, 100);
+    }
+
+    /**
+     * Play the sound of an explosion through JavaFX, used when the game has
+     * no {@link SoundEngine}. The clip is only loaded the first time.
+     */
     public void playSound(){
-        String src = getClass()
-                    .getResource("assets/audio/explosion.mp3")
-                    .toString();
+        if(explosionClip == null)
+            explosionClip = new AudioClip(getClass().getResource("assets/audio/explosion.mp3").toString());
         
-        new AudioClip(src).play();
+        explosionClip.play();
     }
 }
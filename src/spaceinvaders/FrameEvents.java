@@ -0,0 +1,107 @@
+package spaceinvaders;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder events emitted by {@link FrameMetrics}. This class is
+ * only loaded, by name, when the JVM has Flight Recorder, so nothing else
+ * refers to it and a build on a JDK without the jdk.jfr API can leave it
+ * out. The events are only built while a recording has them enabled.
+ */
+final class FrameEvents implements FrameMetrics.Events {
+
+    private static final EventType STEP = EventType.getEventType(StepEvent.class);
+    private static final EventType FRAME = EventType.getEventType(FrameEvent.class);
+
+    /**
+     * Emit the timings of a simulation step
+     *
+     * @param phases The time of each phase (ns), indexed by phase
+     * @param entities The number of entities at the end of the step
+     * @param pairs The number of collision pairs tested
+     */
+    public void step(long[] phases, int entities, int pairs) {
+        if (!STEP.isEnabled()) {
+            return;
+        }
+
+        StepEvent event = new StepEvent();
+        event.commands = phases[FrameMetrics.COMMANDS];
+        event.timers = phases[FrameMetrics.TIMERS];
+        event.move = phases[FrameMetrics.MOVE];
+        event.collisions = phases[FrameMetrics.COLLISIONS];
+        event.alienFire = phases[FrameMetrics.ALIEN_FIRE];
+        event.removal = phases[FrameMetrics.REMOVAL];
+        event.logic = phases[FrameMetrics.LOGIC];
+        event.input = phases[FrameMetrics.INPUT];
+        event.entities = entities;
+        event.pairsTested = pairs;
+        event.commit();
+    }
+
+    /**
+     * Emit the timings of a rendered frame
+     *
+     * @param phases The time of each phase (ns), indexed by phase
+     * @param pixels The number of pixels redrawn
+     */
+    public void frame(long[] phases, int pixels) {
+        if (!FRAME.isEnabled()) {
+            return;
+        }
+
+        FrameEvent event = new FrameEvent();
+        event.render = phases[FrameMetrics.RENDER];
+        event.show = phases[FrameMetrics.SHOW];
+        event.pixelsTouched = pixels;
+        event.commit();
+    }
+
+    @Name("spaceinvaders.SimulationStep")
+    @Label("Simulation Step")
+    @Category("Space Invaders")
+    @StackTrace(false)
+    static class StepEvent extends Event {
+
+        @Label("Commands") @Timespan
+        long commands;
+        @Label("Timers") @Timespan
+        long timers;
+        @Label("Move") @Timespan
+        long move;
+        @Label("Collisions") @Timespan
+        long collisions;
+        @Label("Alien Fire") @Timespan
+        long alienFire;
+        @Label("Removal") @Timespan
+        long removal;
+        @Label("Logic") @Timespan
+        long logic;
+        @Label("Input") @Timespan
+        long input;
+        @Label("Entities")
+        int entities;
+        @Label("Pairs Tested")
+        int pairsTested;
+    }
+
+    @Name("spaceinvaders.RenderFrame")
+    @Label("Render Frame")
+    @Category("Space Invaders")
+    @StackTrace(false)
+    static class FrameEvent extends Event {
+
+        @Label("Render") @Timespan
+        long render;
+        @Label("Show") @Timespan
+        long show;
+        @Label("Pixels Touched")
+        int pixelsTouched;
+    }
+}
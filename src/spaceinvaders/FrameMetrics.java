@@ -0,0 +1,416 @@
+package spaceinvaders;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Times each phase of the simulation steps and rendered frames, keeping a
+ * rolling histogram per phase along with counts of the entities and the
+ * collision pairs tested. The sizes and high-water marks of the world's
+ * entity pools, and the sound engine's counts, are read from them when
+ * asked for.
+ *
+ * Each phase is timed with two {@link System#nanoTime()} reads shared with
+ * its neighbours, a few tens of nanoseconds against a 10 ms step. The
+ * timings are published as a JMX MBean and, when the JVM has Flight
+ * Recorder, as {@code spaceinvaders.SimulationStep} and
+ * {@code spaceinvaders.RenderFrame} events. When metrics are disabled the
+ * world and game hold no metrics object and skip timing altogether.
+ *
+ * The step phases are recorded by the simulation thread and the frame
+ * phases by the render thread, each phase only ever by one of them.
+ */
+public class FrameMetrics implements FrameMetricsMBean {
+
+    /** Applying the commands posted from other threads */
+    public static final int COMMANDS = 0;
+    /** Running the timers that are due */
+    public static final int TIMERS = 1;
+    /** Moving the entities */
+    public static final int MOVE = 2;
+    /** Finding and resolving collisions */
+    public static final int COLLISIONS = 3;
+    /** Choosing an alien to fire at the ship */
+    public static final int ALIEN_FIRE = 4;
+    /** Removing the entities marked for removal */
+    public static final int REMOVAL = 5;
+    /** Running the entities' logic after game events */
+    public static final int LOGIC = 6;
+    /** Applying the player's controls and spawning meteors */
+    public static final int INPUT = 7;
+    /** The whole simulation step */
+    public static final int STEP = 8;
+    /** Composing a frame */
+    public static final int RENDER = 9;
+    /** Flipping the frame onto the screen */
+    public static final int SHOW = 10;
+    /** The number of phases */
+    public static final int PHASE_COUNT = 11;
+
+    /** The name of each phase, indexed by phase */
+    private static final String[] NAMES = {
+        "commands", "timers", "move", "collisions", "alienFire", "removal",
+        "logic", "input", "step", "render", "show"
+    };
+
+    /**
+     * The number of recent samples the percentiles are taken over
+     */
+    private static final int WINDOW = 1024;
+
+    /**
+     * Receives the times of each step and frame as they end
+     */
+    interface Events {
+
+        /**
+         * @param phases The time of each phase (ns), indexed by phase
+         * @param entities The number of entities at the end of the step
+         * @param pairs The number of collision pairs tested
+         */
+        void step(long[] phases, int entities, int pairs);
+
+        /**
+         * @param phases The time of each phase (ns), indexed by phase
+         * @param pixels The number of pixels redrawn
+         */
+        void frame(long[] phases, int pixels);
+    }
+
+    /**
+     * The Flight Recorder events, null if this JVM has no Flight Recorder
+     * or the build left them out
+     */
+    private static final Events EVENTS = loadEvents();
+
+    /**
+     * The recent times of each phase
+     */
+    private final RollingHistogram[] histograms = new RollingHistogram[PHASE_COUNT];
+    /**
+     * The times of each phase in the current step and frame (ns)
+     */
+    private final long[] current = new long[PHASE_COUNT];
+    /**
+     * The time the current step started
+     */
+    private long stepStart;
+    private long steps, frames;
+    private int entityCount;
+    private int pairsTested;
+    private long totalPairsTested;
+    private int pixelsTouched;
+    private long totalPixelsTouched;
+    /**
+     * The entity pools of the world being timed
+     */
+    private volatile List<EntityPool<?>> pools = new ArrayList<EntityPool<?>>();
+    /**
+     * The engine playing the sound effects, null if there is none
+     */
+    private volatile SoundEngine sounds;
+
+    /**
+     * Create metrics with empty histograms
+     */
+    public FrameMetrics() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            histograms[i] = new RollingHistogram(WINDOW);
+        }
+    }
+
+    /**
+     * Create the metrics if they have been turned on with
+     * {@code -Dspaceinvaders.metrics=true}, and register them with the
+     * platform MBean server
+     *
+     * @return The metrics, or null if they're disabled
+     */
+    public static FrameMetrics createIfEnabled() {
+        if (!Boolean.getBoolean("spaceinvaders.metrics")) {
+            return null;
+        }
+
+        FrameMetrics metrics = new FrameMetrics();
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName("spaceinvaders:type=FrameMetrics"));
+        } catch (JMException e) {
+            System.err.println("Unable to register frame metrics: " + e.getMessage());
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Load the Flight Recorder events by name, as {@code FrameEvents} is
+     * only compiled by a JDK that has the jdk.jfr API
+     */
+    private static Events loadEvents() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Events) Class.forName("spaceinvaders.FrameEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Set the entity pools whose sizes are reported
+     *
+     * @param pools The pools of the world being timed
+     */
+    public void setPools(List<EntityPool<?>> pools) {
+        this.pools = pools;
+    }
+
+    /**
+     * Set the engine whose plays, stolen and dropped voices and latency
+     * are reported
+     *
+     * @param sounds The engine playing the sound effects, null if none
+     */
+    public void setSounds(SoundEngine sounds) {
+        this.sounds = sounds;
+    }
+
+    /**
+     * Note the start of a simulation step
+     *
+     * @return The time the step started, to be passed to the first lap
+     */
+    public long startStep() {
+        stepStart = System.nanoTime();
+        return stepStart;
+    }
+
+    /**
+     * Record the time of a phase that has just finished
+     *
+     * @param phase The phase that finished
+     * @param start The time the phase started
+     * @return The time now, which is the start of the next phase
+     */
+    public long lap(int phase, long start) {
+        long now = System.nanoTime();
+        long elapsed = now - start;
+
+        current[phase] = elapsed;
+        histograms[phase].record(elapsed);
+        return now;
+    }
+
+    /**
+     * Note the end of a simulation step
+     *
+     * @param entities The number of entities in the world
+     * @param pairs The number of collision pairs tested during the step
+     */
+    public void endStep(int entities, int pairs) {
+        lap(STEP, stepStart);
+        steps++;
+        entityCount = entities;
+        pairsTested = pairs;
+        totalPairsTested += pairs;
+
+        if (EVENTS != null) {
+            EVENTS.step(current, entities, pairs);
+        }
+    }
+
+    /**
+     * Note the end of a rendered frame, after its render and show phases
+     * have been timed
+     *
+     * @param pixels The number of pixels redrawn in the frame
+     */
+    public void endFrame(int pixels) {
+        frames++;
+        pixelsTouched = pixels;
+        totalPixelsTouched += pixels;
+
+        if (EVENTS != null) {
+            EVENTS.frame(current, pixels);
+        }
+    }
+
+    public String[] getPhaseNames() {
+        return NAMES.clone();
+    }
+
+    public double[] getP50Micros() {
+        return percentile(50);
+    }
+
+    public double[] getP99Micros() {
+        return percentile(99);
+    }
+
+    public double[] getP999Micros() {
+        return percentile(99.9);
+    }
+
+    public double[] getMaxMicros() {
+        double[] max = new double[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            max[i] = histograms[i].getMax() / 1000.0;
+        }
+        return max;
+    }
+
+    private double[] percentile(double percentile) {
+        double[] values = new double[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            values[i] = histograms[i].percentiles(percentile)[0] / 1000.0;
+        }
+        return values;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public int getPairsTested() {
+        return pairsTested;
+    }
+
+    public long getTotalPairsTested() {
+        return totalPairsTested;
+    }
+
+    public int getPixelsTouched() {
+        return pixelsTouched;
+    }
+
+    public long getTotalPixelsTouched() {
+        return totalPixelsTouched;
+    }
+
+    public String[] getPoolNames() {
+        List<EntityPool<?>> pools = this.pools;
+        String[] names = new String[pools.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = pools.get(i).getName();
+        }
+        return names;
+    }
+
+    public int[] getPoolInUse() {
+        List<EntityPool<?>> pools = this.pools;
+        int[] inUse = new int[pools.size()];
+        for (int i = 0; i < inUse.length; i++) {
+            inUse[i] = pools.get(i).getInUse();
+        }
+        return inUse;
+    }
+
+    public int[] getPoolFree() {
+        List<EntityPool<?>> pools = this.pools;
+        int[] free = new int[pools.size()];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = pools.get(i).getFreeCount();
+        }
+        return free;
+    }
+
+    public int[] getPoolHighWater() {
+        List<EntityPool<?>> pools = this.pools;
+        int[] highWater = new int[pools.size()];
+        for (int i = 0; i < highWater.length; i++) {
+            highWater[i] = pools.get(i).getHighWater();
+        }
+        return highWater;
+    }
+
+    public int[] getPoolCreated() {
+        List<EntityPool<?>> pools = this.pools;
+        int[] created = new int[pools.size()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = pools.get(i).getCreated();
+        }
+        return created;
+    }
+
+    public long getSoundPlays() {
+        SoundEngine sounds = this.sounds;
+        return sounds == null ? 0 : sounds.getPlays();
+    }
+
+    public long getSoundStolen() {
+        SoundEngine sounds = this.sounds;
+        return sounds == null ? 0 : sounds.getStolen();
+    }
+
+    public long getSoundDropped() {
+        SoundEngine sounds = this.sounds;
+        return sounds == null ? 0 : sounds.getDropped();
+    }
+
+    public double getSoundLatencyMicros() {
+        SoundEngine sounds = this.sounds;
+        return sounds == null ? 0 : sounds.getAverageLatency() / 1000.0;
+    }
+
+    public double getSoundMaxLatencyMicros() {
+        SoundEngine sounds = this.sounds;
+        return sounds == null ? 0 : sounds.getMaxLatency() / 1000.0;
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+
+        report.append(String.format("%-12s %10s %10s %10s %10s %10s%n",
+                "phase", "mean(us)", "p50(us)", "p99(us)", "p99.9(us)", "max(us)"));
+
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            long[] values = histograms[i].percentiles(50, 99, 99.9);
+
+            report.append(String.format("%-12s %10.1f %10.1f %10.1f %10.1f %10.1f%n", NAMES[i],
+                    histograms[i].getMean() / 1000, values[0] / 1000.0, values[1] / 1000.0,
+                    values[2] / 1000.0, histograms[i].getMax() / 1000.0));
+        }
+
+        report.append("steps=").append(steps).append(" frames=").append(frames)
+                .append(" entities=").append(entityCount)
+                .append(" pairsTested=").append(totalPairsTested)
+                .append(" pixelsPerFrame=").append(frames == 0 ? 0 : totalPixelsTouched / frames);
+
+        for (EntityPool<?> pool : pools) {
+            report.append(String.format("%n")).append(pool);
+        }
+
+        SoundEngine sounds = this.sounds;
+        if (sounds != null) {
+            report.append(String.format("%n")).append(sounds);
+        }
+
+        return report.toString();
+    }
+
+    public void reset() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            histograms[i].reset();
+        }
+        steps = 0;
+        frames = 0;
+        totalPairsTested = 0;
+        totalPixelsTouched = 0;
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+}
@@ -0,0 +1,138 @@
+package spaceinvaders;
+
+/**
+ * The management interface of {@link FrameMetrics}, registered as
+ * {@code spaceinvaders:type=FrameMetrics}. Times are in microseconds and
+ * the per-phase arrays are in the order of {@link #getPhaseNames()}.
+ */
+public interface FrameMetricsMBean {
+
+    /**
+     * @return The names of the timed phases
+     */
+    String[] getPhaseNames();
+
+    /**
+     * @return The median time of each phase over the rolling window
+     */
+    double[] getP50Micros();
+
+    /**
+     * @return The 99th percentile time of each phase over the rolling window
+     */
+    double[] getP99Micros();
+
+    /**
+     * @return The 99.9th percentile time of each phase over the rolling window
+     */
+    double[] getP999Micros();
+
+    /**
+     * @return The longest time of each phase since the last reset
+     */
+    double[] getMaxMicros();
+
+    /**
+     * @return The number of simulation steps timed
+     */
+    long getSteps();
+
+    /**
+     * @return The number of frames timed
+     */
+    long getFrames();
+
+    /**
+     * @return The number of entities at the end of the last step
+     */
+    int getEntityCount();
+
+    /**
+     * @return The number of candidate pairs tested for collision in the
+     * last step
+     */
+    int getPairsTested();
+
+    /**
+     * @return The number of candidate pairs tested for collision since the
+     * last reset
+     */
+    long getTotalPairsTested();
+
+    /**
+     * @return The number of pixels redrawn in the last frame
+     */
+    int getPixelsTouched();
+
+    /**
+     * @return The number of pixels redrawn since the last reset
+     */
+    long getTotalPixelsTouched();
+
+    /**
+     * @return The names of the world's entity pools, the per-pool arrays
+     * are in this order
+     */
+    String[] getPoolNames();
+
+    /**
+     * @return The number of entities each pool has in use
+     */
+    int[] getPoolInUse();
+
+    /**
+     * @return The number of entities each pool keeps waiting to be reused
+     */
+    int[] getPoolFree();
+
+    /**
+     * @return The most entities each pool has had in use at once
+     */
+    int[] getPoolHighWater();
+
+    /**
+     * @return The number of entities each pool has had to create
+     */
+    int[] getPoolCreated();
+
+    /**
+     * @return The number of sound effect plays requested, 0 if effects
+     * aren't played through a {@link SoundEngine}
+     */
+    long getSoundPlays();
+
+    /**
+     * @return The number of sound voices cut short to make room for
+     * another play
+     */
+    long getSoundStolen();
+
+    /**
+     * @return The number of sound plays dropped because no voice was
+     * available
+     */
+    long getSoundDropped();
+
+    /**
+     * @return The average time from a sound play being requested to its
+     * first samples being mixed
+     */
+    double getSoundLatencyMicros();
+
+    /**
+     * @return The longest time from a sound play being requested to its
+     * first samples being mixed
+     */
+    double getSoundMaxLatencyMicros();
+
+    /**
+     * @return A table of every phase's percentiles, followed by the state
+     * of each entity pool and of the sound engine
+     */
+    String report();
+
+    /**
+     * Forget every recorded time and count
+     */
+    void reset();
+}
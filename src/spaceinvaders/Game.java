@@ -1,128 +1,92 @@
 package spaceinvaders;
 
 import java.awt.Canvas;
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferStrategy;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 import javafx.scene.media.AudioClip;
 
+import javax.sound.sampled.LineUnavailableException;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 /**
- * The main hook of our game. This class with both act as a manager for the
- * display and central mediator for the game logic.
+ * The main hook of our game. This class acts as the display and input front
+ * end for a {@link GameWorld}, which holds the game rules and acts as the
+ * central mediator for the game logic.
  *
- * Display management will consist of a loop that cycles round all entities in
- * the game asking them to move and then drawing them in the appropriate place.
- * With the help of an inner class it will also allow the player to control the
- * main ship.
- *
- * As a mediator it will be informed when entities within our game detect events
- * (e.g. alient killed, played died) and will take appropriate game actions.
+ * The world is stepped on a simulation thread of its own, which captures a
+ * snapshot of it after each update. Display management consists of a loop
+ * that cycles round drawing the latest snapshot, so a slow frame never
+ * holds up the simulation. With the help of an inner class it will also
+ * allow the player to control the main ship.
  *
  * @author Kevin Glass
  */
 @SuppressWarnings("serial")
-public class Game extends Canvas {
+public class Game extends Canvas implements GameListener {
 
     /**
-     * The strategy that allows us to use accelerate page flipping
+     * The surface the frames are drawn on and flipped onto the screen from
      */
-    private BufferStrategy strategy;
+    private RenderBackend backend;
     /**
      * True if the game has been paused
      */
-    private boolean gamePaused = false;
+    private volatile boolean gamePaused = false;
 
     /**
      * True if the game is currently "running", i.e. the game loop is looping
      */
-    private boolean gameRunning = true;
-    /**
-     * The list of all the entities that exist in our game
-     */
-
-    private ArrayList<Entity> entities = new ArrayList<Entity>();
-    /**
-     * The list of entities that need to be removed from the game this loop
-     */
-    private ArrayList<Entity> removeList = new ArrayList<Entity>();
-    /**
-     * The entity representing the player
-     */
-    private Entity ship;
+    private volatile boolean gameRunning = true;
     /**
-     * The speed at which the player's ship should move (pixels/sec)
+     * The simulation being displayed, seeded from -Dspaceinvaders.seed if
+     * it's given
      */
-    private double moveSpeed = 400;
+    private GameWorld world = new GameWorld(Long.getLong("spaceinvaders.seed", new Random().nextLong()));
     /**
-     * The time at which last fired a shot
+     * The state of the player's controls, maintained by the key handler
      */
-    private long lastFire = 0;
+    private InputState input = new InputState();
+    
     /**
-     * The interval between our players shot (ms)
+     * Steps the world in fixed size steps as real time passes
      */
-    private long firingInterval = 300;
+    private SimulationLoop loop = new SimulationLoop(world, GameClock.SYSTEM);
     /**
-     * The number of aliens left on the screen
+     * Hands snapshots of the world from the simulation thread to the render
+     * loop
      */
-    private int alienCount;
+    private SnapshotBuffer snapshots = new SnapshotBuffer();
 
     /**
-     * The message to display which waiting for a key press
+     * Composes the background, entity and HUD layers of each frame
      */
-    private String message = "";
-    /**
-     * True if we're holding up game play until a key has been pressed
-     */
-    private boolean waitingForKeyPress = true;
-    /**
-     * True if the left cursor key is currently pressed
-     */
-    private boolean leftPressed = false;
-    /**
-     * True if the right cursor key is currently pressed
-     */
-    private boolean rightPressed = false;
+    private RenderCompositor compositor;
+
     /**
-     * True if we are firing
+     * Plays the sound effects, null if they are played through JavaFX
      */
-    private boolean firePressed = false;
+    private SoundEngine sounds;
     /**
-     * True if game logic needs to be applied this loop, normally as a result of
-     * a game event
+     * The decoded sound of an explosion
      */
-    private boolean logicRequiredThisLoop = false;
-    
+    private SoundEngine.Effect explosionSound;
+
     /**
-     * The last time the screen was updated
+     * The timings of each phase of the game, null unless turned on with
+     * -Dspaceinvaders.metrics=true
      */
-    private long lastLoopTime;
-
-    // the current level that the player is on
-    private int level = 1;
-
-    private Map<Integer, String> levelsDesc = new HashMap();
-
-    private Map<Integer, String> levelsAlienImages = new HashMap();
-
-    private Map<Integer, String> levelsBackground = new HashMap();
-
-    private Map<Integer, String> levelAlternateAlienImages = new HashMap();
-
-    private long previousAlienShotTime;
+    private FrameMetrics metrics = FrameMetrics.createIfEnabled();
 
     /**
      * Construct our game and set it running.
@@ -133,11 +97,11 @@ public class Game extends Canvas {
 
         // get hold the content of the frame and set up the resolution of the game
         JPanel panel = (JPanel) container.getContentPane();
-        panel.setPreferredSize(new Dimension(800, 600));
+        panel.setPreferredSize(new Dimension(GameWorld.WIDTH, GameWorld.HEIGHT));
         panel.setLayout(null);
 
         // setup our canvas size and put it into the content of the frame
-        setBounds(0, 0, 800, 600);
+        setBounds(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
         panel.add(this);
 
         // Tell AWT not to bother repainting our canvas since we're
@@ -161,371 +125,183 @@ public class Game extends Canvas {
         // so we can respond to key pressed
         addKeyListener(new KeyInputHandler());
 
-        levelsDesc.put(1, "Defend");
-        levelsDesc.put(2, "Attack");
-        levelsDesc.put(3, "Annihilate");
-        levelsDesc.put(4, "The Evasion");
-
-        levelsAlienImages.put(1, "assets/drawables/alien_level_1.gif");
-        levelsAlienImages.put(2, "assets/drawables/alien_level_2.gif");
-        levelsAlienImages.put(3, "assets/drawables/alien_level_3.gif");
-
-        levelAlternateAlienImages.put(1, "assets/drawables/alien_level_1_alt.gif");
-        levelAlternateAlienImages.put(2, "assets/drawables/alien_level_2_alt.gif");
-        levelAlternateAlienImages.put(3, "assets/drawables/alien_level_3_alt.gif");
-
-        levelsBackground.put(1, "assets/drawables/battle_round_1.jpg");
-        levelsBackground.put(2, "assets/drawables/battle_round_2.jpg");
-        levelsBackground.put(3, "assets/drawables/battle_round_3.jpg");
-        levelsBackground.put(4, "assets/drawables/battle_round_4.jpg");
-
         // request the focus so key events come to us
         requestFocus();
 
         // create the buffering strategy which will allow AWT
         // to manage our accelerated graphics
-        createBufferStrategy(2);
-        strategy = getBufferStrategy();
-
-        // initialise the entities in our game so there's something
-        // to see at startup
-        initEntities();
-    }
-
-    /**
-     * Start a fresh game, this should clear out any old data and create a new
-     * set.
-     */
-    private void startGame() {
-        // clear out any existing entities and intialise a new set
-        entities.clear();
-        initEntities();
-
-        // blank out any keyboard settings we might currently have
-        leftPressed = false;
-        rightPressed = false;
-        firePressed = false;
-
-        previousAlienShotTime = System.currentTimeMillis();
-    }
-
-    /**
-     * Initialise the starting state of the entities (ship and aliens). Each
-     * entitiy will be added to the overall list of entities in the game.
-     */
-    private void initEntities() {
-        // create the player ship and place it roughly in the center of the screen
-        ship = new ShipEntity(this, "sprites/ship.gif", 370, 550);
-        entities.add(ship);
-
-        alienCount = 0;
-        if (level != 4) {
-            // create a block of aliens (5 rows, by 12 aliens, spaced evenly)
-            for (int row = 0; row < 3; row++) {
-                for (int x = 0; x < 10; x++) {
-                    AlienEntity alien = new AlienEntity(this, levelsAlienImages.get(level), 100 + (x * 70), (50) + row * 50)
-                            .withAlternateFrame(levelAlternateAlienImages.get(level), 100);
-
-                    if (row == 2) {
-                        alien.setShotAllowed(true);
-                    }
-
-                    alien.row = row;
-                    alien.column = x;
-
-                    entities.add(alien);
-                    alienCount++;
-                }
-            }
-        }
-    }
-
-    /**
-     * This method will redraw all the game frames
-     */
-    private void refreshFrames() {
-        // work out how long its been since the last update, this
-        // will be used to calculate how far the entities should
-        // move this loop
-        long delta = System.currentTimeMillis() - lastLoopTime;
-        lastLoopTime = System.currentTimeMillis();
-
-        // Get hold of a graphics context for the accelerated 
-        // surface and blank it out
-        Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
-
-        g.setColor(Color.black);
-        g.fillRect(0, 0, 800, 600);
-
-        // cycle round asking each entity to move itself
-        if (!waitingForKeyPress) {
-            for (int i = 0; i < entities.size(); i++) {
-                Entity entity = (Entity) entities.get(i);
-
-                entity.move(delta);
-            }
-        }
-
-        new SpriteStore()
-                .getSprite(levelsBackground.get(level))
-                .draw(g, 0, 0);
-
-        // cycle round drawing all the entities we have in the game
-        for (int i = 0; i < entities.size(); i++) {
-            Entity entity = (Entity) entities.get(i);
-
-            entity.draw(g);
+        backend = new BufferStrategyBackend(this, 2);
+        compositor = new RenderCompositor(backend.getConfiguration());
+
+        // only redraw what changed on pipelines without acceleration, e.g.
+        // -Dspaceinvaders.dirtyRects=true -Dspaceinvaders.dirtyThreshold=0.3
+        if (Boolean.getBoolean("spaceinvaders.dirtyRects")) {
+            compositor.setDirtyRectangles(true,
+                    Double.parseDouble(System.getProperty("spaceinvaders.dirtyThreshold", "0.5")));
+            compositor.setTargetRetained(backend.isRetained());
         }
 
-        // brute force collisions, compare every entity against
-        // every other entity. If any of them collide notify 
-        // both entities that the collision has occured
-        for (int p = 0; p < entities.size(); p++) {
-            for (int s = p + 1; s < entities.size(); s++) {
-                Entity me = (Entity) entities.get(p);
-                Entity him = (Entity) entities.get(s);
-
-                if (me.collidesWith(him)) {
-                    me.collidedWith(him);
-                    him.collidedWith(me);
-                }
-            }
-        }
-
-        if (level != 4) {
-            // Check if the aliens can target the ship and shoot if they have a shot
-            ShotEntity shot = null;
-
-            for (Entity current : entities) {
-                if (current instanceof AlienEntity
-                        && current.hasTarget(ship)
-                        && ((AlienEntity) current).shotAllowed()
-                        && System.currentTimeMillis() - previousAlienShotTime >= (Math.random() > 0.5 ? 2000 : 1000)) {
-                    shot = new ShotEntity(this, "assets/drawables/alien_shot.gif", current.getX(), current.getY() + 60);
-                    shot.dy = 350;
-                    previousAlienShotTime = System.currentTimeMillis() - level * 200;
-                }
-            }
-
-            if (shot != null) {
-                entities.add(shot);
-            }
-        }
-
-        // remove any entity that has been marked for clear up
-        entities.removeAll(removeList);
-        removeList.clear();
-
-        // if a game event has indicated that game logic should
-        // be resolved, cycle round every entity requesting that
-        // their personal logic should be considered.
-        if (logicRequiredThisLoop) {
-            for (int i = 0; i < entities.size(); i++) {
-                Entity entity = (Entity) entities.get(i);
-                entity.doLogic();
-            }
-
-            logicRequiredThisLoop = false;
-        }
+        // or write the pixels of each frame directly on a number of threads,
+        // e.g. -Dspaceinvaders.softwareThreads=4
+        compositor.setSoftwareRendering(Integer.getInteger("spaceinvaders.softwareThreads", 0));
 
-        // if we're waiting for an "any key" press then draw the 
-        // current message 
-        if (waitingForKeyPress) {
-            g.setColor(Color.white);
-            g.drawString(message, (800 - g.getFontMetrics().stringWidth(message)) / 2, 250);
-            g.drawString("Press any key", (800 - g.getFontMetrics().stringWidth("Press any key")) / 2, 300);
+        world.setListener(this);
+        world.setMetrics(metrics);
+        loadSounds();
+        if (metrics != null) {
+            metrics.setSounds(sounds);
         }
 
-        g.setFont(new Font("Calibri bold", 24, 23));
-        g.setColor(level == 1 ? Color.red : level == 2 ? Color.orange : Color.green);
-        g.drawString("Level : " + levelsDesc.get(level), 600, 30);
-
-        // finally, we've completed drawing so clear up the graphics
-        // and flip the buffer over
-        g.dispose();
-        strategy.show();
-
-        // resolve the movement of the ship. First assume the ship 
-        // isn't moving. If either cursor key is pressed then
-        // update the movement appropraitely
-        ship.setHorizontalMovement(0);
-
-        if ((leftPressed) && (!rightPressed)) {
-            ship.setHorizontalMovement(-moveSpeed);
-        } else if ((rightPressed) && (!leftPressed)) {
-            ship.setHorizontalMovement(moveSpeed);
-        }
+        // allow the game to be fast forwarded, e.g. -Dspaceinvaders.timeScale=100
+        loop.setTimeScale(Double.parseDouble(System.getProperty("spaceinvaders.timeScale", "1")));
 
-        // if we're pressing fire, attempt to fire
-        if (firePressed) {
-            tryToFire();
+        // record the session to replay later, e.g. -Dspaceinvaders.record=session.rec
+        String recordTo = System.getProperty("spaceinvaders.record");
+        if (recordTo != null) {
+            record(recordTo);
         }
     }
 
     /**
-     * Creates a new meteor entity and adds it to the entities to be rendered.
+     * Record the session from now on, writing the recording out when the
+     * game exits
+     *
+     * @param path The file to write the recording to
      */
-    private void generateMeteor() {
-        int x = (int) (Math.random() * 800), y = -10;
-        
-        MeteorEntity meteor = new MeteorEntity(this, x, y);
-        meteor.dy = 300;
-        
-        if(Math.random() > 0.8)
-            meteor.dx = 200;
-        
-        entities.add(meteor);
-    }
+    private void record(final String path) {
+        final InputRecording recording = new InputRecording(world.getSeed(), loop.getStepNanos());
+        world.setRecording(recording);
 
-    // Creating an explosion at a given point in the screen
-    public void createExplosionAt(double x, double y) {
-        ExplosionEntity explosion = new ExplosionEntity((int) x, (int) y);
-        entities.add(explosion);
-        explosion.playSound();
-
-        Thread animationWait = new Thread(new Runnable() {
-            @Override
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
             public void run() {
                 try {
-                    Thread.sleep(150);
-                    entities.remove(explosion);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
+                    OutputStream out = new BufferedOutputStream(new FileOutputStream(path));
+
+                    try {
+                        recording.write(out);
+                    } finally {
+                        out.close();
+                    }
+                    System.out.println("Recorded " + recording.getSteps() + " steps to " + path);
+                } catch (IOException e) {
+                    System.err.println("Failed to write recording " + path + ": " + e);
                 }
             }
-        });
-
-        animationWait.start();
-    }
-
-    /**
-     * Notification from a game entity that the logic of the game should be run
-     * at the next opportunity (normally as a result of some game event)
-     */
-    public void updateLogic() {
-        logicRequiredThisLoop = true;
+        }, "Recorder"));
     }
 
     /**
-     * Remove an entity from the game. The entity removed will no longer move or
-     * be drawn.
-     *
-     * @param entity The entity that should be removed
+     * Decode the sound effects and start the engine playing them. If there
+     * is no audio line, or the effects can't be decoded (mp3 needs a decoder
+     * on the class path), the effects are played through JavaFX instead.
      */
-    public void removeEntity(Entity entity) {
-        removeList.add(entity);
-
-        if (entity instanceof AlienEntity) {
-            createExplosionAt(entity.getX(), entity.getY());
+    private void loadSounds() {
+        try {
+            sounds = new SoundEngine(8);
+        } catch (LineUnavailableException e) {
+            System.err.println("Playing sound effects through JavaFX: " + e.getMessage());
+            return;
         }
 
-    }
-
-    /**
-     * Notification that the player has died.
-     */
-    public void notifyDeath() {
-        if (!waitingForKeyPress) {
-            createExplosionAt(ship.x, ship.y);
+        try {
+            explosionSound = sounds.load("explosion", getClass().getResource("assets/audio/explosion.mp3"), 4);
+            sounds.start();
+        } catch (IOException e) {
+            System.err.println("Playing sound effects through JavaFX: " + e.getMessage());
+            sounds.close();
+            sounds = null;
         }
-
-        message = "Oh no! They got you, try again?";
-        waitingForKeyPress = true;
     }
 
     /**
-     * Notification that the player has won since all the aliens are dead.
+     * Start a fresh game, this should clear out any old data and create a new
+     * set.
      */
-    public void notifyWin() {
-        message = "Well done! You Win!";
-        waitingForKeyPress = true;
-
-        level++;
+    private void startGame() {
+        // blank out any keyboard settings we might currently have
+        input.clear();
 
-        if (level == 5) {
-            level = 1;
-        }
+        // the world is started between steps, so that a recording can say
+        // exactly when
+        world.post(new WorldCommand() {
+            public void apply(GameWorld world) {
+                world.startGame();
+            }
+        });
     }
 
     /**
-     * Notification that an alien has been killed
+     * This method will redraw all the game frames
+     *
+     * @param snapshot The snapshot of the world to draw
+     * @param alpha How far between the last two simulation steps to draw
+     * the entities, from 0 to 1
      */
-    public void notifyAlienKilled() {
-        // reduce the alient count, if there are none left, the player has won!
-        alienCount--;
+    private void refreshFrames(WorldSnapshot snapshot, double alpha) {
+        // Get hold of a graphics context for the accelerated 
+        // surface and compose the frame onto it
+        long lap = metrics != null ? System.nanoTime() : 0;
+        Graphics2D g = backend.getDrawGraphics();
 
-        if (alienCount == 0) {
-            notifyWin();
+        // a back buffer that was lost no longer holds the last frame
+        if (backend.contentsRestored()) {
+            compositor.invalidate();
         }
+        compositor.render(g, snapshot, alpha);
 
-        // if there are still some aliens left then they all need to get faster, so
-        // speed up all the existing aliens
-        for (int i = 0; i < entities.size(); i++) {
-            Entity entity = (Entity) entities.get(i);
-
-            if (entity instanceof AlienEntity) {
-                // speed up by 2%
-                entity.setHorizontalMovement(entity.getHorizontalMovement() * 1.02);
-            }
+        // finally, we've completed drawing so clear up the graphics
+        // and flip the buffer over
+        g.dispose();
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.RENDER, lap);
         }
-    }
 
-    /**
-     * @param from is the shooter alien that has just died and would like to
-     * leave its shooting capabilities to the next alien in the column.
-     */
-    public void transferShotPower(AlienEntity from) {
-        for (int i = entities.size() - 1; i >= 0; i--) {
-            Entity entity = entities.get(i);
-            if (entity instanceof AlienEntity) {
-                AlienEntity alien = (AlienEntity) entity;
-                if (alien.column == from.column && (alien.row == from.row - 1 || alien.row == from.row - 2)) {
-                    alien.setShotAllowed(true);
-                    break;
-                }
-            }
+        backend.show();
+        if (metrics != null) {
+            metrics.lap(FrameMetrics.SHOW, lap);
+            metrics.endFrame(compositor.getPixelsTouched());
         }
     }
 
     /**
-     * Attempt to fire a shot from the player. Its called "try" since we must
-     * first check that the player can fire at this point, i.e. has he/she
-     * waited long enough between shots
+     * Notification from the world that an explosion has been created, play
+     * its sound
+     *
+     * @param explosion The explosion that has been created
      */
-    public void tryToFire() {
-        // check that we have waiting long enough to fire
-        if (System.currentTimeMillis() - lastFire < firingInterval) {
-            return;
+    public void explosionCreated(ExplosionEntity explosion) {
+        if (sounds != null) {
+            sounds.play(explosionSound);
+        } else {
+            explosion.playSound();
         }
-
-        // if we waited long enough, create the shot entity, and record the time.
-        lastFire = System.currentTimeMillis();
-        ShotEntity shot = new ShotEntity(this, "sprites/shot.gif", ship.getX() + 10, ship.getY() - 30);
-        entities.add(shot);
     }
 
     /**
      * The main game loop. This loop is running during all game play as is
-     * responsible for the following activities:
-     * <p>
-     * - Working out the speed of the game loop to update moves - Moving the
-     * game entities - Drawing the screen contents (entities, text) - Updating
-     * game events - Checking Input
-     * <p>
+     * responsible for drawing the screen contents (entities, text) from the
+     * latest snapshot of the world. The world itself is stepped on the
+     * simulation thread started here.
      */
     public void gameLoop() {
-        lastLoopTime = System.currentTimeMillis();
+        loop.reset();
+        publishSnapshot();
 
-        int i = 0;
+        Thread simulation = new Thread(new Runnable() {
+            public void run() {
+                simulationLoop();
+            }
+        }, "Simulation");
+        simulation.setDaemon(true);
+        simulation.start();
 
         // keep looping round till the game ends
         while (gameRunning) {
             if (!gamePaused) {
-                refreshFrames();
-            }
-
-            if (level == 4 && i++ % 10 == 0 && !waitingForKeyPress) {
-                generateMeteor();
+                // draw the latest snapshot part way to the step after it,
+                // as far as time has moved on since it was captured
+                WorldSnapshot snapshot = snapshots.take();
+                refreshFrames(snapshot, snapshot.getInterpolation(GameClock.SYSTEM.nanoTime()));
             }
 
             // finally pause for a bit. Note: this should run us at about
@@ -538,6 +314,39 @@ public class Game extends Canvas {
         }
     }
 
+    /**
+     * The simulation loop, run on its own thread. Steps the world in fixed
+     * steps for however much time has passed, publishes a snapshot of it,
+     * then sleeps until the next step is due.
+     */
+    private void simulationLoop() {
+        while (gameRunning) {
+            if (gamePaused) {
+                // don't simulate the time spent paused once we resume
+                loop.reset();
+                LockSupport.parkNanos(loop.getStepNanos());
+                continue;
+            }
+
+            if (loop.update(input) > 0) {
+                publishSnapshot();
+            }
+
+            LockSupport.parkNanos(loop.getNanosUntilNextStep());
+        }
+    }
+
+    /**
+     * Capture the world into a snapshot and hand it to the render loop
+     */
+    private void publishSnapshot() {
+        WorldSnapshot snapshot = snapshots.getBack();
+
+        snapshot.capture(world);
+        snapshot.setTiming(loop);
+        snapshots.publish();
+    }
+
     /**
      * A class to handle keyboard input from the user. The class handles both
      * dynamic input during game play, i.e. left/right and shoot, and more
@@ -570,28 +379,29 @@ public class Game extends Canvas {
             if (e.getKeyCode() == KeyEvent.VK_P) {
                 gamePaused = !gamePaused;
 
-                if (!gamePaused) {
-                    lastLoopTime = System.currentTimeMillis();
-                } else {
-                    waitingForKeyPress = true;
-                    message = "PAUSED";
+                if (gamePaused) {
+                    world.post(new WorldCommand() {
+                        public void apply(GameWorld world) {
+                            world.waitForKeyPress("PAUSED");
+                        }
+                    });
                 }
             }
 
             // if we're waiting for an "any key" typed then we don't 
             // want to do anything with just a "press"
-            if (waitingForKeyPress) {
+            if (world.isWaitingForKeyPress()) {
                 return;
             }
 
             if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-                leftPressed = true;
+                input.setLeft(true);
             }
             if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-                rightPressed = true;
+                input.setRight(true);
             }
             if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-                firePressed = true;
+                input.setFire(true);
             }
         }
 
@@ -603,18 +413,18 @@ public class Game extends Canvas {
         public void keyReleased(KeyEvent e) {
             // if we're waiting for an "any key" typed then we don't 
             // want to do anything with just a "released"
-            if (waitingForKeyPress) {
+            if (world.isWaitingForKeyPress()) {
                 return;
             }
 
             if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-                leftPressed = false;
+                input.setLeft(false);
             }
             if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-                rightPressed = false;
+                input.setRight(false);
             }
             if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-                firePressed = false;
+                input.setFire(false);
             }
         }
 
@@ -630,12 +440,11 @@ public class Game extends Canvas {
             // have had a keyType() event from the user releasing
             // the shoot or move keys, hence the use of the "pressCount"
             // counter.
-            if (waitingForKeyPress) {
+            if (world.isWaitingForKeyPress()) {
                 if (pressCount == 1) {
                     // since we've now recieved our key typed
                     // event we can mark it as such and start 
                     // our new game
-                    waitingForKeyPress = false;
                     startGame();
                     pressCount = 0;
                 } else {
@@ -657,6 +466,15 @@ public class Game extends Canvas {
      * @param argv The arguments that are passed into our game
      */
     public static void main(String argv[]) {
+        // decode every image up front, in parallel and from the cache of
+        // decoded images when possible, so the game doesn't stall the first
+        // time each one is drawn
+        AssetLoader.Report assets = SpriteStore.get().preload();
+
+        if (Boolean.getBoolean("spaceinvaders.assetReport")) {
+            System.out.print(assets);
+        }
+
         Game g = new Game();
 
         // The path of the games music
@@ -0,0 +1,512 @@
+package spaceinvaders;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * A player's connection to a {@link GameServer}, predicting the player's own
+ * ship so that it answers the controls at once rather than a round trip
+ * later.
+ *
+ * The client steps at the server's rate, numbering the controls of each
+ * step and sending them along with those the server hasn't yet applied.
+ * Each step it moves its own copy of the ship by the same rule the world
+ * does ({@link ShipEntity#canMove(double, double)}), remembering the
+ * controls and where the ship was predicted to be. Each snapshot says where
+ * the server has the ship after the last controls it applied, so the client
+ * takes that as the truth and replays the controls since to arrive at its
+ * prediction for now. The server applies the controls exactly as the
+ * client did, so the ship only jumps when a datagram was lost or late, or
+ * the ship was hit.
+ *
+ * Everything else is drawn where the latest snapshot has it. Nothing here
+ * blocks: {@link #poll()} handles whatever datagrams have arrived and
+ * {@link #step(int)} sends one.
+ */
+public class GameClient {
+
+    /**
+     * The number of steps of controls and predictions remembered
+     */
+    private static final int HISTORY = 64;
+    /**
+     * The number of steps between attempts to join
+     */
+    private static final int JOIN_INTERVAL = 20;
+
+    /**
+     * The channel to the server
+     */
+    private final DatagramChannel channel;
+    /**
+     * The buffers datagrams are read into and written from
+     */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.MAX_DATAGRAM);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(NetProtocol.MAX_DATAGRAM);
+    /**
+     * The session asked for, -1 for any
+     */
+    private final int wanted;
+
+    /**
+     * The session joined and the player's seat in it, -1 until welcomed
+     */
+    private int session = -1, player = -1;
+    /**
+     * True if the server turned the player away
+     */
+    private boolean full;
+    /**
+     * The number of steps taken while waiting to be welcomed
+     */
+    private int joinSteps;
+    /**
+     * The length of a step (ms) and the speed of a ship (pixels/sec), as
+     * the server has them
+     */
+    private long delta;
+    private double moveSpeed;
+
+    /**
+     * The sequence of the last controls sent, -1 before any
+     */
+    private int sequence = -1;
+    /**
+     * The last of the controls the server has applied, -1 before any
+     */
+    private int acknowledged = -1;
+    /**
+     * The controls of each recent step, indexed by sequence modulo the
+     * history's size
+     */
+    private final byte[] history = new byte[HISTORY];
+    /**
+     * Where the ship was predicted to be after each recent step
+     */
+    private final double[] predicted = new double[HISTORY];
+    /**
+     * The predicted location and speed of the player's ship
+     */
+    private double x, dx;
+    private int y;
+    /**
+     * True if the player's ship has been destroyed
+     */
+    private boolean destroyed;
+
+    /**
+     * The server step of the latest snapshot, -1 before any
+     */
+    private long snapshotStep = -1;
+    /**
+     * The level and whether play is held up, as of the latest snapshot
+     */
+    private int level;
+    private boolean waiting = true;
+    /**
+     * The ships of every player, as of the latest snapshot
+     */
+    private int shipCount;
+    private double[] shipX = new double[0];
+    private int[] shipY = new int[0], shipState = new int[0];
+    /**
+     * The aliens, as of the latest snapshot
+     */
+    private boolean hasFormation;
+    private double formationX, formationY;
+    private int columns, spacingX, spacingY;
+    private long[] alive = new long[0];
+    /**
+     * The other entities, as of the latest snapshot
+     */
+    private int entityCount;
+    private int[] entityLayer = new int[64], entityX = new int[64], entityY = new int[64];
+
+    /**
+     * The number of snapshots used, those whose newly applied controls
+     * left the ship somewhere other than predicted, the distance it was
+     * moved by (pixels) and the steps the prediction ran ahead by
+     */
+    private long snapshots, mispredictions;
+    private double correction;
+    private long lead;
+
+    /**
+     * Create a client and start joining a session
+     *
+     * @param server The address of the server
+     * @param wanted The session to join, -1 for the first with a free seat
+     * @throws IOException If the channel can't be opened
+     */
+    public GameClient(InetSocketAddress server, int wanted) throws IOException {
+        this.wanted = wanted;
+
+        channel = DatagramChannel.open();
+        channel.connect(server);
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Take one step with the given controls, predicting the ship's move and
+     * sending the controls to the server. Until the server has welcomed the
+     * player this asks to join instead.
+     *
+     * @param controls The controls held, as {@link InputState} bits
+     * @throws IOException If the channel fails
+     */
+    public void step(int controls) throws IOException {
+        if (player < 0) {
+            if (!full && joinSteps++ % JOIN_INTERVAL == 0) {
+                out.clear();
+                out.put(NetProtocol.JOIN);
+                out.putInt(NetProtocol.MAGIC);
+                out.putInt(wanted);
+                out.flip();
+                channel.write(out);
+            }
+            return;
+        }
+
+        sequence++;
+        history[sequence & (HISTORY - 1)] = (byte) controls;
+        predict(controls);
+        predicted[sequence & (HISTORY - 1)] = x;
+
+        // send every step the server hasn't applied, as far as fits
+        int first = Math.max(acknowledged + 1, sequence - Math.min(HISTORY, NetProtocol.MAX_INPUTS) + 1);
+
+        out.clear();
+        out.put(NetProtocol.INPUT);
+        out.putInt(first);
+        out.put((byte) (sequence - first + 1));
+        for (int i = first; i <= sequence; i++) {
+            out.put(history[i & (HISTORY - 1)]);
+        }
+        out.flip();
+        channel.write(out);
+    }
+
+    /**
+     * Move the predicted ship one step, as the world would move it and then
+     * apply the controls
+     */
+    private void predict(int controls) {
+        if (!waiting && !destroyed && ShipEntity.canMove(x, dx)) {
+            x += (delta * dx) / 1000;
+        }
+        if (!destroyed) {
+            dx = ShipEntity.speedFor(controls, moveSpeed);
+        }
+    }
+
+    /**
+     * Handle every datagram that has arrived from the server
+     *
+     * @throws IOException If the channel fails
+     */
+    public void poll() throws IOException {
+        while (true) {
+            in.clear();
+            if (channel.read(in) <= 0) {
+                return;
+            }
+
+            in.flip();
+            byte kind = in.get();
+
+            if (kind == NetProtocol.SNAPSHOT) {
+                readSnapshot(in);
+            } else if (kind == NetProtocol.WELCOME && player < 0) {
+                session = in.getInt();
+                player = in.get();
+                in.get();
+                delta = in.getLong() / 1000000;
+                moveSpeed = in.getDouble();
+            } else if (kind == NetProtocol.FULL) {
+                full = true;
+            }
+        }
+    }
+
+    /**
+     * Take in a snapshot, unless a later one has already been seen, and
+     * bring the predicted ship into line with it
+     */
+    private void readSnapshot(ByteBuffer message) {
+        long step = message.getLong();
+        if (step <= snapshotStep || player < 0) {
+            return;
+        }
+        snapshotStep = step;
+
+        int applied = message.getInt();
+        level = message.get();
+        waiting = (message.get() & NetProtocol.FLAG_WAITING) != 0;
+
+        shipCount = message.get();
+        if (shipX.length < shipCount) {
+            shipX = new double[shipCount];
+            shipY = new int[shipCount];
+            shipState = new int[shipCount];
+        }
+        for (int i = 0; i < shipCount; i++) {
+            shipX[i] = message.getDouble();
+            shipY[i] = message.getShort();
+            shipState[i] = message.get();
+        }
+
+        hasFormation = message.get() != 0;
+        if (hasFormation) {
+            formationX = message.getFloat();
+            formationY = message.getFloat();
+            columns = message.getShort();
+            spacingX = message.getShort();
+            spacingY = message.getShort();
+
+            int words = message.get();
+            if (alive.length != words) {
+                alive = new long[words];
+            }
+            for (int i = 0; i < words; i++) {
+                alive[i] = message.getLong();
+            }
+        }
+
+        entityCount = message.getShort();
+        if (entityLayer.length < entityCount) {
+            int capacity = Math.max(entityCount, entityLayer.length * 2);
+
+            entityLayer = Arrays.copyOf(entityLayer, capacity);
+            entityX = Arrays.copyOf(entityX, capacity);
+            entityY = Arrays.copyOf(entityY, capacity);
+        }
+        for (int i = 0; i < entityCount; i++) {
+            entityLayer[i] = message.get();
+            entityX[i] = message.getShort();
+            entityY[i] = message.getShort();
+        }
+
+        if (player < shipCount) {
+            reconcile(applied);
+        }
+    }
+
+    /**
+     * Start the prediction again from where the server has the ship, and
+     * replay the controls it hasn't applied yet
+     *
+     * @param applied The last of the controls the server has applied
+     */
+    private void reconcile(int applied) {
+        double serverX = shipX[player];
+        int state = shipState[player];
+
+        // the predictions made before the first snapshot had nothing to
+        // start from
+        if (snapshots > 0 && applied > acknowledged && applied > sequence - HISTORY) {
+            double error = Math.abs(predicted[applied & (HISTORY - 1)] - serverX);
+
+            if (error != 0) {
+                mispredictions++;
+                correction += error;
+            }
+        }
+        snapshots++;
+        acknowledged = Math.max(acknowledged, applied);
+        lead += sequence - applied;
+
+        x = serverX;
+        y = shipY[player];
+        destroyed = (state & NetProtocol.SHIP_DESTROYED) != 0;
+        dx = (state & NetProtocol.SHIP_LEFT) != 0 ? -moveSpeed : (state & NetProtocol.SHIP_RIGHT) != 0 ? moveSpeed : 0;
+
+        for (int i = Math.max(applied + 1, sequence - HISTORY + 1); i <= sequence; i++) {
+            predict(history[i & (HISTORY - 1)]);
+            predicted[i & (HISTORY - 1)] = x;
+        }
+    }
+
+    /**
+     * Tell the server the player is leaving and close the connection
+     */
+    public void close() {
+        try {
+            if (player >= 0) {
+                out.clear();
+                out.put(NetProtocol.LEAVE);
+                out.flip();
+                channel.write(out);
+            }
+            channel.close();
+        } catch (IOException e) {
+            // the server will drop the player when it stops hearing from them
+        }
+    }
+
+    /**
+     * @return True once the server has given the player a seat
+     */
+    public boolean isJoined() {
+        return player >= 0;
+    }
+
+    /**
+     * @return True if the server turned the player away
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return The session joined, -1 until welcomed
+     */
+    public int getSession() {
+        return session;
+    }
+
+    /**
+     * @return The player's seat in the session, -1 until welcomed
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * @return The predicted x location of the player's ship
+     */
+    public double getPredictedX() {
+        return x;
+    }
+
+    /**
+     * @return The y location of the player's ship
+     */
+    public int getShipY() {
+        return y;
+    }
+
+    /**
+     * @return True if the player's ship has been destroyed
+     */
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * @return The number of ships in the session
+     */
+    public int getShipCount() {
+        return shipCount;
+    }
+
+    /**
+     * @param ship The index of a ship
+     * @return The x location of the ship as of the latest snapshot
+     */
+    public double getShipX(int ship) {
+        return shipX[ship];
+    }
+
+    /**
+     * @return The number of entities other than ships in the latest
+     * snapshot
+     */
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * @param entity The index of an entity
+     * @return The collision layer of the entity, which says what it is
+     */
+    public int getEntityLayer(int entity) {
+        return entityLayer[entity];
+    }
+
+    public int getEntityX(int entity) {
+        return entityX[entity];
+    }
+
+    public int getEntityY(int entity) {
+        return entityY[entity];
+    }
+
+    /**
+     * @return True if the latest snapshot has aliens
+     */
+    public boolean hasFormation() {
+        return hasFormation;
+    }
+
+    /**
+     * @param alien The index of an alien in the grid
+     * @return True if the alien was alive in the latest snapshot
+     */
+    public boolean isAlienAlive(int alien) {
+        return (alive[alien >>> 6] & (1L << alien)) != 0;
+    }
+
+    /**
+     * @param alien The index of an alien in the grid
+     * @return The x location of the alien in the latest snapshot
+     */
+    public int getAlienX(int alien) {
+        return (int) (formationX + (alien % columns) * spacingX);
+    }
+
+    /**
+     * @param alien The index of an alien in the grid
+     * @return The y location of the alien in the latest snapshot
+     */
+    public int getAlienY(int alien) {
+        return (int) (formationY + (alien / columns) * spacingY);
+    }
+
+    /**
+     * @return The level being played
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return True if play is held up between games
+     */
+    public boolean isWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return The number of snapshots taken in
+     */
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return The number of snapshots that found the ship somewhere other
+     * than predicted
+     */
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    /**
+     * @return The total distance the ship was moved by to agree with the
+     * server (pixels)
+     */
+    public double getCorrection() {
+        return correction;
+    }
+
+    /**
+     * @return The total over every snapshot of the number of steps the
+     * prediction was ahead of the server
+     */
+    public long getLead() {
+        return lead;
+    }
+}
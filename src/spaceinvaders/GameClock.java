@@ -0,0 +1,26 @@
+package spaceinvaders;
+
+/**
+ * A source of time for driving the simulation. The game normally runs from
+ * the system's high resolution timer, tests and headless runners can supply
+ * a {@link ManualClock} instead so that time only passes when they say so.
+ */
+public interface GameClock {
+
+    /**
+     * The clock backed by {@link System#nanoTime()}
+     */
+    GameClock SYSTEM = new GameClock() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Get the current time. Only the difference between two readings is
+     * meaningful.
+     *
+     * @return The current time in nanoseconds
+     */
+    long nanoTime();
+}
@@ -0,0 +1,16 @@
+package spaceinvaders;
+
+/**
+ * Receives notification of the events in a {@link GameWorld} that are of
+ * interest to a front end but have no effect on the simulation itself, such
+ * as playing sounds.
+ */
+public interface GameListener {
+
+    /**
+     * Notification that an explosion has been created in the world
+     *
+     * @param explosion The explosion that has just been added
+     */
+    void explosionCreated(ExplosionEntity explosion);
+}
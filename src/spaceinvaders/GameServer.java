@@ -0,0 +1,477 @@
+package spaceinvaders;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An authoritative server hosting many {@link GameSession}s on one UDP port,
+ * each a game for a fixed number of players.
+ *
+ * <pre>
+ * java spaceinvaders.GameServer [-port n] [-seats n] [-sessions n] [-seed n]
+ *     [-snapshotInterval steps] [-report seconds]
+ * </pre>
+ *
+ * A single thread does everything: it waits on a selector for datagrams
+ * until the next tick is due, reads every datagram waiting without
+ * blocking, and on each tick steps every session once and sends its
+ * players a snapshot. Sessions are made as players ask to join, up to the
+ * most allowed, and dropped once their last player has left. Players that
+ * haven't been heard from for a few seconds are taken to have left.
+ *
+ * The time each session's tick takes, stepping its world and sending its
+ * snapshots, is recorded, and a report of its percentiles and the share of
+ * the tick they add up to is printed every few seconds. A server that falls
+ * behind skips ticks rather than trying to catch up.
+ */
+public class GameServer implements Runnable {
+
+    /**
+     * The time after which a silent player is dropped (ns)
+     */
+    private static final long TIMEOUT_NANOS = 5000000000L;
+    /**
+     * The most ticks a server may fall behind before skipping them
+     */
+    private static final int MAX_BEHIND = 10;
+    /**
+     * The number of session ticks the percentiles are taken over
+     */
+    private static final int WINDOW = 16384;
+
+    /**
+     * The channel every datagram is sent and received on
+     */
+    private final DatagramChannel channel;
+    /**
+     * The selector waited on for datagrams between ticks
+     */
+    private final Selector selector;
+    /**
+     * The number of players in each session
+     */
+    private final int seats;
+    /**
+     * The seed of the first session's world, each later one adds its index
+     */
+    private final long seed;
+    /**
+     * The sessions by index, null where there is none
+     */
+    private final GameSession[] sessions;
+    /**
+     * The sessions being played, in the order they were made
+     */
+    private final List<GameSession> active = new ArrayList<GameSession>();
+    /**
+     * The players by the address their datagrams come from
+     */
+    private final Map<SocketAddress, GameSession.Player> players = new HashMap<SocketAddress, GameSession.Player>();
+    /**
+     * The buffers datagrams are read into and written from
+     */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.MAX_DATAGRAM);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(NetProtocol.MAX_DATAGRAM);
+    /**
+     * The length of a step (ns)
+     */
+    private long stepNanos = SimulationLoop.DEFAULT_STEP_NANOS;
+    /**
+     * The number of steps between snapshots
+     */
+    private int snapshotInterval = 1;
+    /**
+     * The time between reports printed while running (ns), 0 for none
+     */
+    private long reportNanos;
+    /**
+     * False once the server has been asked to stop
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The time of each session's ticks (ns)
+     */
+    private final RollingHistogram sessionTicks = new RollingHistogram(WINDOW);
+    /**
+     * The number of ticks, skipped ticks, datagrams and bytes since the last
+     * report, and the time spent ticking (ns)
+     */
+    private long ticks, skipped, received, sent, bytesSent, busyNanos;
+    /**
+     * The time of the last report (ns)
+     */
+    private long reportedAt;
+
+    /**
+     * Create a server, bound and ready to run
+     *
+     * @param address The address to listen on, port 0 for any free port
+     * @param seats The number of players in each session
+     * @param maxSessions The most sessions to host at once
+     * @param seed The seed of the first session's world
+     * @throws IOException If the channel can't be opened
+     */
+    public GameServer(InetSocketAddress address, int seats, int maxSessions, long seed) throws IOException {
+        if (seats < 1 || seats > 64) {
+            throw new IllegalArgumentException("Sessions must have from 1 to 64 seats: " + seats);
+        }
+
+        this.seats = seats;
+        this.seed = seed;
+        this.sessions = new GameSession[maxSessions];
+
+        channel = DatagramChannel.open();
+        // hundreds of players' datagrams can arrive between two reads
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 << 20);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 4 << 20);
+        channel.bind(address);
+        channel.configureBlocking(false);
+
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * @param snapshotInterval The number of steps between snapshots
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * @param seconds The time between reports printed while running, 0 for
+     * none
+     */
+    public void setReportInterval(double seconds) {
+        this.reportNanos = (long) (seconds * 1e9);
+    }
+
+    /**
+     * @return The port the server is listening on
+     * @throws IOException If the channel has been closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Run the server until it's stopped, then close it
+     */
+    public void run() {
+        try {
+            long next = System.nanoTime();
+            reportedAt = next;
+
+            while (running) {
+                long wait = next - System.nanoTime();
+
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1000000));
+                } else {
+                    selector.selectNow();
+                }
+                selector.selectedKeys().clear();
+                receive();
+
+                long now = System.nanoTime();
+                if (now - next >= 0) {
+                    tick(now);
+                    next += stepNanos;
+
+                    // too far behind to catch up, carry on from now
+                    if (now - next > MAX_BEHIND * stepNanos) {
+                        skipped += (now - next) / stepNanos;
+                        next = now + stepNanos;
+                    }
+                }
+
+                if (reportNanos > 0 && now - reportedAt >= reportNanos) {
+                    System.out.println(report());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Game server failed: " + e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Ask the server to stop, from any thread
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void close() {
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            // nothing more can be done with it
+        }
+    }
+
+    /**
+     * Read and handle every datagram waiting
+     */
+    private void receive() throws IOException {
+        SocketAddress from;
+
+        while (true) {
+            in.clear();
+            from = channel.receive(in);
+            if (from == null) {
+                return;
+            }
+
+            in.flip();
+            received++;
+            if (in.hasRemaining()) {
+                handle(from, in);
+            }
+        }
+    }
+
+    /**
+     * Handle a datagram from a client
+     */
+    private void handle(SocketAddress from, ByteBuffer message) throws IOException {
+        byte kind = message.get();
+        GameSession.Player player = players.get(from);
+
+        if (player != null) {
+            player.lastHeard = System.nanoTime();
+        }
+
+        if (kind == NetProtocol.INPUT && player != null && message.remaining() >= 5) {
+            int first = message.getInt();
+            int count = Math.min(message.get() & 0xff, message.remaining());
+
+            player.receive(first, message, Math.min(count, NetProtocol.MAX_INPUTS));
+        } else if (kind == NetProtocol.JOIN && message.remaining() >= 8 && message.getInt() == NetProtocol.MAGIC) {
+            int wanted = message.getInt();
+
+            if (player == null) {
+                player = join(from, wanted);
+            }
+            // a repeated join is answered again, the first welcome was lost
+            if (player != null) {
+                sendWelcome(player);
+            } else {
+                out.clear();
+                out.put(NetProtocol.FULL);
+                out.flip();
+                channel.send(out, from);
+            }
+        } else if (kind == NetProtocol.LEAVE && player != null) {
+            leave(player);
+        }
+    }
+
+    /**
+     * Seat a new player in the session they asked for, or the first with a
+     * free seat, making the session if need be
+     *
+     * @return The player, or null if there's no room
+     */
+    private GameSession.Player join(SocketAddress from, int wanted) {
+        GameSession session = null;
+
+        if (wanted >= 0 && wanted < sessions.length) {
+            session = sessionAt(wanted);
+        } else if (wanted < 0) {
+            for (GameSession candidate : active) {
+                if (candidate.getJoined() < candidate.getSeats()) {
+                    session = candidate;
+                    break;
+                }
+            }
+            for (int i = 0; session == null && i < sessions.length; i++) {
+                if (sessions[i] == null) {
+                    session = sessionAt(i);
+                }
+            }
+        }
+
+        GameSession.Player player = session != null ? session.join(from) : null;
+        if (player == null) {
+            return null;
+        }
+
+        player.lastHeard = System.nanoTime();
+        players.put(from, player);
+        return player;
+    }
+
+    /**
+     * Get a session, making it if there isn't one
+     */
+    private GameSession sessionAt(int index) {
+        if (sessions[index] == null) {
+            sessions[index] = new GameSession(index, seed + index, seats);
+            active.add(sessions[index]);
+        }
+
+        return sessions[index];
+    }
+
+    /**
+     * Free a player's seat, dropping their session if it's now empty
+     */
+    private void leave(GameSession.Player player) {
+        GameSession session = player.session;
+
+        players.remove(player.address);
+        session.leave(player);
+
+        if (session.getJoined() == 0) {
+            sessions[session.getId()] = null;
+            active.remove(session);
+        }
+    }
+
+    private void sendWelcome(GameSession.Player player) throws IOException {
+        GameWorld world = player.session.getWorld();
+
+        out.clear();
+        out.put(NetProtocol.WELCOME);
+        out.putInt(player.session.getId());
+        out.put((byte) player.index);
+        out.put((byte) world.getPlayerCount());
+        out.putLong(stepNanos);
+        out.putDouble(world.getMoveSpeed());
+        out.flip();
+        channel.send(out, player.address);
+    }
+
+    /**
+     * Step every session once and send the snapshots due
+     *
+     * @param now The time of the tick (ns)
+     */
+    private void tick(long now) throws IOException {
+        boolean snapshot = ticks % snapshotInterval == 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < active.size(); i++) {
+            GameSession session = active.get(i);
+            long sessionStart = System.nanoTime();
+
+            session.step(stepNanos);
+            if (snapshot) {
+                bytesSent += session.sendSnapshots(channel, out);
+                sent += session.getJoined();
+            }
+
+            long elapsed = System.nanoTime() - sessionStart;
+            session.recordTick(elapsed);
+            sessionTicks.record(elapsed);
+        }
+        busyNanos += System.nanoTime() - start;
+        ticks++;
+
+        // drop the players that have gone quiet, once a second
+        if (ticks % 100 == 0) {
+            for (GameSession.Player player : new ArrayList<GameSession.Player>(players.values())) {
+                if (now - player.lastHeard > TIMEOUT_NANOS) {
+                    leave(player);
+                }
+            }
+        }
+    }
+
+    /**
+     * Describe the cost of the sessions' ticks since the last report, and
+     * start the next
+     *
+     * @return The report
+     */
+    public String report() {
+        long now = System.nanoTime();
+        double seconds = (now - reportedAt) / 1e9;
+        long[] percentiles = sessionTicks.percentiles(50, 99, 99.9);
+        double tickBudget = ticks > 0 ? 100.0 * busyNanos / (ticks * (double) stepNanos) : 0;
+
+        String report = String.format("%d sessions, %d players, %d ticks (%d skipped): "
+                + "per session tick p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us, slowest mean %.1f us; "
+                + "%.1f%% of each %.1f ms tick; %.0f datagrams/s in, %.0f out, %.1f kB/s out",
+                active.size(), players.size(), ticks, skipped,
+                percentiles[0] / 1e3, percentiles[1] / 1e3, percentiles[2] / 1e3, sessionTicks.getMax() / 1e3,
+                slowestMeanTick() / 1e3, tickBudget, stepNanos / 1e6,
+                received / seconds, sent / seconds, bytesSent / seconds / 1e3);
+
+        ticks = 0;
+        skipped = 0;
+        received = 0;
+        sent = 0;
+        bytesSent = 0;
+        busyNanos = 0;
+        reportedAt = now;
+        sessionTicks.reset();
+
+        return report;
+    }
+
+    /**
+     * @return The mean tick of the slowest session (ns)
+     */
+    private double slowestMeanTick() {
+        double slowest = 0;
+
+        for (GameSession session : active) {
+            slowest = Math.max(slowest, session.getMeanTickNanos());
+        }
+
+        return slowest;
+    }
+
+    public static void main(String argv[]) throws IOException {
+        int port = 7777, seats = 2, sessions = 500;
+        long seed = 1;
+        int snapshotInterval = 1;
+        double report = 5;
+
+        for (int i = 0; i + 1 < argv.length; i += 2) {
+            String value = argv[i + 1];
+
+            if (argv[i].equals("-port")) {
+                port = Integer.parseInt(value);
+            } else if (argv[i].equals("-seats")) {
+                seats = Integer.parseInt(value);
+            } else if (argv[i].equals("-sessions")) {
+                sessions = Integer.parseInt(value);
+            } else if (argv[i].equals("-seed")) {
+                seed = Long.parseLong(value);
+            } else if (argv[i].equals("-snapshotInterval")) {
+                snapshotInterval = Integer.parseInt(value);
+            } else if (argv[i].equals("-report")) {
+                report = Double.parseDouble(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + argv[i]);
+            }
+        }
+
+        // the server never draws anything
+        System.setProperty("java.awt.headless", "true");
+
+        GameServer server = new GameServer(new InetSocketAddress(port), seats, sessions, seed);
+        server.setSnapshotInterval(snapshotInterval);
+        server.setReportInterval(report);
+
+        System.out.println("Serving sessions of " + seats + " players on port " + server.getPort());
+        server.run();
+    }
+}
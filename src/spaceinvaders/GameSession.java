@@ -0,0 +1,314 @@
+package spaceinvaders;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * A game hosted by a {@link GameServer}: an authoritative world shared by a
+ * fixed number of players, each controlling their own ship from a
+ * {@link GameClient}.
+ *
+ * A client sends the controls of each of its steps numbered in order. They
+ * are buffered here and the world applies one per player each step, so a
+ * ship moves exactly as its client predicted it would. If a player's next
+ * controls haven't arrived the last are held and the player's sequence
+ * doesn't move on, so the client's prediction is put right by the next
+ * snapshot. A client that has got further ahead than the buffer allows
+ * has its oldest controls dropped.
+ *
+ * The game starts once every player has joined and restarts a second after
+ * it ends. A player who leaves keeps their ship in the game, standing still,
+ * until someone else takes their place.
+ */
+public class GameSession {
+
+    /**
+     * The number of controls buffered for each player
+     */
+    private static final int BUFFER = 64;
+    /**
+     * The most controls a player may be ahead by before the oldest are
+     * dropped
+     */
+    private static final int MAX_AHEAD = 8;
+    /**
+     * The number of steps the end of a game is shown for before the next
+     * starts
+     */
+    private static final int RESTART_STEPS = 100;
+
+    /**
+     * A player taking part in the session
+     */
+    static class Player {
+
+        /**
+         * The session played in
+         */
+        final GameSession session;
+        /**
+         * The index of the player's ship
+         */
+        final int index;
+        /**
+         * Where the player's datagrams come from and snapshots are sent
+         */
+        final SocketAddress address;
+        /**
+         * The controls received, indexed by sequence modulo the buffer size
+         */
+        private final byte[] buffered = new byte[BUFFER];
+        /**
+         * The sequence held in each slot of the buffer, -1 if none
+         */
+        private final int[] sequences = new int[BUFFER];
+        /**
+         * The sequence of the last controls applied, -1 before any
+         */
+        int applied = -1;
+        /**
+         * The highest sequence received
+         */
+        int received = -1;
+        /**
+         * The time a datagram was last heard from the player (ns)
+         */
+        long lastHeard;
+
+        Player(GameSession session, int index, SocketAddress address) {
+            this.session = session;
+            this.index = index;
+            this.address = address;
+            Arrays.fill(sequences, -1);
+        }
+
+        /**
+         * Buffer the controls of a run of steps, ignoring those already
+         * applied or too far ahead to hold
+         *
+         * @param first The sequence of the first controls
+         * @param controls The message holding the controls
+         * @param count The number of controls
+         */
+        void receive(int first, ByteBuffer controls, int count) {
+            for (int i = 0; i < count; i++) {
+                int sequence = first + i;
+                byte bits = controls.get();
+
+                if (sequence > applied && sequence - applied <= BUFFER) {
+                    buffered[sequence & (BUFFER - 1)] = bits;
+                    sequences[sequence & (BUFFER - 1)] = sequence;
+                    received = Math.max(received, sequence);
+                }
+            }
+        }
+
+        /**
+         * Take the controls for the next step, if they've arrived
+         *
+         * @param input The controls to set, left as they were if the next
+         * haven't arrived
+         */
+        void apply(InputState input) {
+            // drop the oldest if the client has got too far ahead
+            if (received - applied > MAX_AHEAD) {
+                applied = received - MAX_AHEAD;
+                if (sequences[applied & (BUFFER - 1)] == applied) {
+                    input.setBits(buffered[applied & (BUFFER - 1)]);
+                }
+            }
+
+            int next = applied + 1;
+            if (sequences[next & (BUFFER - 1)] == next) {
+                input.setBits(buffered[next & (BUFFER - 1)]);
+                applied = next;
+            }
+        }
+    }
+
+    /**
+     * The index of this session on its server
+     */
+    private final int id;
+    /**
+     * The authoritative world
+     */
+    private final GameWorld world;
+    /**
+     * The players in each seat, null for a seat no one has taken
+     */
+    private final Player[] players;
+    /**
+     * The controls of each seat, held from step to step
+     */
+    private final InputState[] inputs;
+    /**
+     * The number of seats taken
+     */
+    private int joined;
+    /**
+     * The number of steps the world has waited for a new game to start
+     */
+    private int waited;
+    /**
+     * The world's drawable state, captured to write snapshots from
+     */
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+    /**
+     * The time spent stepping the session and sending its snapshots (ns)
+     */
+    private long tickNanos;
+    /**
+     * The number of times the session has been stepped
+     */
+    private long ticks;
+
+    /**
+     * Create a session waiting for its players
+     *
+     * @param id The index of the session on its server
+     * @param seed The seed of the world's random numbers
+     * @param seats The number of players the game is for
+     */
+    public GameSession(int id, long seed, int seats) {
+        this.id = id;
+        this.world = new GameWorld(seed, seats);
+        this.players = new Player[seats];
+        this.inputs = new InputState[seats];
+
+        for (int i = 0; i < seats; i++) {
+            inputs[i] = new InputState();
+        }
+        world.waitForKeyPress("Waiting for " + seats + " players");
+    }
+
+    /**
+     * Seat a player in the first free seat
+     *
+     * @param address Where the player's datagrams come from
+     * @return The player, or null if every seat is taken
+     */
+    Player join(SocketAddress address) {
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == null) {
+                players[i] = new Player(this, i, address);
+                inputs[i].clear();
+                joined++;
+                return players[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Free a player's seat, their ship stands still until it's taken again
+     *
+     * @param player The player leaving
+     */
+    void leave(Player player) {
+        if (players[player.index] == player) {
+            players[player.index] = null;
+            inputs[player.index].clear();
+            joined--;
+        }
+    }
+
+    /**
+     * Advance the world one step with each player's next controls, starting
+     * a new game when it's due
+     *
+     * @param stepNanos The length of the step (ns)
+     */
+    void step(long stepNanos) {
+        if (world.isWaitingForKeyPress()) {
+            if (joined == players.length && ++waited >= RESTART_STEPS) {
+                world.startGame();
+                waited = 0;
+            }
+        } else {
+            waited = 0;
+        }
+
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] != null) {
+                players[i].apply(inputs[i]);
+            }
+        }
+        world.step(stepNanos, inputs);
+    }
+
+    /**
+     * Send the state of the world to every player, each told the last of
+     * their controls applied
+     *
+     * @param channel The channel to send from
+     * @param buffer A buffer of at least {@link NetProtocol#MAX_DATAGRAM}
+     * bytes to write the snapshot into
+     * @return The number of bytes sent
+     * @throws IOException If the channel fails
+     */
+    int sendSnapshots(DatagramChannel channel, ByteBuffer buffer) throws IOException {
+        snapshot.capture(world);
+        NetProtocol.writeSnapshot(buffer, world, snapshot);
+
+        int sent = 0;
+        for (Player player : players) {
+            if (player != null) {
+                buffer.putInt(NetProtocol.ACK_OFFSET, player.applied);
+                buffer.rewind();
+                sent += channel.send(buffer, player.address);
+            }
+        }
+
+        return sent;
+    }
+
+    /**
+     * Add the time spent on one tick of this session
+     *
+     * @param nanos The time spent stepping and sending (ns)
+     */
+    void recordTick(long nanos) {
+        tickNanos += nanos;
+        ticks++;
+    }
+
+    /**
+     * @return The mean time spent on each tick of this session (ns)
+     */
+    public double getMeanTickNanos() {
+        return ticks > 0 ? (double) tickNanos / ticks : 0;
+    }
+
+    /**
+     * @return The index of this session on its server
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The number of seats taken
+     */
+    public int getJoined() {
+        return joined;
+    }
+
+    /**
+     * @return The number of players the game is for
+     */
+    public int getSeats() {
+        return players.length;
+    }
+
+    /**
+     * @return The authoritative world
+     */
+    public GameWorld getWorld() {
+        return world;
+    }
+}
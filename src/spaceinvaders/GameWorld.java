@@ -0,0 +1,1253 @@
+package spaceinvaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The simulation of a single game of space invaders. The world owns all of
+ * the entities and acts as the central mediator for the game logic: entities
+ * notify it when events occur (alien killed, player died) and it takes the
+ * appropriate game actions.
+ *
+ * The world has no dependency on a display. It is advanced explicitly by
+ * calling {@link #step(long, InputState)}, which allows it to be driven by the
+ * windowed {@link Game} as well as by headless runners at whatever speed the
+ * CPU allows.
+ *
+ * All of the world's randomness comes from its own seeded generator, so two
+ * worlds created with the same seed and given the same controls at every
+ * step play out identically. This is what allows sessions to be recorded
+ * with an {@link InputRecording} and replayed.
+ *
+ * A world may be created for several players, each with a ship of their
+ * own along the bottom of the screen and controls passed in for each step.
+ * Every ship is fired on and can be hit, a ship that is hit is destroyed
+ * and the game only ends once every ship has been, or the aliens reach the
+ * bottom. With a single player a hit ends the game at once, as it always
+ * has.
+ */
+public class GameWorld {
+
+    /**
+     * The width of the playing area in pixels
+     */
+    public static final int WIDTH = 800;
+    /**
+     * The height of the playing area in pixels
+     */
+    public static final int HEIGHT = 600;
+
+    /**
+     * The list of all the entities that exist in our game
+     */
+    private ArrayList<Entity> entities = new ArrayList<Entity>();
+    /**
+     * The number of entities marked to be removed from the game this step
+     */
+    private int pendingRemovals;
+    /**
+     * The changes posted from other threads, applied at the start of each step
+     */
+    private CommandQueue commands = new CommandQueue();
+    /**
+     * The entity representing each player, indexed by player
+     */
+    private ShipEntity[] ships;
+    /**
+     * The number of ships not yet destroyed this game
+     */
+    private int shipsLeft;
+    /**
+     * The controls each player holds for the current step
+     */
+    private final int[] controls;
+    /**
+     * The speed at which the player's ship should move (pixels/sec)
+     */
+    private double moveSpeed = 400;
+    /**
+     * The time at which each player last fired a shot
+     */
+    private final long[] lastFire;
+    /**
+     * The interval between our players shot (ms)
+     */
+    private long firingInterval = 300;
+    /**
+     * The aliens, null on the level without them
+     */
+    private AlienFormation formation;
+    /**
+     * The message to display which waiting for a key press
+     */
+    private String message = "";
+    /**
+     * True if we're holding up game play until the player starts a new game,
+     * read by the key handler on another thread
+     */
+    private volatile boolean waitingForKeyPress = true;
+    /**
+     * True if game logic needs to be applied this step, normally as a result
+     * of a game event
+     */
+    private boolean logicRequiredThisLoop = false;
+    /**
+     * The amount of simulated time that has passed in this world (ns). All
+     * game timing (firing, alien shots, meteors) is measured against this
+     * rather than the wall clock so that it is deterministic and
+     * independent of frame rate.
+     */
+    private long timeNanos;
+    /**
+     * The amount of simulated time that has passed in whole milliseconds
+     */
+    private long time;
+    /**
+     * The number of steps taken
+     */
+    private long stepCount;
+    /**
+     * True while a step is being taken
+     */
+    private boolean stepping;
+    /**
+     * The seed the random numbers were generated from
+     */
+    private final long seed;
+    /**
+     * The source of every random decision in the game (alien fire cadence,
+     * meteor placement and drift)
+     */
+    private final Random random;
+    /**
+     * The recording the controls and events are written to, null if the
+     * session isn't being recorded
+     */
+    private InputRecording recording;
+    /**
+     * The interval between meteors falling in the last level (ms)
+     */
+    private long meteorInterval = 100;
+    /**
+     * The time at which the next meteor falls
+     */
+    private long nextMeteorTime;
+
+    // the current level that the player is on
+    private int level = 1;
+
+    private Map<Integer, String> levelsAlienImages = new HashMap<Integer, String>();
+
+    private Map<Integer, String> levelAlternateAlienImages = new HashMap<Integer, String>();
+
+    private long previousAlienShotTime;
+
+    /**
+     * The timed effects of the game (animation, delayed removal), ticked in
+     * simulated milliseconds
+     */
+    private TimerWheel timers = new TimerWheel();
+    /**
+     * The pools the short lived entities are reused from
+     */
+    private EntityPool<ShotEntity> shotPool;
+    private EntityPool<ShotEntity> alienShotPool;
+    private EntityPool<MeteorEntity> meteorPool;
+    private EntityPool<ExplosionEntity> explosionPool;
+    /**
+     * The location and speed of every entity, grouped by archetype
+     */
+    private EntityStore store = new EntityStore();
+    /**
+     * The response to each pair of collision layers
+     */
+    private CollisionTable collisions = new CollisionTable();
+    /**
+     * The broad phase used to find candidate collision pairs, cells are the
+     * size of the largest sprite
+     */
+    private CollisionGrid grid;
+    /**
+     * True if the grid broad phase should be used rather than comparing every
+     * entity with every other
+     */
+    private boolean gridCollisions = !Boolean.getBoolean("spaceinvaders.bruteForceCollisions");
+    /**
+     * True if every step should check the grid broad phase against the brute
+     * force loop
+     */
+    private boolean verifyBroadPhase = Boolean.getBoolean("spaceinvaders.verifyBroadPhase");
+    /**
+     * True if entities whose bounds overlap only collide when their opaque
+     * pixels do too
+     */
+    private boolean pixelCollisions = !Boolean.getBoolean("spaceinvaders.boundingBoxCollisions");
+
+    /**
+     * The timings of each phase of a step, null if they're not gathered
+     */
+    private FrameMetrics metrics;
+    /**
+     * The listener informed of presentation events, may be null
+     */
+    private GameListener listener;
+
+    /**
+     * Create a new world waiting for the first game to be started, with a
+     * randomly chosen seed
+     */
+    public GameWorld() {
+        this(new Random().nextLong());
+    }
+
+    /**
+     * Create a new world waiting for the first game to be started
+     *
+     * @param seed The seed to generate the world's random numbers from
+     */
+    public GameWorld(long seed) {
+        this(seed, 1);
+    }
+
+    /**
+     * Create a new world for several players waiting for the first game to
+     * be started
+     *
+     * @param seed The seed to generate the world's random numbers from
+     * @param players The number of players, each with a ship of their own
+     */
+    public GameWorld(long seed, int players) {
+        if (players < 1) {
+            throw new IllegalArgumentException("A world needs at least one player: " + players);
+        }
+
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.ships = new ShipEntity[players];
+        this.controls = new int[players];
+        this.lastFire = new long[players];
+
+        levelsAlienImages.put(1, "assets/drawables/alien_level_1.gif");
+        levelsAlienImages.put(2, "assets/drawables/alien_level_2.gif");
+        levelsAlienImages.put(3, "assets/drawables/alien_level_3.gif");
+
+        levelAlternateAlienImages.put(1, "assets/drawables/alien_level_1_alt.gif");
+        levelAlternateAlienImages.put(2, "assets/drawables/alien_level_2_alt.gif");
+        levelAlternateAlienImages.put(3, "assets/drawables/alien_level_3_alt.gif");
+
+        Arrays.fill(lastFire, -firingInterval);
+
+        grid = new CollisionGrid(WIDTH, HEIGHT, largestSpriteSize());
+        registerCollisionHandlers();
+        createPools();
+
+        // initialise the entities in our game so there's something
+        // to see at startup
+        initEntities();
+    }
+
+    /**
+     * Set the listener to be informed of presentation events
+     *
+     * @param listener The listener to inform, or null for none
+     */
+    public void setListener(GameListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Record the controls and events of this world from now on, the
+     * recording should have been created with this world's seed before the
+     * first step
+     *
+     * @param recording The recording to write to, or null to stop recording
+     * @throws IllegalStateException If the world has more than one player,
+     * recordings only hold a single player's controls
+     */
+    public void setRecording(InputRecording recording) {
+        if (recording != null && ships.length > 1) {
+            throw new IllegalStateException("Only a single player's controls can be recorded");
+        }
+
+        this.recording = recording;
+    }
+
+    /**
+     * Set the metrics the phases of each step are timed into
+     *
+     * @param metrics The metrics to record into, or null to not time steps
+     */
+    public void setMetrics(FrameMetrics metrics) {
+        this.metrics = metrics;
+
+        if (metrics != null) {
+            metrics.setPools(getPools());
+        }
+    }
+
+    /**
+     * Start a fresh game, this should clear out any old data and create a new
+     * set.
+     */
+    public void startGame() {
+        if (recording != null) {
+            recording.recordEvent(stepCount, InputRecording.START, stepping, null);
+        }
+
+        // clear out any existing entities and intialise a new set,
+        // handing the pooled ones back for reuse
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+
+            if (entity.pool != null) {
+                entity.pool.release(entity);
+            }
+        }
+        grid.clear(entities);
+        store.clear();
+        entities.clear();
+        timers.clear();
+        pendingRemovals = 0;
+        initEntities();
+
+        waitingForKeyPress = false;
+        previousAlienShotTime = time;
+        nextMeteorTime = time;
+    }
+
+    /**
+     * Initialise the starting state of the entities (ship and aliens). Each
+     * entitiy will be added to the overall list of entities in the game.
+     */
+    private void initEntities() {
+        // create the player ship and place it roughly in the center of the
+        // screen, or spread the ships of several players along the bottom
+        for (int i = 0; i < ships.length; i++) {
+            int x = ships.length == 1 ? 370 : 40 + i * (WIDTH - 110) / (ships.length - 1);
+
+            ships[i] = new ShipEntity(this, "sprites/ship.gif", x, 550, i);
+            addEntity(ships[i]);
+        }
+        shipsLeft = ships.length;
+
+        formation = null;
+        if (level != 4) {
+            // create a block of aliens (3 rows, by 10 aliens, spaced evenly)
+            createFormation(3, 10);
+        }
+    }
+
+    /**
+     * Replace the aliens with a full formation of the given size, its top
+     * left alien placed where the usual block starts
+     *
+     * @param rows The number of rows of aliens
+     * @param columns The number of aliens in each row
+     */
+    void createFormation(int rows, int columns) {
+        formation = new AlienFormation(this, levelsAlienImages.get(level), levelAlternateAlienImages.get(level),
+                rows, columns, 100, 50, 70, 50, 75);
+    }
+
+    /**
+     * Create the pools for the entities that are spawned during play. Each
+     * pool's factory resolves the entity's sprites once, when the entity is
+     * first created.
+     */
+    private void createPools() {
+        final GameWorld world = this;
+
+        shotPool = new EntityPool<ShotEntity>("shots", 32, new EntityPool.Factory<ShotEntity>() {
+            public ShotEntity create() {
+                return new ShotEntity(world, "sprites/shot.gif", 0, 0);
+            }
+        });
+        alienShotPool = new EntityPool<ShotEntity>("alienShots", 16, new EntityPool.Factory<ShotEntity>() {
+            public ShotEntity create() {
+                ShotEntity shot = new ShotEntity(world, "assets/drawables/alien_shot.gif", 0, 0);
+
+                shot.setCollisionLayer(CollisionLayer.ALIEN_SHOT);
+                return shot;
+            }
+        });
+        meteorPool = new EntityPool<MeteorEntity>("meteors", 128, new EntityPool.Factory<MeteorEntity>() {
+            public MeteorEntity create() {
+                return new MeteorEntity(world, 0, 0);
+            }
+        });
+        explosionPool = new EntityPool<ExplosionEntity>("explosions", 64, new EntityPool.Factory<ExplosionEntity>() {
+            public ExplosionEntity create() {
+                return new ExplosionEntity(world, 0, 0);
+            }
+        });
+    }
+
+    /**
+     * Get the pools short lived entities are reused from, so that their
+     * sizes and high-water marks can be reported
+     *
+     * @return The entity pools of this world
+     */
+    public List<EntityPool<?>> getPools() {
+        List<EntityPool<?>> pools = new ArrayList<EntityPool<?>>();
+
+        pools.add(shotPool);
+        pools.add(alienShotPool);
+        pools.add(meteorPool);
+        pools.add(explosionPool);
+        return pools;
+    }
+
+    /**
+     * Fill in the collision table with the response to each pair of layers
+     * that can collide
+     */
+    private void registerCollisionHandlers() {
+        collisions.register(CollisionLayer.ALIEN_SHOT, CollisionLayer.SHIP, new CollisionHandler() {
+            public void collided(Entity shot, Entity ship) {
+                ((ShotEntity) shot).hitShip((ShipEntity) ship);
+            }
+        });
+        collisions.register(CollisionLayer.METEOR, CollisionLayer.SHIP, new CollisionHandler() {
+            public void collided(Entity meteor, Entity ship) {
+                ((ShipEntity) ship).hit();
+            }
+        });
+        CollisionHandler meteorShot = new CollisionHandler() {
+            public void collided(Entity meteor, Entity shot) {
+                ((MeteorEntity) meteor).hitShot((ShotEntity) shot);
+            }
+        };
+        collisions.register(CollisionLayer.METEOR, CollisionLayer.PLAYER_SHOT, meteorShot);
+        collisions.register(CollisionLayer.METEOR, CollisionLayer.ALIEN_SHOT, meteorShot);
+        collisions.register(CollisionLayer.METEOR, CollisionLayer.METEOR, new CollisionHandler() {
+            public void collided(Entity meteor, Entity other) {
+                ((MeteorEntity) meteor).hitMeteor((MeteorEntity) other);
+            }
+        });
+    }
+
+    /**
+     * @return The largest width or height of any sprite that takes part in
+     * collisions
+     */
+    private int largestSpriteSize() {
+        ArrayList<String> refs = new ArrayList<String>(levelsAlienImages.values());
+        refs.add("sprites/ship.gif");
+        refs.add("sprites/shot.gif");
+        refs.add("assets/drawables/alien_shot.gif");
+        refs.add("assets/drawables/meteor.gif");
+        refs.add("assets/drawables/explosion0.gif");
+
+        int size = 1;
+        for (String ref : refs) {
+            Sprite sprite = SpriteStore.get().getSprite(ref);
+            size = Math.max(size, Math.max(sprite.getWidth(), sprite.getHeight()));
+        }
+
+        return size;
+    }
+
+    /**
+     * Advance the simulation by the given amount of time.
+     *
+     * @param deltaNanos The amount of time to simulate in nanoseconds
+     * @param input The state of the player's controls for this step, with
+     * several players the first player's, the others keep their controls
+     * from the last step
+     */
+    public void step(long deltaNanos, InputState input) {
+        // read the controls once, they may be changed by another thread
+        // while we're stepping
+        controls[0] = input.getBits();
+        advance(deltaNanos);
+    }
+
+    /**
+     * Advance the simulation of a world with several players by the given
+     * amount of time.
+     *
+     * @param deltaNanos The amount of time to simulate in nanoseconds
+     * @param inputs The state of each player's controls for this step,
+     * indexed by player
+     */
+    public void step(long deltaNanos, InputState[] inputs) {
+        if (inputs.length != ships.length) {
+            throw new IllegalArgumentException("Expected controls for " + ships.length + " players, got "
+                    + inputs.length);
+        }
+
+        for (int i = 0; i < inputs.length; i++) {
+            controls[i] = inputs[i].getBits();
+        }
+        advance(deltaNanos);
+    }
+
+    /**
+     * Advance the simulation with the controls already read for this step
+     *
+     * @param deltaNanos The amount of time to simulate in nanoseconds
+     */
+    private void advance(long deltaNanos) {
+        if (recording != null) {
+            recording.recordStep(stepCount, controls[0]);
+        }
+        stepping = true;
+
+        // entities move in whole milliseconds, the remainder is carried
+        // in the nanosecond time so small steps still add up correctly
+        timeNanos += deltaNanos;
+        long delta = timeNanos / 1000000 - time;
+        time += delta;
+
+        // each phase is timed only if metrics are being gathered
+        FrameMetrics metrics = this.metrics;
+        long lap = metrics != null ? metrics.startStep() : 0;
+
+        // remember where everything was so rendering can interpolate
+        store.savePrevious();
+        if (formation != null) {
+            formation.savePrevious();
+        }
+
+        // apply the changes posted from other threads since the last step
+        commands.drain(this);
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.COMMANDS, lap);
+        }
+
+        // run the timed effects that are now due, animations carry on
+        // even while we're waiting for a key press
+        timers.advanceTo(time);
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.TIMERS, lap);
+        }
+
+        // cycle round asking each type of entity to move itself
+        if (!waitingForKeyPress) {
+            moveEntities(delta);
+        }
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.MOVE, lap);
+        }
+
+        int pairs = resolveCollisions();
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.COLLISIONS, lap);
+        }
+
+        if (formation != null) {
+            int shooter = findShooter();
+
+            if (shooter >= 0) {
+                ShotEntity shot = alienShotPool.obtain();
+
+                shot.reset(formation.getX(shooter), formation.getY(shooter) + 60, 350);
+                addEntity(shot);
+            }
+        }
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.ALIEN_FIRE, lap);
+        }
+
+        // remove any entity that has been marked for clear up
+        if (pendingRemovals > 0) {
+            removeMarkedEntities();
+        }
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.REMOVAL, lap);
+        }
+
+        // if a game event has indicated that game logic should
+        // be resolved, cycle round every entity requesting that
+        // their personal logic should be considered.
+        if (logicRequiredThisLoop) {
+            if (formation != null) {
+                formation.doLogic();
+            }
+            for (int i = 0; i < entities.size(); i++) {
+                Entity entity = entities.get(i);
+                entity.doLogic();
+            }
+
+            logicRequiredThisLoop = false;
+        }
+        if (metrics != null) {
+            lap = metrics.lap(FrameMetrics.LOGIC, lap);
+        }
+
+        // resolve the movement of each ship. If neither or both
+        // directions are held the ship stands still
+        for (int i = 0; i < ships.length; i++) {
+            if (ships[i].isDestroyed()) {
+                continue;
+            }
+
+            ships[i].setHorizontalMovement(ShipEntity.speedFor(controls[i], moveSpeed));
+
+            // if we're pressing fire, attempt to fire
+            if ((controls[i] & InputState.FIRE) != 0) {
+                tryToFire(i);
+            }
+        }
+
+        if (level == 4 && time >= nextMeteorTime && !waitingForKeyPress) {
+            generateMeteor();
+            nextMeteorTime = time + meteorInterval;
+        }
+        if (metrics != null) {
+            metrics.lap(FrameMetrics.INPUT, lap);
+            metrics.endStep(entities.size(), pairs);
+        }
+
+        stepping = false;
+        if (recording != null) {
+            recording.recordStepEnd(stepCount, this);
+        }
+        stepCount++;
+    }
+
+    /**
+     * Check if the aliens can target a ship and choose one to shoot if
+     * they have a shot and have waited long enough since the last one. Only
+     * the shooters of the columns above the ships are considered.
+     *
+     * @return The index of the alien to shoot from, or -1 if none should
+     * shoot
+     */
+    int findShooter() {
+        int shooter = -1;
+        int alienWidth = formation.getSprite().getWidth();
+
+        for (ShipEntity ship : ships) {
+            if (ship.isDestroyed()) {
+                continue;
+            }
+
+            int shipX = ship.getX(), shipWidth = ship.sprite.getWidth();
+
+            for (int column = formation.getFirstColumnOver(shipX);
+                    column < formation.getColumns() && formation.getColumnX(column) < shipX + shipWidth; column++) {
+                int alien = formation.getShooter(column);
+
+                if (alien >= 0 && shipX < formation.getColumnX(column) + alienWidth
+                        && time - previousAlienShotTime >= (random.nextDouble() > 0.5 ? 2000 : 1000)) {
+                    shooter = alien;
+                    previousAlienShotTime = time - level * 200;
+                }
+            }
+        }
+
+        return shooter;
+    }
+
+    /**
+     * Move every entity based on time elapsed. Each archetype is moved in
+     * a single pass over its columns, applying the rules for that type of
+     * entity (screen edges, leaving the screen).
+     *
+     * @param delta The time that has elapsed since the last step (ms)
+     */
+    private void moveEntities(long delta) {
+        ShipEntity.moveAll(store.archetype(CollisionLayer.SHIP), delta);
+        if (formation != null) {
+            formation.move(delta);
+        }
+        ShotEntity.moveAll(store.archetype(CollisionLayer.PLAYER_SHOT), delta, this);
+        ShotEntity.moveAll(store.archetype(CollisionLayer.ALIEN_SHOT), delta, this);
+        MeteorEntity.moveAll(store.archetype(CollisionLayer.METEOR), delta, this);
+        store.archetype(CollisionLayer.EXPLOSION).move(delta);
+        store.archetype(CollisionLayer.NONE).move(delta);
+    }
+
+    /**
+     * Add an entity to the world, it will be moved, collided and drawn from
+     * the next step on
+     *
+     * @param entity The entity to add
+     */
+    private void addEntity(Entity entity) {
+        entity.removalPending = false;
+        entities.add(entity);
+        store.add(entity);
+    }
+
+    /**
+     * Post a change to be applied at the start of the next step. This is the
+     * only way the world may be changed from a thread other than the one
+     * stepping it.
+     *
+     * @param command The change to apply
+     */
+    public void post(WorldCommand command) {
+        commands.post(command);
+    }
+
+    /**
+     * Request from any thread that an entity be added at the start of the
+     * next step
+     *
+     * @param entity The entity to add
+     */
+    public void postSpawn(final Entity entity) {
+        commands.post(new WorldCommand() {
+            public void apply(GameWorld world) {
+                world.addEntity(entity);
+            }
+        });
+    }
+
+    /**
+     * Request from any thread that an entity be removed during the next step
+     *
+     * @param entity The entity to remove
+     */
+    public void postDespawn(final Entity entity) {
+        commands.post(new WorldCommand() {
+            public void apply(GameWorld world) {
+                world.removeEntity(entity);
+            }
+        });
+    }
+
+    /**
+     * Remove every entity marked for removal in a single pass over the
+     * entity list, keeping the remaining entities in order
+     */
+    private void removeMarkedEntities() {
+        int kept = 0;
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+
+            if (entity.removalPending) {
+                grid.remove(entity);
+                store.remove(entity);
+
+                if (entity.pool != null) {
+                    entity.pool.release(entity);
+                }
+            } else {
+                entities.set(kept++, entity);
+            }
+        }
+
+        entities.subList(kept, entities.size()).clear();
+        pendingRemovals = 0;
+    }
+
+    /**
+     * Find every pair of colliding entities and resolve the collision with the
+     * handler for their layers. Pairs are always resolved in entity list
+     * order, whichever broad phase is used to find them.
+     *
+     * @return The number of candidate pairs whose bounds were compared
+     */
+    int resolveCollisions() {
+        if (verifyBroadPhase) {
+            verifyBroadPhase();
+        }
+
+        if (formation != null) {
+            resolveFormationCollisions();
+        }
+
+        if (!gridCollisions) {
+            // brute force collisions, compare every entity against
+            // every other entity. If any of them collide notify
+            // both entities that the collision has occured
+            int tested = 0;
+
+            for (int p = 0; p < entities.size(); p++) {
+                for (int s = p + 1; s < entities.size(); s++) {
+                    Entity me = entities.get(p);
+                    Entity him = entities.get(s);
+
+                    if (CollisionTable.canCollide(me, him)) {
+                        tested++;
+
+                        if (me.collidesWith(him) && (!pixelCollisions || me.pixelsOverlap(him))) {
+                            collisions.dispatch(me, him);
+                        }
+                    }
+                }
+            }
+            return tested;
+        }
+
+        // only entities sharing a grid cell on layers that can interact are
+        // candidates. Entities added while resolving (explosions) don't take
+        // part until the next step, they don't respond to collisions anyway
+        int count = prepareGrid();
+
+        for (int i = 0; i < count; i++) {
+            Entity me = entities.get(grid.first(i));
+            Entity him = entities.get(grid.second(i));
+
+            if (me.collidesWith(him) && (!pixelCollisions || me.pixelsOverlap(him))) {
+                collisions.dispatch(me, him);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Resolve the collisions of the ships and the players' shots with the
+     * aliens. Each is tested only against the cells of the formation it
+     * overlaps.
+     */
+    private void resolveFormationCollisions() {
+        for (ShipEntity ship : ships) {
+            if (!ship.isDestroyed() && formation.findHit(ship.getX(), ship.getY(), ship.sprite) >= 0) {
+                ship.hit();
+            }
+        }
+
+        EntityStore.Archetype shots = store.archetype(CollisionLayer.PLAYER_SHOT);
+
+        for (int i = 0; i < shots.size; i++) {
+            ShotEntity shot = (ShotEntity) shots.views[i];
+            int alien = formation.findHit(shot.getX(), shot.getY(), shot.sprite);
+
+            if (alien >= 0 && shot.hitAlien()) {
+                killAlien(alien);
+            }
+        }
+    }
+
+    /**
+     * Remove an alien that has been shot from the formation, passing on its
+     * shooting capabilities
+     *
+     * @param alien The index of the alien killed
+     */
+    private void killAlien(int alien) {
+        createExplosionAt(formation.getX(alien), formation.getY(alien));
+
+        boolean shooter = formation.kill(alien);
+        notifyAlienKilled();
+
+        // This alien has just died and it needs to transfer its shooting powers
+        // to the next alien in line
+        if (shooter) {
+            formation.transferShotPower(alien);
+        }
+    }
+
+    /**
+     * Bring the collision grid up to date with the current entity positions
+     * and find the candidate pairs
+     *
+     * @return The number of candidate pairs found
+     */
+    private int prepareGrid() {
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+
+            entity.index = i;
+
+            // entities that can't collide with anything never enter the grid
+            if (entity.collisionMask != 0) {
+                grid.update(entity);
+            }
+        }
+
+        return grid.findPairs();
+    }
+
+    /**
+     * Check that the grid broad phase finds exactly the colliding pairs that
+     * the brute force loop does.
+     *
+     * @throws IllegalStateException If the two disagree
+     */
+    private void verifyBroadPhase() {
+        ArrayList<Long> expected = new ArrayList<Long>();
+        ArrayList<Long> actual = new ArrayList<Long>();
+
+        for (int p = 0; p < entities.size(); p++) {
+            for (int s = p + 1; s < entities.size(); s++) {
+                if (CollisionTable.canCollide(entities.get(p), entities.get(s))
+                        && entities.get(p).collidesWith(entities.get(s))) {
+                    expected.add(((long) p << 32) | s);
+                }
+            }
+        }
+
+        int count = prepareGrid();
+
+        for (int i = 0; i < count; i++) {
+            if (entities.get(grid.first(i)).collidesWith(entities.get(grid.second(i)))) {
+                actual.add(((long) grid.first(i) << 32) | grid.second(i));
+            }
+        }
+
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("Broad phase found " + actual.size()
+                    + " colliding pairs, brute force found " + expected.size());
+        }
+    }
+
+    /**
+     * Choose how candidate collision pairs are found
+     *
+     * @param gridCollisions True to use the uniform grid broad phase, false to
+     * compare every entity against every other entity
+     */
+    public void setGridCollisions(boolean gridCollisions) {
+        this.gridCollisions = gridCollisions;
+    }
+
+    /**
+     * Choose whether collisions are pixel accurate
+     *
+     * @param pixelCollisions True if entities whose bounds overlap should
+     * only collide when their opaque pixels do too, false if overlapping
+     * bounds are enough
+     */
+    public void setPixelCollisions(boolean pixelCollisions) {
+        this.pixelCollisions = pixelCollisions;
+    }
+
+    /**
+     * @return True if collisions are pixel accurate
+     */
+    public boolean isPixelCollisions() {
+        return pixelCollisions;
+    }
+
+    /**
+     * Creates a new meteor entity and adds it to the entities to be rendered.
+     */
+    private void generateMeteor() {
+        int x = (int) (random.nextDouble() * WIDTH), y = -10;
+
+        MeteorEntity meteor = meteorPool.obtain();
+        meteor.reset(x, y);
+        meteor.setVerticalMovement(300);
+
+        if(random.nextDouble() > 0.8)
+            meteor.setHorizontalMovement(200);
+
+        addEntity(meteor);
+    }
+
+    // Creating an explosion at a given point in the screen
+    public void createExplosionAt(double x, double y) {
+        ExplosionEntity explosion = explosionPool.obtain();
+        explosion.reset((int) x, (int) y);
+        addEntity(explosion);
+
+        if (listener != null) {
+            listener.explosionCreated(explosion);
+        }
+    }
+
+    /**
+     * Notification from a game entity that the logic of the game should be run
+     * at the next opportunity (normally as a result of some game event)
+     */
+    public void updateLogic() {
+        logicRequiredThisLoop = true;
+    }
+
+    /**
+     * Remove an entity from the game. The entity removed will no longer move or
+     * be drawn. Removals are collected and applied together later in the
+     * step; removing an entity that is already marked, or isn't in the game,
+     * does nothing. Must be called from the thread stepping the world, other
+     * threads should use {@link #postDespawn(Entity)}.
+     *
+     * @param entity The entity that should be removed
+     */
+    public void removeEntity(Entity entity) {
+        if (entity.removalPending || entity.archetype == null || entity.archetype.store != store) {
+            return;
+        }
+
+        entity.removalPending = true;
+        pendingRemovals++;
+    }
+
+    /**
+     * Notification that the player has died, or with several players that
+     * they all have.
+     */
+    public void notifyDeath() {
+        if (!waitingForKeyPress) {
+            for (ShipEntity ship : ships) {
+                if (!ship.isDestroyed()) {
+                    createExplosionAt(ship.getExactX(), ship.getExactY());
+                }
+            }
+        }
+
+        message = "Oh no! They got you, try again?";
+        waitingForKeyPress = true;
+    }
+
+    /**
+     * Notification that a ship has been hit. A single player dies, with
+     * several the ship is destroyed and the others carry on until the last
+     * is hit.
+     *
+     * @param ship The ship that was hit
+     */
+    public void notifyShipHit(ShipEntity ship) {
+        if (ships.length == 1) {
+            notifyDeath();
+            return;
+        }
+        if (ship.isDestroyed() || waitingForKeyPress) {
+            return;
+        }
+
+        createExplosionAt(ship.getExactX(), ship.getExactY());
+        ship.destroy();
+        removeEntity(ship);
+        shipsLeft--;
+
+        if (shipsLeft == 0) {
+            message = "Oh no! They got you all, try again?";
+            waitingForKeyPress = true;
+        }
+    }
+
+    /**
+     * Notification that the player has won since all the aliens are dead.
+     */
+    public void notifyWin() {
+        message = "Well done! You Win!";
+        waitingForKeyPress = true;
+
+        level++;
+
+        if (level == 5) {
+            level = 1;
+        }
+    }
+
+    /**
+     * Notification that an alien has been killed
+     */
+    public void notifyAlienKilled() {
+        // if there are none left, the player has won!
+        if (formation.getAliveCount() == 0) {
+            notifyWin();
+        }
+
+        // if there are still some aliens left then they all need to get faster, so
+        // speed up all the existing aliens by 2%
+        formation.speedUp(1.02);
+    }
+
+    /**
+     * Attempt to fire a shot from the player. Its called "try" since we must
+     * first check that the player can fire at this point, i.e. has he/she
+     * waited long enough between shots
+     */
+    public void tryToFire() {
+        tryToFire(0);
+    }
+
+    /**
+     * Attempt to fire a shot from one of the players' ships
+     *
+     * @param player The index of the player firing
+     */
+    private void tryToFire(int player) {
+        // check that we have waiting long enough to fire
+        if (time - lastFire[player] < firingInterval) {
+            return;
+        }
+
+        // if we waited long enough, create the shot entity, and record the time.
+        lastFire[player] = time;
+        ShipEntity ship = ships[player];
+        ShotEntity shot = shotPool.obtain();
+        shot.reset(ship.getX() + 10, ship.getY() - 30, -300);
+        addEntity(shot);
+    }
+
+    /**
+     * Hold up game play, showing the given message until a new game is started
+     *
+     * @param message The message to show while waiting
+     */
+    public void waitForKeyPress(String message) {
+        if (recording != null) {
+            recording.recordEvent(stepCount, InputRecording.WAIT, stepping, message);
+        }
+
+        this.message = message;
+        waitingForKeyPress = true;
+    }
+
+    /**
+     * Hash the state of the world that the game play depends on, so that
+     * two worlds can be checked to have played out the same
+     *
+     * @return A hash of the time, level, aliens and every entity's location
+     */
+    public long stateHash() {
+        long hash = 17;
+
+        hash = hash * 31 + time;
+        hash = hash * 31 + level;
+        hash = hash * 31 + (waitingForKeyPress ? 1 : 0);
+        for (long fired : lastFire) {
+            hash = hash * 31 + fired;
+        }
+        hash = hash * 31 + previousAlienShotTime;
+
+        if (formation != null) {
+            hash = hash * 31 + formation.getAliveCount();
+            hash = hash * 31 + formation.getX(0);
+            hash = hash * 31 + formation.getY(0);
+            hash = hash * 31 + Double.doubleToLongBits(formation.getHorizontalMovement());
+        }
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+
+            hash = hash * 31 + entity.layer;
+            hash = hash * 31 + Double.doubleToLongBits(entity.getExactX());
+            hash = hash * 31 + Double.doubleToLongBits(entity.getExactY());
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return The seed the world's random numbers were generated from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return The number of steps taken
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return The entities currently in the world, in update order
+     */
+    public List<Entity> getEntities() {
+        return Collections.unmodifiableList(entities);
+    }
+
+    /**
+     * Get the scheduler for timed effects. Timers run during the step in
+     * which they fall due and are cancelled when a new game starts.
+     *
+     * @return The timer wheel driven by the simulated clock
+     */
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * @return The storage holding the location and speed of every entity
+     */
+    public EntityStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return The aliens, or null on the level without them
+     */
+    public AlienFormation getFormation() {
+        return formation;
+    }
+
+    /**
+     * @return The entity representing the player, the first player's with
+     * several
+     */
+    public ShipEntity getShip() {
+        return ships[0];
+    }
+
+    /**
+     * @param player The index of a player
+     * @return The entity representing the player
+     */
+    public ShipEntity getShip(int player) {
+        return ships[player];
+    }
+
+    /**
+     * @return The number of players, each with a ship of their own
+     */
+    public int getPlayerCount() {
+        return ships.length;
+    }
+
+    /**
+     * @return The speed at which the ships move (pixels/sec)
+     */
+    public double getMoveSpeed() {
+        return moveSpeed;
+    }
+
+    /**
+     * @return The message to display while waiting for a key press
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return True if game play is held up until a new game is started
+     */
+    public boolean isWaitingForKeyPress() {
+        return waitingForKeyPress;
+    }
+
+    /**
+     * @return The level that the player is currently on
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Choose the level played from the next start of a game, so that a
+     * level can be played without winning the ones before it
+     *
+     * @param level The level to play, from 1 to 4
+     */
+    void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * @return The number of aliens left alive
+     */
+    public int getAlienCount() {
+        return formation != null ? formation.getAliveCount() : 0;
+    }
+
+    /**
+     * @return The amount of simulated time that has passed (ns)
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * @return The amount of simulated time that has passed (ms)
+     */
+    public long getTime() {
+        return time;
+    }
+}
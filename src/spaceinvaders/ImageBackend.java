@@ -0,0 +1,104 @@
+package spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Draws frames into an offscreen image, for rendering without a display.
+ * The image keeps each frame until the next is drawn over it, so frames
+ * can be inspected or checksummed after they are shown.
+ */
+public class ImageBackend implements RenderBackend {
+
+    /**
+     * The image the frames are drawn into
+     */
+    private final BufferedImage image;
+    /**
+     * The number of frames shown
+     */
+    private long frames;
+
+    /**
+     * Create a backend drawing into an image the size of the screen
+     *
+     * @param type The type of image, one of the BufferedImage types
+     */
+    public ImageBackend(int type) {
+        image = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, type);
+    }
+
+    public GraphicsConfiguration getConfiguration() {
+        Graphics2D g = image.createGraphics();
+        GraphicsConfiguration gc = g.getDeviceConfiguration();
+
+        g.dispose();
+        return gc;
+    }
+
+    public Graphics2D getDrawGraphics() {
+        return image.createGraphics();
+    }
+
+    public boolean contentsRestored() {
+        return false;
+    }
+
+    public boolean isRetained() {
+        return true;
+    }
+
+    public void show() {
+        frames++;
+    }
+
+    /**
+     * Hash the colour of every pixel of the last frame, so that frames
+     * drawn by different backends or builds can be compared cheaply
+     *
+     * @return The checksum, the same for any image type holding the same
+     * colours
+     */
+    public long checksum() {
+        int width = image.getWidth(), height = image.getHeight();
+        long hash = 0xcbf29ce484222325L;
+
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            // read the pixels straight out of the raster rather than
+            // converting each one
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+            for (int i = 0; i < pixels.length; i++) {
+                hash = (hash ^ (pixels[i] & 0xffffff)) * 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            for (int x = 0; x < width; x++) {
+                hash = (hash ^ (row[x] & 0xffffff)) * 0x100000001b3L;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return The image holding the last frame
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return The number of frames shown
+     */
+    public long getFrames() {
+        return frames;
+    }
+}
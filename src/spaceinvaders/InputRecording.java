@@ -0,0 +1,318 @@
+package spaceinvaders;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recording of a session, from which it can be replayed exactly: the seed
+ * of the world's random numbers and every change to the player's controls,
+ * keyed by the step of the simulation it happened at.
+ *
+ * Starting a game and holding play up (pausing) are recorded as events too,
+ * noting whether they were applied between steps or among the commands at
+ * the start of a step, as the world's clock has moved on by then. A hash
+ * of the world's state is recorded every {@link #CHECK_INTERVAL} steps so
+ * that a replay can tell where it first went wrong.
+ *
+ * The binary form is a header (magic, version, seed, step length) followed
+ * by one record per event: the number of steps since the previous event as
+ * a variable length integer, then a byte holding the kind of event and,
+ * for a change of controls, the controls held. A session's controls are
+ * typically a few bytes a second.
+ */
+public class InputRecording {
+
+    /**
+     * The number of steps between hashes of the world's state
+     */
+    public static final int CHECK_INTERVAL = 100;
+
+    /**
+     * The kinds of event, held in the top bits of an event's byte
+     */
+    public static final int INPUT = 0, START = 1, WAIT = 2, CHECK = 3, END = 4;
+
+    /**
+     * The flag set on a start or wait event applied during its step
+     */
+    public static final int DURING = 1;
+
+    /**
+     * The first word of a recording
+     */
+    private static final int MAGIC = 0x53495250;
+    /**
+     * The version of the file layout
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The seed of the recorded world's random numbers
+     */
+    private final long seed;
+    /**
+     * The length of the recorded world's steps (ns)
+     */
+    private final long stepNanos;
+    /**
+     * The events in the order they happened
+     */
+    private final List<Event> events = new ArrayList<Event>();
+    /**
+     * The number of steps recorded
+     */
+    private long steps;
+    /**
+     * The controls held at the last step
+     */
+    private int lastBits;
+
+    /**
+     * Create an empty recording
+     *
+     * @param seed The seed of the recorded world's random numbers
+     * @param stepNanos The length of the recorded world's steps (ns)
+     */
+    public InputRecording(long seed, long stepNanos) {
+        this.seed = seed;
+        this.stepNanos = stepNanos;
+    }
+
+    /**
+     * Record the start of a step, called by the world being recorded
+     *
+     * @param step The index of the step
+     * @param bits The controls held for the step
+     */
+    synchronized void recordStep(long step, int bits) {
+        if (bits != lastBits) {
+            events.add(new Event(step, INPUT, bits, null, 0));
+            lastBits = bits;
+        }
+    }
+
+    /**
+     * Record the end of a step, called by the world being recorded
+     *
+     * @param step The index of the step
+     * @param world The world being recorded
+     */
+    synchronized void recordStepEnd(long step, GameWorld world) {
+        steps = step + 1;
+
+        if (steps % CHECK_INTERVAL == 0) {
+            events.add(new Event(steps, CHECK, 0, null, world.stateHash()));
+        }
+    }
+
+    /**
+     * Record an event that changes the world other than through the
+     * controls, called by the world being recorded
+     *
+     * @param step The index of the step the event comes before or during
+     * @param type The kind of event, {@link #START} or {@link #WAIT}
+     * @param during True if the event was applied during the step, by a
+     * command, rather than before it
+     * @param message The message shown while waiting, or null
+     */
+    synchronized void recordEvent(long step, int type, boolean during, String message) {
+        events.add(new Event(step, type, during ? DURING : 0, message, 0));
+    }
+
+    /**
+     * Write the recording
+     *
+     * @param out The stream to write to, it is left open
+     * @throws IOException Indicates the recording couldn't be written
+     */
+    public synchronized void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeLong(seed);
+        data.writeLong(stepNanos);
+
+        long previous = 0;
+
+        for (Event event : events) {
+            writeVarLong(data, event.step - previous);
+            data.writeByte(event.type << 3 | event.bits);
+            previous = event.step;
+
+            if (event.type == WAIT) {
+                data.writeUTF(event.message);
+            } else if (event.type == CHECK) {
+                data.writeLong(event.hash);
+            }
+        }
+
+        writeVarLong(data, steps - previous);
+        data.writeByte(END << 3);
+        data.flush();
+    }
+
+    /**
+     * Read a recording
+     *
+     * @param in The stream to read from, it is left open
+     * @return The recording read
+     * @throws IOException Indicates the recording is malformed or of an
+     * unknown version
+     */
+    public static InputRecording read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a recording");
+        }
+        if (data.readShort() != VERSION) {
+            throw new IOException("Unknown recording version");
+        }
+
+        InputRecording recording = new InputRecording(data.readLong(), data.readLong());
+        long step = 0;
+
+        while (true) {
+            step += readVarLong(data);
+
+            int header = data.readUnsignedByte();
+            int type = header >>> 3, bits = header & 7;
+
+            if (type == END) {
+                recording.steps = step;
+                return recording;
+            }
+
+            switch (type) {
+                case INPUT:
+                case START:
+                    recording.events.add(new Event(step, type, bits, null, 0));
+                    break;
+                case WAIT:
+                    recording.events.add(new Event(step, type, bits, data.readUTF(), 0));
+                    break;
+                case CHECK:
+                    recording.events.add(new Event(step, type, 0, null, data.readLong()));
+                    break;
+                default:
+                    throw new IOException("Unknown event " + type + " at step " + step);
+            }
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new EOFException("Malformed step count");
+    }
+
+    /**
+     * @return The seed of the recorded world's random numbers
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return The length of the recorded world's steps (ns)
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * @return The number of steps recorded
+     */
+    public synchronized long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return The events in the order they happened
+     */
+    public synchronized List<Event> getEvents() {
+        return Collections.unmodifiableList(new ArrayList<Event>(events));
+    }
+
+    /**
+     * Something that happened during a recorded session
+     */
+    public static class Event {
+
+        /**
+         * The step the event comes before or during, for a hash the number
+         * of steps taken when it was made
+         */
+        final long step;
+        /**
+         * The kind of event
+         */
+        final int type;
+        /**
+         * The controls held, for a change of controls, or {@link #DURING}
+         * for a start or wait applied during its step
+         */
+        final int bits;
+        /**
+         * The message shown while waiting, for a hold up of play
+         */
+        final String message;
+        /**
+         * The hash of the world's state, for a check
+         */
+        final long hash;
+
+        Event(long step, int type, int bits, String message, long hash) {
+            this.step = step;
+            this.type = type;
+            this.bits = bits;
+            this.message = message;
+            this.hash = hash;
+        }
+
+        public long getStep() {
+            return step;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public int getBits() {
+            return bits;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+    }
+}
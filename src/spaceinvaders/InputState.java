@@ -0,0 +1,82 @@
+package spaceinvaders;
+
+/**
+ * The state of the controls driving the player's ship for a single step of
+ * the simulation. The keyboard handler in {@link Game} keeps one of these up
+ * to date, while headless drivers (bots, tests, replays) fill it in directly.
+ * The controls may be changed from another thread while the world is being
+ * stepped; the world reads them once at the start of each step.
+ */
+public class InputState {
+
+    /**
+     * The bit of each control in {@link #getBits()}
+     */
+    public static final int LEFT = 1, RIGHT = 2, FIRE = 4;
+
+    /**
+     * True if the ship should be moving left
+     */
+    private volatile boolean left;
+    /**
+     * True if the ship should be moving right
+     */
+    private volatile boolean right;
+    /**
+     * True if the ship should be firing
+     */
+    private volatile boolean fire;
+
+    public boolean isLeft() {
+        return left;
+    }
+
+    public void setLeft(boolean left) {
+        this.left = left;
+    }
+
+    public boolean isRight() {
+        return right;
+    }
+
+    public void setRight(boolean right) {
+        this.right = right;
+    }
+
+    public boolean isFire() {
+        return fire;
+    }
+
+    public void setFire(boolean fire) {
+        this.fire = fire;
+    }
+
+    /**
+     * @return The controls held, as a combination of the {@link #LEFT},
+     * {@link #RIGHT} and {@link #FIRE} bits
+     */
+    public int getBits() {
+        return (left ? LEFT : 0) | (right ? RIGHT : 0) | (fire ? FIRE : 0);
+    }
+
+    /**
+     * Set every control at once
+     *
+     * @param bits The controls to hold, as a combination of the
+     * {@link #LEFT}, {@link #RIGHT} and {@link #FIRE} bits
+     */
+    public void setBits(int bits) {
+        left = (bits & LEFT) != 0;
+        right = (bits & RIGHT) != 0;
+        fire = (bits & FIRE) != 0;
+    }
+
+    /**
+     * Release all of the controls
+     */
+    public void clear() {
+        left = false;
+        right = false;
+        fire = false;
+    }
+}
@@ -0,0 +1,26 @@
+package spaceinvaders;
+
+/**
+ * A clock that only moves when it is told to, used to drive the simulation
+ * deterministically from tests and headless runners.
+ */
+public class ManualClock implements GameClock {
+
+    /**
+     * The current time in nanoseconds
+     */
+    private long now;
+
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Move the clock forward
+     *
+     * @param nanos The amount of time to pass in nanoseconds
+     */
+    public void advance(long nanos) {
+        now += nanos;
+    }
+}
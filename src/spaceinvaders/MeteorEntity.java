@@ -11,35 +11,67 @@ package spaceinvaders;
  */
 public class MeteorEntity extends Entity {
 
-    Game game;
+    GameWorld game;
 
-    public MeteorEntity(Game game, int x, int y) {
+    public MeteorEntity(GameWorld game, int x, int y) {
         super("assets/drawables/meteor.gif", x, y);
         this.game = game;
-        this.dy = 100;
+        setVerticalMovement(100);
+        setCollisionLayer(CollisionLayer.METEOR);
     }
     
     
-    @Override
-    public void collidedWith(Entity other) {
-        if(other instanceof ShipEntity){
-            game.notifyDeath();
-        }else if(other instanceof ShotEntity){
-            game.createExplosionAt(x, y);
-            game.removeEntity(this);
-            game.removeEntity(other);
-        }else if(other instanceof MeteorEntity){
-            int avgVelocity = (int)(other.dy + this.dy )/2;
-            this.dy = avgVelocity;
-            other.dy = avgVelocity;
-        }
+    /**
+     * Prepare this meteor to fall again after being reused from a pool
+     *
+     * @param x The x location to fall from
+     * @param y The y location to fall from
+     */
+    void reset(int x, int y) {
+        setLocation(x, y);
+        setHorizontalMovement(0);
+        setVerticalMovement(100);
+    }
+
+    /**
+     * Notification that this meteor has been hit by a shot, blow both up
+     *
+     * @param shot The shot that hit the meteor
+     */
+    public void hitShot(ShotEntity shot) {
+        game.createExplosionAt(getExactX(), getExactY());
+        game.removeEntity(this);
+        game.removeEntity(shot);
+    }
+
+    /**
+     * Notification that this meteor has run into another, the two carry on
+     * at their average speed
+     *
+     * @param other The meteor that has been hit
+     */
+    public void hitMeteor(MeteorEntity other) {
+        int avgVelocity = (int)(other.getVerticalMovement() + this.getVerticalMovement() )/2;
+        this.setVerticalMovement(avgVelocity);
+        other.setVerticalMovement(avgVelocity);
     }
     
-    @Override
-    public void move(long delta){
-        super.move(delta);
+    /**
+     * Move all the meteors in an archetype, removing those that have fallen
+     * off the bottom of the screen
+     *
+     * @param meteors The archetype holding the meteors
+     * @param delta The time that has elapsed since last move
+     * @param game The game in which the meteors exist
+     */
+    static void moveAll(EntityStore.Archetype meteors, long delta, GameWorld game) {
+        meteors.move(delta);
+        
+        double[] y = meteors.y;
         
-        if(y > 600)
-            game.removeEntity(this);
+        for (int i = 0; i < meteors.size; i++) {
+            if (y[i] > 600 && meteors.views[i] != null)
+                game.removeEntity(meteors.views[i]);
+        }
     }
 }
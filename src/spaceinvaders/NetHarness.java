@@ -0,0 +1,150 @@
+package spaceinvaders;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays many networked sessions at once over loopback, to measure what a
+ * {@link GameServer} costs per session and check that clients' predictions
+ * agree with it.
+ *
+ * <pre>
+ * java spaceinvaders.NetHarness [-sessions n] [-seats n] [-seconds n] [-seed n]
+ *     [-snapshotInterval steps] [-connect host:port]
+ * </pre>
+ *
+ * A server is started on a free loopback port in the same process, unless
+ * one is given to connect to. A {@link GameClient} is made for every seat
+ * of every session, all stepped from one thread at the server's step rate,
+ * each holding left, right or neither for a random while and firing all
+ * the time. At the end the server's per-session tick cost is reported, with
+ * how often and how far the clients' predicted ships had to be corrected
+ * and how many steps they ran ahead of the server.
+ */
+public class NetHarness {
+
+    public static void main(String argv[]) throws IOException, InterruptedException {
+        int sessions = 100, seats = 2, snapshotInterval = 1;
+        double seconds = 10;
+        long seed = 1;
+        String connect = null;
+
+        for (int i = 0; i + 1 < argv.length; i += 2) {
+            String value = argv[i + 1];
+
+            if (argv[i].equals("-sessions")) {
+                sessions = Integer.parseInt(value);
+            } else if (argv[i].equals("-seats")) {
+                seats = Integer.parseInt(value);
+            } else if (argv[i].equals("-seconds")) {
+                seconds = Double.parseDouble(value);
+            } else if (argv[i].equals("-seed")) {
+                seed = Long.parseLong(value);
+            } else if (argv[i].equals("-snapshotInterval")) {
+                snapshotInterval = Integer.parseInt(value);
+            } else if (argv[i].equals("-connect")) {
+                connect = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + argv[i]);
+            }
+        }
+
+        // nothing is drawn
+        System.setProperty("java.awt.headless", "true");
+
+        GameServer server = null;
+        Thread serverThread = null;
+        InetSocketAddress address;
+
+        if (connect == null) {
+            server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), seats, sessions, seed);
+            server.setSnapshotInterval(snapshotInterval);
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+
+            serverThread = new Thread(server, "Game server");
+            serverThread.start();
+        } else {
+            int colon = connect.lastIndexOf(':');
+            address = new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)));
+        }
+
+        GameClient[] clients = new GameClient[sessions * seats];
+        Random[] randoms = new Random[clients.length];
+        int[] controls = new int[clients.length], held = new int[clients.length];
+
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new GameClient(address, i / seats);
+            randoms[i] = new Random(seed + i);
+        }
+
+        long stepNanos = SimulationLoop.DEFAULT_STEP_NANOS;
+        long steps = (long) (seconds * 1e9 / stepNanos);
+        long start = System.nanoTime(), next = start;
+        long late = 0;
+
+        for (long step = 0; step < steps; step++) {
+            for (int i = 0; i < clients.length; i++) {
+                GameClient client = clients[i];
+
+                // hold a direction, or neither, for a quarter to one second
+                if (held[i]-- <= 0) {
+                    int direction = randoms[i].nextInt(3);
+
+                    controls[i] = InputState.FIRE | (direction == 1 ? InputState.LEFT : 0)
+                            | (direction == 2 ? InputState.RIGHT : 0);
+                    held[i] = 25 + randoms[i].nextInt(75);
+                }
+
+                client.poll();
+                client.step(controls[i]);
+            }
+
+            next += stepNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                late++;
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        String report = null;
+        if (server != null) {
+            server.stop();
+            serverThread.join();
+            report = server.report();
+        }
+
+        int joined = 0;
+        long snapshots = 0, mispredictions = 0, lead = 0;
+        double correction = 0;
+
+        for (GameClient client : clients) {
+            if (client.isJoined()) {
+                joined++;
+            }
+            snapshots += client.getSnapshots();
+            mispredictions += client.getMispredictions();
+            correction += client.getCorrection();
+            lead += client.getLead();
+            client.close();
+        }
+
+        System.out.printf("%d clients in %d sessions of %d for %.1f s, %d of %d steps late%n",
+                clients.length, sessions, seats, elapsed, late, steps);
+        if (report != null) {
+            System.out.println("  server: " + report);
+        }
+        System.out.printf("  clients: %d joined, %.1f snapshots/s each, %.2f%% mispredicted, "
+                + "%.2f pixels corrected on average, prediction %.1f steps ahead%n",
+                joined, snapshots / elapsed / Math.max(1, joined),
+                100.0 * mispredictions / Math.max(1, snapshots), correction / Math.max(1, mispredictions),
+                (double) lead / Math.max(1, snapshots));
+
+        System.exit(0);
+    }
+}
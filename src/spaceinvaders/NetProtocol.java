@@ -0,0 +1,138 @@
+package spaceinvaders;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The messages sent between a {@link GameServer} and its {@link GameClient}s,
+ * one to a UDP datagram. Each message starts with a byte giving its kind.
+ *
+ * <pre>
+ * client to server
+ *   JOIN      magic (int), session wanted (int, -1 for any)
+ *   INPUT     sequence of the first input (int), count (byte), controls (byte each)
+ *   LEAVE
+ *
+ * server to client
+ *   WELCOME   session (int), player (byte), players (byte), step length (long ns),
+ *             ship speed (double)
+ *   FULL
+ *   SNAPSHOT  step (long), last input applied (int), level (byte), flags (byte),
+ *             ships (byte), then for each: x (double), y (short), state (byte)
+ *             formation (byte), then if there is one: x, y (float),
+ *             columns, spacing x, spacing y (short), words (byte), alive (long each)
+ *             entities (short), then for each: layer (byte), x, y (short)
+ * </pre>
+ *
+ * Datagrams can be lost or arrive out of order. Every input message repeats
+ * the controls of the steps the server hasn't yet acknowledged, so a lost
+ * one is made up for by the next, and a snapshot supersedes every snapshot
+ * before it, so snapshots older than the newest seen are ignored. A ship's
+ * x location is sent exactly, as the client predicting it must agree with
+ * the server to the bit, everything else only as precisely as drawing
+ * needs.
+ */
+public final class NetProtocol {
+
+    /**
+     * The kinds of message
+     */
+    public static final byte JOIN = 1, INPUT = 2, LEAVE = 3, WELCOME = 4, FULL = 5, SNAPSHOT = 6;
+
+    /**
+     * The first word of a join, so stray datagrams aren't taken as players
+     */
+    public static final int MAGIC = 0x53494e31;
+
+    /**
+     * The largest datagram sent, small enough not to be fragmented on most
+     * networks. Snapshots leave out the entities that don't fit.
+     */
+    public static final int MAX_DATAGRAM = 1400;
+
+    /**
+     * The most inputs sent in one message
+     */
+    public static final int MAX_INPUTS = 32;
+
+    /**
+     * The bits of a ship's state in a snapshot
+     */
+    public static final int SHIP_DESTROYED = 1, SHIP_LEFT = 2, SHIP_RIGHT = 4;
+
+    /**
+     * The bits of the flags in a snapshot
+     */
+    public static final int FLAG_WAITING = 1;
+
+    /**
+     * Where the last input applied sits in a snapshot, so it can be filled
+     * in for each player after the rest is written once
+     */
+    public static final int ACK_OFFSET = 9;
+
+    private NetProtocol() {
+    }
+
+    /**
+     * Write the snapshot of a session's world, leaving the last input
+     * applied to be filled in for each player
+     *
+     * @param buffer The buffer to write to, from its start
+     * @param world The world to write
+     * @param snapshot A snapshot the world has just been captured into
+     */
+    static void writeSnapshot(ByteBuffer buffer, GameWorld world, WorldSnapshot snapshot) {
+        buffer.clear();
+        buffer.put(SNAPSHOT);
+        buffer.putLong(world.getStepCount());
+        buffer.putInt(-1);
+        buffer.put((byte) snapshot.level);
+        buffer.put((byte) (snapshot.waiting ? FLAG_WAITING : 0));
+
+        buffer.put((byte) world.getPlayerCount());
+        for (int i = 0; i < world.getPlayerCount(); i++) {
+            ShipEntity ship = world.getShip(i);
+            double dx = ship.getHorizontalMovement();
+            int state = (ship.isDestroyed() ? SHIP_DESTROYED : 0) | (dx < 0 ? SHIP_LEFT : 0)
+                    | (dx > 0 ? SHIP_RIGHT : 0);
+
+            buffer.putDouble(ship.getExactX());
+            buffer.putShort((short) ship.getY());
+            buffer.put((byte) state);
+        }
+
+        buffer.put((byte) (snapshot.hasFormation ? 1 : 0));
+        if (snapshot.hasFormation) {
+            buffer.putFloat((float) snapshot.formationX);
+            buffer.putFloat((float) snapshot.formationY);
+            buffer.putShort((short) snapshot.columns);
+            buffer.putShort((short) snapshot.spacingX);
+            buffer.putShort((short) snapshot.spacingY);
+            buffer.put((byte) snapshot.alive.length);
+            for (long word : snapshot.alive) {
+                buffer.putLong(word);
+            }
+        }
+
+        // the ships are already written, the rest go in while they fit
+        int countAt = buffer.position();
+        int count = 0;
+        buffer.putShort((short) 0);
+
+        for (Entity entity : world.getEntities()) {
+            if (buffer.remaining() < 5) {
+                break;
+            }
+            if (entity.layer == CollisionLayer.SHIP) {
+                continue;
+            }
+
+            buffer.put((byte) entity.layer);
+            buffer.putShort((short) entity.getX());
+            buffer.putShort((short) entity.getY());
+            count++;
+        }
+        buffer.putShort(countAt, (short) count);
+        buffer.flip();
+    }
+}
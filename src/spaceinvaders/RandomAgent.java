@@ -0,0 +1,49 @@
+package spaceinvaders;
+
+import java.util.Random;
+
+/**
+ * An agent that mashes the controls, holding a random direction for a
+ * random time and firing whenever it can. A baseline for other agents.
+ */
+public class RandomAgent implements Agent {
+
+    /**
+     * Creates random agents
+     */
+    public static final Agent.Factory FACTORY = new Agent.Factory() {
+        public Agent create(long seed) {
+            return new RandomAgent(seed);
+        }
+    };
+
+    /**
+     * The source of the agent's choices
+     */
+    private final Random random;
+    /**
+     * The number of steps left before a new direction is chosen
+     */
+    private int hold;
+
+    /**
+     * Create an agent
+     *
+     * @param seed The seed for the agent's choices
+     */
+    public RandomAgent(long seed) {
+        random = new Random(seed);
+    }
+
+    public void act(GameWorld world, InputState input) {
+        if (--hold <= 0) {
+            int direction = random.nextInt(3);
+
+            input.setLeft(direction == 1);
+            input.setRight(direction == 2);
+            hold = 5 + random.nextInt(50);
+        }
+
+        input.setFire(true);
+    }
+}
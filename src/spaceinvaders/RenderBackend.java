@@ -0,0 +1,42 @@
+package spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+
+/**
+ * The surface that frames are drawn onto and presented from, so the same
+ * compositor can draw to a window or to an image with no display.
+ *
+ * Each frame is drawn with the graphics from {@link #getDrawGraphics()},
+ * which is disposed of before {@link #show()} presents the frame.
+ */
+public interface RenderBackend {
+
+    /**
+     * @return The configuration of the surface, that images drawn onto it
+     * should be compatible with
+     */
+    GraphicsConfiguration getConfiguration();
+
+    /**
+     * @return A graphics context to draw the next frame with
+     */
+    Graphics2D getDrawGraphics();
+
+    /**
+     * @return True if the surface lost its contents and has been restored
+     * since the last frame, so it no longer holds that frame
+     */
+    boolean contentsRestored();
+
+    /**
+     * @return True if the surface still holds the last frame presented
+     * when the next one is drawn
+     */
+    boolean isRetained();
+
+    /**
+     * Present the frame that has been drawn
+     */
+    void show();
+}
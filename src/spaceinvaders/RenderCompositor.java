@@ -0,0 +1,725 @@
+package spaceinvaders;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Composes each frame of the game from three layers:
+ * <p>
+ * - a static background layer, one accelerated image per level that is only
+ * rebuilt when the level is first shown or the surface is lost - the dynamic
+ * entity layer, drawn every frame - a HUD layer of pre-rendered text that is
+ * only re-rendered when the text changes
+ * <p>
+ * In the optional dirty rectangle mode, for software pipelines where every
+ * pixel drawn costs, the frame is composed into an image kept between
+ * frames. Only the regions covered by something drawn in the last frame or
+ * this one are restored from the background and redrawn, and only they are
+ * copied to a target that keeps its contents. When the regions cover more
+ * than a threshold of the screen, the whole frame is redrawn instead.
+ * <p>
+ * In the optional software mode, the background and entity layers are
+ * written straight into the pixels of an int RGB frame by a
+ * {@link SoftwareRenderer}, and the frame is then drawn onto the target in
+ * one go. The whole frame is redrawn each time, the dirty rectangle mode
+ * doesn't apply.
+ */
+public class RenderCompositor {
+
+    /**
+     * The text shown under the message while waiting for a key press
+     */
+    private static final String PRESS_ANY_KEY = "Press any key";
+    /**
+     * The most changed regions redrawn one by one before the whole frame is
+     * redrawn instead
+     */
+    private static final int MAX_DIRTY_RECTANGLES = 256;
+
+    /**
+     * The configuration of the surface being drawn to
+     */
+    private final GraphicsConfiguration gc;
+
+    private Map<Integer, String> levelsDesc = new HashMap<Integer, String>();
+
+    private Map<Integer, String> levelsBackground = new HashMap<Integer, String>();
+
+    /**
+     * The background layer, only the current level's background is kept
+     */
+    private VolatileImage background;
+    /**
+     * The level the background layer was painted for
+     */
+    private int backgroundLevel;
+
+    /**
+     * True if only the regions that changed are redrawn
+     */
+    private boolean dirtyRectangles;
+    /**
+     * The fraction of the screen the changed regions may cover before the
+     * whole frame is redrawn instead
+     */
+    private double dirtyThreshold = 0.5;
+    /**
+     * True if the target keeps the last frame presented to it, so that only
+     * the changed regions need copying
+     */
+    private boolean targetRetained;
+    /**
+     * True if the whole frame must be redrawn and presented next time
+     */
+    private boolean invalid = true;
+    /**
+     * The frame composed in dirty rectangle mode, kept between frames
+     */
+    private VolatileImage frame;
+    /**
+     * The areas covered by what was drawn in the last frame, and the
+     * regions to redraw in this one
+     */
+    private DirtyRegion drawn = new DirtyRegion(), dirty = new DirtyRegion();
+    /**
+     * The number of pixels redrawn in the last frame
+     */
+    private int pixelsTouched;
+
+    /**
+     * Draws the frame's pixels directly in software mode, null otherwise
+     */
+    private SoftwareRenderer software;
+    /**
+     * The frame drawn in software mode and the background it is drawn on,
+     * as int RGB images
+     */
+    private BufferedImage softwareFrame, softwareBackground;
+    /**
+     * The level the software background was painted for
+     */
+    private int softwareBackgroundLevel;
+
+    /**
+     * The snapshot a world is copied into when it is drawn directly
+     */
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+
+    /**
+     * The indices of the entities of the current frame sorted by sprite
+     */
+    private int[] batch = new int[64];
+    /**
+     * The start of each sprite's batch, indexed by sprite id
+     */
+    private int[] batchStarts = new int[0];
+
+    /**
+     * The font used for the level description
+     */
+    private Font levelFont = new Font("Calibri bold", 24, 23);
+    /**
+     * The font used for messages, the default font of a graphics context
+     */
+    private Font messageFont;
+
+    /**
+     * The text items making up the HUD layer
+     */
+    private BufferedImage[] hudImages = new BufferedImage[0];
+    /**
+     * The location of each text item in the HUD layer
+     */
+    private int[] hudX = new int[0], hudY = new int[0];
+    /**
+     * The state the HUD layer was last rendered for
+     */
+    private int hudLevel;
+    private boolean hudWaiting;
+    private String hudMessage;
+
+    /**
+     * Create a compositor drawing to surfaces with the given configuration
+     *
+     * @param gc The configuration of the surface being drawn to
+     */
+    public RenderCompositor(GraphicsConfiguration gc) {
+        this.gc = gc;
+
+        levelsDesc.put(1, "Defend");
+        levelsDesc.put(2, "Attack");
+        levelsDesc.put(3, "Annihilate");
+        levelsDesc.put(4, "The Evasion");
+
+        levelsBackground.put(1, "assets/drawables/battle_round_1.jpg");
+        levelsBackground.put(2, "assets/drawables/battle_round_2.jpg");
+        levelsBackground.put(3, "assets/drawables/battle_round_3.jpg");
+        levelsBackground.put(4, "assets/drawables/battle_round_4.jpg");
+    }
+
+    /**
+     * Draw a frame of the world
+     *
+     * @param g The graphics context to draw the frame on
+     * @param world The world to draw
+     * @param alpha How far between the last two simulation steps to draw the
+     * entities, from 0 to 1
+     */
+    public void render(Graphics2D g, GameWorld world, double alpha) {
+        snapshot.capture(world);
+        render(g, snapshot, alpha);
+    }
+
+    /**
+     * Draw a frame from a snapshot of the world
+     *
+     * @param g The graphics context to draw the frame on
+     * @param snapshot The snapshot to draw
+     * @param alpha How far between the last two simulation steps to draw the
+     * entities, from 0 to 1
+     */
+    public void render(Graphics2D g, WorldSnapshot snapshot, double alpha) {
+        if (software != null && renderSoftware(g, snapshot, alpha)) {
+            return;
+        }
+        if (dirtyRectangles) {
+            renderDirty(g, snapshot, alpha);
+            return;
+        }
+
+        drawBackground(g, snapshot.level);
+
+        prepareBatches(snapshot);
+        drawEntities(g, snapshot, alpha);
+        drawHud(g, snapshot);
+        pixelsTouched = GameWorld.WIDTH * GameWorld.HEIGHT;
+    }
+
+    /**
+     * Draw a frame by redrawing only the regions that have changed since
+     * the last one, or the whole frame if they cover too much of it
+     *
+     * @param g The graphics context to present the frame on
+     * @param snapshot The snapshot to draw
+     * @param alpha How far between the last two simulation steps to draw the
+     * entities, from 0 to 1
+     */
+    private void renderDirty(Graphics2D g, WorldSnapshot snapshot, double alpha) {
+        // the regions to redraw are those covered last frame, where things
+        // must be erased, and those covered now
+        dirty.clear();
+        dirty.addAll(drawn);
+        drawn.clear();
+        snapshot.addBounds(drawn, alpha);
+        dirty.addAll(drawn);
+
+        if (isHudStale(snapshot)) {
+            addHudBounds(dirty);
+            updateHud(g, snapshot);
+            addHudBounds(dirty);
+        }
+
+        // the rectangles' summed area is at least the area they cover, so
+        // a frame that is too busy is redrawn whole without merging them
+        double limit = dirtyThreshold * GameWorld.WIDTH * GameWorld.HEIGHT;
+        boolean busy = dirty.getCount() > MAX_DIRTY_RECTANGLES || dirty.getArea() > limit;
+        if (!busy) {
+            dirty.merge();
+            busy = dirty.getArea() > limit;
+        }
+
+        prepareBatches(snapshot);
+
+        boolean full;
+        do {
+            full = invalid || busy || snapshot.level != backgroundLevel;
+
+            int status = frame == null ? VolatileImage.IMAGE_INCOMPATIBLE : frame.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                frame = gc.createCompatibleVolatileImage(GameWorld.WIDTH, GameWorld.HEIGHT);
+                frame.validate(gc);
+                full = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                full = true;
+            }
+
+            Graphics2D fg = frame.createGraphics();
+            if (full) {
+                drawBackground(fg, snapshot.level);
+                drawEntities(fg, snapshot, alpha);
+                drawHud(fg, snapshot);
+            } else {
+                // each rectangle only needs its part of the background and
+                // the sprites crossing it
+                for (int i = 0; i < dirty.getCount(); i++) {
+                    int x = dirty.getX(i), y = dirty.getY(i), width = dirty.getWidth(i), height = dirty.getHeight(i);
+
+                    fg.setClip(x, y, width, height);
+                    drawBackground(fg, snapshot.level, x, y, width, height);
+                    drawEntities(fg, snapshot, alpha, x, y, width, height);
+                    drawHudImages(fg, x, y, width, height);
+                }
+            }
+            fg.dispose();
+
+            present(g, full || !targetRetained);
+        } while (frame.contentsLost());
+
+        pixelsTouched = full ? GameWorld.WIDTH * GameWorld.HEIGHT : dirty.getArea();
+        invalid = false;
+    }
+
+    /**
+     * Draw a frame by writing its pixels directly
+     *
+     * @param g The graphics context to present the frame on
+     * @param snapshot The snapshot to draw
+     * @param alpha How far between the last two simulation steps to draw the
+     * entities, from 0 to 1
+     * @return True if the frame was drawn, false if a sprite can't be drawn
+     * directly and the frame must be drawn through Java2D instead
+     */
+    private boolean renderSoftware(Graphics2D g, WorldSnapshot snapshot, double alpha) {
+        if (softwareFrame == null) {
+            softwareFrame = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+            softwareBackground = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        }
+        if (snapshot.level != softwareBackgroundLevel) {
+            Graphics2D bg = softwareBackground.createGraphics();
+            paintLevel(bg, snapshot.level);
+            bg.dispose();
+            softwareBackgroundLevel = snapshot.level;
+        }
+
+        prepareBatches(snapshot);
+        if (!software.render(pixels(softwareFrame), pixels(softwareBackground), snapshot, alpha,
+                batch, formationPosition(snapshot))) {
+            return false;
+        }
+
+        Graphics2D fg = softwareFrame.createGraphics();
+        drawHud(fg, snapshot);
+        fg.dispose();
+
+        g.drawImage(softwareFrame, 0, 0, null);
+        pixelsTouched = GameWorld.WIDTH * GameWorld.HEIGHT;
+        invalid = true;
+
+        return true;
+    }
+
+    /**
+     * @param image An int RGB image
+     * @return The image's pixels, row by row
+     */
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Turn the software mode on or off
+     *
+     * @param threads The number of threads to draw each frame with, or 0 to
+     * draw through Java2D
+     */
+    public void setSoftwareRendering(int threads) {
+        if (software != null) {
+            software.shutdown();
+        }
+
+        software = threads > 0 ? new SoftwareRenderer(threads) : null;
+        invalid = true;
+    }
+
+    /**
+     * Copy the composed frame to the target
+     *
+     * @param g The graphics context of the target
+     * @param whole True if the whole frame must be copied, otherwise only
+     * the regions redrawn are
+     */
+    private void present(Graphics2D g, boolean whole) {
+        if (whole) {
+            g.drawImage(frame, 0, 0, null);
+            return;
+        }
+
+        for (int i = 0; i < dirty.getCount(); i++) {
+            int x0 = dirty.getX(i), y0 = dirty.getY(i);
+            int x1 = x0 + dirty.getWidth(i), y1 = y0 + dirty.getHeight(i);
+
+            g.drawImage(frame, x0, y0, x1, y1, x0, y0, x1, y1, null);
+        }
+    }
+
+    /**
+     * Turn the dirty rectangle mode on or off
+     *
+     * @param dirtyRectangles True if only the regions that changed should
+     * be redrawn
+     * @param threshold The fraction of the screen the changed regions may
+     * cover before the whole frame is redrawn instead
+     */
+    public void setDirtyRectangles(boolean dirtyRectangles, double threshold) {
+        this.dirtyRectangles = dirtyRectangles;
+        this.dirtyThreshold = threshold;
+        invalid = true;
+    }
+
+    /**
+     * Tell the compositor whether the target keeps the frame presented to
+     * it, e.g. a blitted back buffer does but a flipped one does not
+     *
+     * @param targetRetained True if only the changed regions need copying
+     * to the target
+     */
+    public void setTargetRetained(boolean targetRetained) {
+        this.targetRetained = targetRetained;
+    }
+
+    /**
+     * Have the whole of the next frame redrawn and presented, e.g. because
+     * the target's contents have been lost
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * @return The number of pixels redrawn in the last frame, the whole
+     * screen unless only the changed regions were
+     */
+    public int getPixelsTouched() {
+        return pixelsTouched;
+    }
+
+    /**
+     * Sort the entities into batches by sprite, so all the aliens are drawn
+     * together, then all the shots, and so on. As the sprites share an
+     * atlas this draws from the same region over and over. Within a batch
+     * entities are drawn in list order.
+     *
+     * @param snapshot The snapshot holding the entities to draw
+     */
+    private void prepareBatches(WorldSnapshot snapshot) {
+        int count = snapshot.count;
+        Sprite[] entities = snapshot.sprites;
+        int sprites = SpriteStore.get().getSpriteCount();
+
+        if (batchStarts.length < sprites + 1) {
+            batchStarts = new int[sprites + 1];
+        } else {
+            Arrays.fill(batchStarts, 0, sprites + 1, 0);
+        }
+        if (batch.length < count) {
+            batch = new int[Math.max(count, batch.length * 2)];
+        }
+
+        // count the entities using each sprite, then turn the counts into
+        // the start of each sprite's batch
+        for (int i = 0; i < count; i++) {
+            batchStarts[entities[i].id + 1]++;
+        }
+        for (int i = 1; i <= sprites; i++) {
+            batchStarts[i] += batchStarts[i - 1];
+        }
+        for (int i = 0; i < count; i++) {
+            batch[batchStarts[entities[i].id]++] = i;
+        }
+    }
+
+    /**
+     * Draw the entity layer in the batches last prepared. The aliens are
+     * drawn as the batch of the formation's sprite.
+     *
+     * @param g The graphics context to draw on
+     * @param snapshot The snapshot holding the entities to draw
+     * @param alpha How far between the last two simulation steps to draw
+     * the entities, from 0 to 1
+     */
+    private void drawEntities(Graphics2D g, WorldSnapshot snapshot, double alpha) {
+        int count = snapshot.count;
+        int beneath = formationPosition(snapshot);
+
+        for (int i = 0; i < count; i++) {
+            if (i == beneath) {
+                snapshot.drawFormation(g, alpha);
+            }
+            snapshot.drawEntity(g, batch[i], alpha);
+        }
+        if (beneath == count && snapshot.hasFormation) {
+            snapshot.drawFormation(g, alpha);
+        }
+    }
+
+    /**
+     * Draw the entities of the batches last prepared that cross a
+     * rectangle, in the same order as they are drawn in a whole frame
+     *
+     * @param g The graphics context to draw on
+     * @param snapshot The snapshot holding the entities to draw
+     * @param alpha How far between the last two simulation steps to draw
+     * the entities, from 0 to 1
+     * @param x The x location of the rectangle
+     * @param y The y location of the rectangle
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    private void drawEntities(Graphics2D g, WorldSnapshot snapshot, double alpha, int x, int y, int width,
+            int height) {
+        int count = snapshot.count;
+        int beneath = formationPosition(snapshot);
+
+        for (int i = 0; i < count; i++) {
+            if (i == beneath) {
+                snapshot.drawFormation(g, alpha, x, y, width, height);
+            }
+
+            int entity = batch[i];
+            Sprite sprite = snapshot.sprites[entity];
+            int ex = snapshot.getEntityX(entity, alpha), ey = snapshot.getEntityY(entity, alpha);
+
+            if (ex < x + width && x < ex + sprite.getWidth() && ey < y + height && y < ey + sprite.getHeight()) {
+                sprite.draw(g, ex, ey);
+            }
+        }
+        if (beneath == count && snapshot.hasFormation) {
+            snapshot.drawFormation(g, alpha, x, y, width, height);
+        }
+    }
+
+    /**
+     * Find where in the batches last prepared the aliens are drawn
+     *
+     * @param snapshot The snapshot holding the entities to draw
+     * @return The number of entities drawn beneath the aliens
+     */
+    private int formationPosition(WorldSnapshot snapshot) {
+        // the batches before the formation's sprite are drawn beneath it
+        if (!snapshot.hasFormation) {
+            return snapshot.count;
+        }
+
+        int id = snapshot.formationSprite.id;
+        return id == 0 ? 0 : batchStarts[id - 1];
+    }
+
+    /**
+     * Draw the background layer for a level, repainting it if the level has
+     * changed or its surface has been lost
+     *
+     * @param g The graphics context to draw on
+     * @param level The level whose background should be drawn
+     */
+    private void drawBackground(Graphics2D g, int level) {
+        drawBackground(g, level, 0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+    }
+
+    /**
+     * Draw part of the background layer for a level, as
+     * {@link #drawBackground(Graphics2D, int)} but copying only a rectangle
+     *
+     * @param g The graphics context to draw on
+     * @param level The level whose background should be drawn
+     * @param x The x location of the rectangle
+     * @param y The y location of the rectangle
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    private void drawBackground(Graphics2D g, int level, int x, int y, int width, int height) {
+        do {
+            int status = background == null ? VolatileImage.IMAGE_INCOMPATIBLE : background.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                // a new image is only ready to paint once it's been
+                // validated, which may clear it
+                background = gc.createCompatibleVolatileImage(GameWorld.WIDTH, GameWorld.HEIGHT);
+                background.validate(gc);
+                paintBackground(background, level);
+            } else if (status == VolatileImage.IMAGE_RESTORED || level != backgroundLevel) {
+                paintBackground(background, level);
+            }
+
+            g.drawImage(background, x, y, x + width, y + height, x, y, x + width, y + height, null);
+        } while (background.contentsLost());
+    }
+
+    /**
+     * Paint the contents of a level's background layer
+     *
+     * @param background The image to paint into
+     * @param level The level whose background should be painted
+     */
+    private void paintBackground(VolatileImage background, int level) {
+        Graphics2D g = background.createGraphics();
+
+        paintLevel(g, level);
+        g.dispose();
+
+        backgroundLevel = level;
+    }
+
+    /**
+     * Paint a level's background over the whole screen
+     *
+     * @param g The graphics context to paint on
+     * @param level The level whose background should be painted
+     */
+    private void paintLevel(Graphics2D g, int level) {
+        g.setColor(Color.black);
+        g.fillRect(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+        SpriteStore.get().getSprite(levelsBackground.get(level)).draw(g, 0, 0);
+    }
+
+    /**
+     * Draw the HUD layer, re-rendering its text first if it has changed
+     *
+     * @param g The graphics context to draw on
+     * @param snapshot The snapshot whose state is shown
+     */
+    private void drawHud(Graphics2D g, WorldSnapshot snapshot) {
+        if (isHudStale(snapshot)) {
+            updateHud(g, snapshot);
+        }
+
+        for (int i = 0; i < hudImages.length; i++) {
+            g.drawImage(hudImages[i], hudX[i], hudY[i], null);
+        }
+    }
+
+    /**
+     * Draw the HUD layer's text that crosses a rectangle, as it was last
+     * rendered
+     *
+     * @param g The graphics context to draw on
+     * @param x The x location of the rectangle
+     * @param y The y location of the rectangle
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    private void drawHudImages(Graphics2D g, int x, int y, int width, int height) {
+        for (int i = 0; i < hudImages.length; i++) {
+            if (hudX[i] < x + width && x < hudX[i] + hudImages[i].getWidth()
+                    && hudY[i] < y + height && y < hudY[i] + hudImages[i].getHeight()) {
+                g.drawImage(hudImages[i], hudX[i], hudY[i], null);
+            }
+        }
+    }
+
+    /**
+     * @param snapshot The snapshot whose state is shown
+     * @return True if the HUD layer's text no longer matches the state
+     */
+    private boolean isHudStale(WorldSnapshot snapshot) {
+        return hudMessage == null || snapshot.level != hudLevel || snapshot.waiting != hudWaiting
+                || (snapshot.waiting && !snapshot.message.equals(hudMessage));
+    }
+
+    /**
+     * Re-render the HUD layer's text for the state shown
+     *
+     * @param g The graphics context whose font messages are shown in
+     * @param snapshot The snapshot whose state is shown
+     */
+    private void updateHud(Graphics2D g, WorldSnapshot snapshot) {
+        if (messageFont == null) {
+            messageFont = g.getFont();
+        }
+
+        renderHud(snapshot.level, snapshot.waiting, snapshot.message);
+    }
+
+    /**
+     * Add the area covered by the HUD layer's text
+     *
+     * @param region The region to add the bounds to
+     */
+    private void addHudBounds(DirtyRegion region) {
+        for (int i = 0; i < hudImages.length; i++) {
+            region.add(hudX[i], hudY[i], hudImages[i].getWidth(), hudImages[i].getHeight());
+        }
+    }
+
+    /**
+     * Render the text items of the HUD layer
+     *
+     * @param level The level being played
+     * @param waiting True if we're waiting for a key press
+     * @param message The message to show while waiting
+     */
+    private void renderHud(int level, boolean waiting, String message) {
+        int count = waiting ? 3 : 1;
+
+        hudImages = new BufferedImage[count];
+        hudX = new int[count];
+        hudY = new int[count];
+
+        Color levelColor = level == 1 ? Color.red : level == 2 ? Color.orange : Color.green;
+        renderText(0, "Level : " + levelsDesc.get(level), levelFont, levelColor, 600, 30);
+
+        // if we're waiting for an "any key" press then show the
+        // current message
+        if (waiting) {
+            FontMetrics metrics = metrics(messageFont);
+
+            renderText(1, message, messageFont, Color.white,
+                    (GameWorld.WIDTH - metrics.stringWidth(message)) / 2, 250);
+            renderText(2, PRESS_ANY_KEY, messageFont, Color.white,
+                    (GameWorld.WIDTH - metrics.stringWidth(PRESS_ANY_KEY)) / 2, 300);
+        }
+
+        hudLevel = level;
+        hudWaiting = waiting;
+        hudMessage = message;
+    }
+
+    /**
+     * Render a piece of text into an image just large enough to hold it
+     *
+     * @param item The index of the HUD item to fill in
+     * @param text The text to render
+     * @param font The font to render in
+     * @param color The color to render in
+     * @param x The x location of the start of the text's baseline
+     * @param y The y location of the text's baseline
+     */
+    private void renderText(int item, String text, Font font, Color color, int x, int y) {
+        FontMetrics metrics = metrics(font);
+        int width = Math.max(1, metrics.stringWidth(text));
+        int height = Math.max(1, metrics.getAscent() + metrics.getDescent());
+
+        BufferedImage image = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(text, 0, metrics.getAscent());
+        g.dispose();
+
+        hudImages[item] = image;
+        hudX[item] = x;
+        hudY[item] = y - metrics.getAscent();
+    }
+
+    /**
+     * @param font The font to measure
+     * @return The metrics of the font
+     */
+    private FontMetrics metrics(Font font) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scratch.createGraphics();
+        FontMetrics metrics = g.getFontMetrics(font);
+
+        g.dispose();
+        return metrics;
+    }
+}
@@ -0,0 +1,381 @@
+package spaceinvaders;
+
+import java.awt.Canvas;
+import java.awt.Frame;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a fixed sequence of frames through a {@link RenderBackend} and
+ * reports the frame rate and a checksum of every frame, to catch rendering
+ * regressions and compare Java2D pipelines and image types without a
+ * display.
+ *
+ * <pre>
+ * java spaceinvaders.RenderHarness [-backend image|window] [-frames n] [-warmup n]
+ *     [-seed n] [-types int_rgb,int_argb_pre,...] [-modes full,dirty,software]
+ *     [-threads 1,2,4] [-out checksums.txt] [-expect checksums.txt]
+ * </pre>
+ *
+ * The modes are the compositor drawing each frame through Java2D, redrawing
+ * only the regions that changed, or writing the pixels directly in
+ * software, which is run once for each number of threads given.
+ *
+ * The frames are of a seeded game played by a {@link TrackingAgent}, so
+ * every run draws the same frames. Each frame is checksummed after it is
+ * shown, which is not timed. Checksums can be written out and compared
+ * against on a later run, which exits with 1 if any frame differs. The
+ * pipeline is chosen as usual with the {@code sun.java2d} properties, e.g.
+ * {@code -Dsun.java2d.xrender=true}, and the window backend is needed for
+ * it to make any difference, as images are always drawn in software. A
+ * window's frames can't be read back, so they are timed but not
+ * checksummed.
+ */
+public class RenderHarness {
+
+    /**
+     * The image types that can be rendered into, by name
+     */
+    private static final Map<String, Integer> TYPES = new LinkedHashMap<String, Integer>();
+
+    static {
+        TYPES.put("int_rgb", BufferedImage.TYPE_INT_RGB);
+        TYPES.put("int_argb", BufferedImage.TYPE_INT_ARGB);
+        TYPES.put("int_argb_pre", BufferedImage.TYPE_INT_ARGB_PRE);
+        TYPES.put("int_bgr", BufferedImage.TYPE_INT_BGR);
+        TYPES.put("3byte_bgr", BufferedImage.TYPE_3BYTE_BGR);
+        TYPES.put("ushort_565", BufferedImage.TYPE_USHORT_565_RGB);
+    }
+
+    /**
+     * The outcome of rendering the frames one way
+     */
+    public static class Result {
+
+        /**
+         * The backend, image type and compositing mode rendered with
+         */
+        String config;
+        /**
+         * The checksum of each frame, empty if the frames couldn't be read
+         */
+        long[] checksums;
+        /**
+         * The time spent composing and showing frames (ns)
+         */
+        long nanos;
+        /**
+         * The number of pixels redrawn over every frame
+         */
+        long pixels;
+        /**
+         * The number of frames rendered
+         */
+        int frameCount;
+
+        /**
+         * @return The frames rendered per second, excluding stepping the
+         * world and checksumming
+         */
+        public double getFramesPerSecond() {
+            return frameCount * 1e9 / nanos;
+        }
+
+        /**
+         * @return A checksum of every frame's checksum
+         */
+        public long getChecksum() {
+            long hash = 0xcbf29ce484222325L;
+            for (long checksum : checksums) {
+                hash = (hash ^ checksum) * 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * The number of frames rendered and measured
+     */
+    private int frames = 600;
+    /**
+     * The number of frames rendered before measuring
+     */
+    private int warmup = 120;
+    /**
+     * The seed of the world played
+     */
+    private long seed = 1;
+    /**
+     * The number of simulation steps between frames
+     */
+    private int stepsPerFrame = 2;
+
+    /**
+     * Render the sequence of frames
+     *
+     * @param backend The backend to render through
+     * @param config The name of the backend and settings, for the report
+     * @param mode The way the compositor draws, full, dirty or software
+     * @param threads The number of threads to draw with in software mode
+     * @return The outcome
+     */
+    public Result run(RenderBackend backend, String config, String mode, int threads) {
+        RenderCompositor compositor = new RenderCompositor(backend.getConfiguration());
+
+        if (mode.equals("dirty")) {
+            compositor.setDirtyRectangles(true, 0.5);
+            compositor.setTargetRetained(backend.isRetained());
+        } else if (mode.equals("software")) {
+            compositor.setSoftwareRendering(threads);
+        } else if (!mode.equals("full")) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        // warm up on a separate game, so the measured frames always start
+        // from the same state
+        play(backend, compositor, warmup, null);
+
+        Result result = new Result();
+        result.config = config;
+        result.frameCount = frames;
+        result.checksums = new long[backend instanceof ImageBackend ? frames : 0];
+        play(backend, compositor, frames, result);
+        compositor.setSoftwareRendering(0);
+
+        return result;
+    }
+
+    /**
+     * Render the sequence of frames in each mode, and in software mode with
+     * each number of threads
+     */
+    private void runModes(RenderBackend backend, String name, String[] modes, int[] threads, List<Result> results) {
+        for (String mode : modes) {
+            if (!mode.equals("software")) {
+                results.add(run(backend, name + "/" + mode, mode, 1));
+                continue;
+            }
+
+            for (int count : threads) {
+                results.add(run(backend, name + "/software" + count, mode, count));
+            }
+        }
+    }
+
+    /**
+     * Play a fresh game, rendering a frame every few steps
+     */
+    private void play(RenderBackend backend, RenderCompositor compositor, int count, Result result) {
+        GameWorld world = new GameWorld(seed);
+        Agent agent = TrackingAgent.FACTORY.create(seed);
+        InputState input = new InputState();
+        WorldSnapshot snapshot = new WorldSnapshot();
+
+        compositor.invalidate();
+        world.startGame();
+        int waited = 0;
+
+        for (int frame = 0; frame < count; frame++) {
+            for (int step = 0; step < stepsPerFrame; step++) {
+                // show each message for a second, as a player might
+                if (world.isWaitingForKeyPress() && ++waited == 100) {
+                    world.startGame();
+                    waited = 0;
+                }
+                agent.act(world, input);
+                world.step(SimulationLoop.DEFAULT_STEP_NANOS, input);
+            }
+            snapshot.capture(world);
+
+            long start = System.nanoTime();
+            Graphics2D g = backend.getDrawGraphics();
+            if (backend.contentsRestored()) {
+                compositor.invalidate();
+            }
+            compositor.render(g, snapshot, (frame % 4) / 4.0);
+            g.dispose();
+            backend.show();
+
+            if (result != null) {
+                result.nanos += System.nanoTime() - start;
+                result.pixels += compositor.getPixelsTouched();
+                if (result.checksums.length > 0) {
+                    result.checksums[frame] = ((ImageBackend) backend).checksum();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A description of the Java2D pipeline in use
+     */
+    static String pipeline() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return "headless";
+        }
+
+        String[] flags = { "opengl", "xrender", "d3d", "metal" };
+        for (String flag : flags) {
+            if (Boolean.parseBoolean(System.getProperty("sun.java2d." + flag))) {
+                return flag;
+            }
+        }
+
+        return "default";
+    }
+
+    /**
+     * Read checksums written by a previous run
+     *
+     * @return The checksums by config and frame
+     */
+    static Map<String, Long> readChecksums(String file) throws IOException {
+        Map<String, Long> checksums = new HashMap<String, Long>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length == 3) {
+                    checksums.put(parts[0] + " " + parts[1], Long.parseUnsignedLong(parts[2], 16));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return checksums;
+    }
+
+    public static void main(String argv[]) throws IOException {
+        String backendName = "image";
+        String[] types = { "int_rgb" };
+        String[] modes = { "full", "dirty" };
+        int[] threads = { Runtime.getRuntime().availableProcessors() };
+        String out = null, expect = null;
+        RenderHarness harness = new RenderHarness();
+
+        for (int i = 0; i + 1 < argv.length; i += 2) {
+            String value = argv[i + 1];
+
+            if (argv[i].equals("-backend")) {
+                backendName = value;
+            } else if (argv[i].equals("-frames")) {
+                harness.frames = Integer.parseInt(value);
+            } else if (argv[i].equals("-warmup")) {
+                harness.warmup = Integer.parseInt(value);
+            } else if (argv[i].equals("-seed")) {
+                harness.seed = Long.parseLong(value);
+            } else if (argv[i].equals("-types")) {
+                types = value.split(",");
+            } else if (argv[i].equals("-modes")) {
+                modes = value.split(",");
+            } else if (argv[i].equals("-threads")) {
+                String[] parts = value.split(",");
+                threads = new int[parts.length];
+                for (int t = 0; t < parts.length; t++) {
+                    threads[t] = Integer.parseInt(parts[t].trim());
+                }
+            } else if (argv[i].equals("-out")) {
+                out = value;
+            } else if (argv[i].equals("-expect")) {
+                expect = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + argv[i]);
+            }
+        }
+
+        if (backendName.equals("image")) {
+            // images need no display
+            System.setProperty("java.awt.headless", "true");
+        } else if (!backendName.equals("window")) {
+            throw new IllegalArgumentException("Unknown backend: " + backendName);
+        }
+
+        List<Result> results = new ArrayList<Result>();
+        Frame window = null;
+
+        if (backendName.equals("window")) {
+            window = new Frame("Render harness");
+            Canvas canvas = new Canvas();
+            canvas.setSize(GameWorld.WIDTH, GameWorld.HEIGHT);
+            canvas.setIgnoreRepaint(true);
+            window.add(canvas);
+            window.pack();
+            window.setResizable(false);
+            window.setVisible(true);
+
+            RenderBackend backend = new BufferStrategyBackend(canvas, 2);
+            harness.runModes(backend, "window", modes, threads, results);
+        } else {
+            for (String type : types) {
+                Integer imageType = TYPES.get(type);
+                if (imageType == null) {
+                    throw new IllegalArgumentException("Unknown image type: " + type + ", one of " + TYPES.keySet());
+                }
+
+                harness.runModes(new ImageBackend(imageType), "image/" + type, modes, threads, results);
+            }
+        }
+
+        if (window != null) {
+            window.dispose();
+        }
+
+        System.out.println("Rendering " + harness.frames + " frames, seed " + harness.seed
+                + ", pipeline " + pipeline());
+        for (Result result : results) {
+            System.out.printf("  %-28s %8.1f fps %10d pixels/frame  checksum %s%n", result.config,
+                    result.getFramesPerSecond(), result.pixels / harness.frames,
+                    result.checksums.length > 0 ? Long.toHexString(result.getChecksum()) : "-");
+        }
+
+        if (out != null) {
+            PrintWriter writer = new PrintWriter(new FileWriter(out));
+            try {
+                for (Result result : results) {
+                    for (int frame = 0; frame < result.checksums.length; frame++) {
+                        writer.println(result.config + " " + frame + " " + Long.toHexString(result.checksums[frame]));
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        if (expect != null) {
+            Map<String, Long> expected = readChecksums(expect);
+            boolean failed = false;
+
+            for (Result result : results) {
+                for (int frame = 0; frame < result.checksums.length; frame++) {
+                    Long checksum = expected.get(result.config + " " + frame);
+
+                    if (checksum != null && checksum != result.checksums[frame]) {
+                        System.out.println("  " + result.config + " differs from " + expect + " at frame " + frame);
+                        failed = true;
+                        break;
+                    }
+                }
+            }
+
+            if (failed) {
+                System.exit(1);
+            }
+        }
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,210 @@
+package spaceinvaders;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Plays an {@link InputRecording} back into a fresh world, headless and as
+ * fast as the CPU allows, checking the world's state against the hashes
+ * made while recording. Used to reproduce a reported session exactly and
+ * to use real sessions as workloads.
+ *
+ * <pre>
+ * java spaceinvaders.ReplayRunner session.rec [-repeat n]
+ * </pre>
+ *
+ * Prints the outcome and the simulation rate of each run, and exits with 1
+ * if the replay diverged from the recording.
+ */
+public class ReplayRunner {
+
+    /**
+     * The outcome of replaying a recording
+     */
+    public static class Result {
+
+        /**
+         * The number of steps replayed
+         */
+        long steps;
+        /**
+         * The number of state hashes that were checked
+         */
+        int checks;
+        /**
+         * The number of steps taken when the world first disagreed with the
+         * recording, -1 if it never did
+         */
+        long divergedAt = -1;
+        /**
+         * The wall clock time taken to replay (ns)
+         */
+        long nanos;
+        /**
+         * The world after the last step
+         */
+        GameWorld world;
+
+        public boolean isExact() {
+            return divergedAt < 0;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public long getDivergedAt() {
+            return divergedAt;
+        }
+
+        public GameWorld getWorld() {
+            return world;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+
+            return String.format("%d steps in %.1f ms (%.0f steps/sec), level %d, %d aliens left, %s",
+                    steps, nanos / 1e6, steps / seconds, world.getLevel(), world.getAlienCount(),
+                    isExact() ? checks + " checks passed" : "diverged after " + divergedAt + " steps");
+        }
+    }
+
+    /**
+     * Replay a recording into a new world
+     *
+     * @param recording The recording to replay
+     * @return The outcome of the replay
+     */
+    public static Result replay(InputRecording recording) {
+        Result result = new Result();
+        GameWorld world = new GameWorld(recording.getSeed());
+        InputState input = new InputState();
+        List<InputRecording.Event> events = recording.getEvents();
+        long stepNanos = recording.getStepNanos();
+        long steps = recording.getSteps();
+        int next = 0;
+
+        long start = System.nanoTime();
+
+        for (long step = 0; step <= steps; step++) {
+            // apply everything that happened before this step, in the order
+            // it was recorded
+            while (next < events.size() && events.get(next).step == step) {
+                InputRecording.Event event = events.get(next++);
+
+                switch (event.type) {
+                    case InputRecording.INPUT:
+                        input.setBits(event.bits);
+                        break;
+                    case InputRecording.START:
+                    case InputRecording.WAIT:
+                        apply(world, event);
+                        break;
+                    case InputRecording.CHECK:
+                        result.checks++;
+                        if (result.divergedAt < 0 && world.stateHash() != event.hash) {
+                            result.divergedAt = step;
+                        }
+                        break;
+                }
+            }
+
+            if (step < steps) {
+                world.step(stepNanos, input);
+            }
+        }
+
+        result.nanos = System.nanoTime() - start;
+        result.steps = steps;
+        result.world = world;
+        return result;
+    }
+
+    /**
+     * Start a game or hold up play as recorded, either straight away or as
+     * a command applied at the start of the next step
+     */
+    private static void apply(GameWorld world, final InputRecording.Event event) {
+        WorldCommand command = new WorldCommand() {
+            public void apply(GameWorld world) {
+                if (event.type == InputRecording.START) {
+                    world.startGame();
+                } else {
+                    world.waitForKeyPress(event.message);
+                }
+            }
+        };
+
+        if ((event.bits & InputRecording.DURING) != 0) {
+            world.post(command);
+        } else {
+            command.apply(world);
+        }
+    }
+
+    /**
+     * Read a recording from a file
+     *
+     * @param path The path of the file
+     * @return The recording read
+     * @throws IOException Indicates the file couldn't be read or isn't a
+     * recording
+     */
+    public static InputRecording load(String path) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+
+        try {
+            return InputRecording.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The entry point for replaying from the command line
+     *
+     * @param argv The recording to replay, optionally followed by -repeat
+     * and the number of times to replay it
+     */
+    public static void main(String[] argv) throws IOException {
+        if (argv.length == 0) {
+            System.err.println("Usage: ReplayRunner <recording> [-repeat n]");
+            System.exit(2);
+        }
+
+        int repeat = 1;
+        for (int i = 1; i < argv.length; i++) {
+            if (argv[i].equals("-repeat") && i + 1 < argv.length) {
+                repeat = Integer.parseInt(argv[++i]);
+            } else {
+                System.err.println("Unknown option: " + argv[i]);
+                System.exit(2);
+            }
+        }
+
+        // replays never open a window
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        InputRecording recording = load(argv[0]);
+        boolean exact = true;
+
+        System.out.println("Replaying " + argv[0] + ": seed " + recording.getSeed() + ", "
+                + recording.getSteps() + " steps of " + recording.getStepNanos() / 1000000.0 + " ms");
+
+        for (int run = 0; run < repeat; run++) {
+            Result result = replay(recording);
+
+            System.out.println("  run " + (run + 1) + ": " + result);
+            exact &= result.isExact();
+        }
+
+        System.exit(exact ? 0 : 1);
+    }
+}
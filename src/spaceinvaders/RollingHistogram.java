@@ -0,0 +1,111 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent samples of a timing so that percentiles over a
+ * rolling window can be read while the game runs.
+ *
+ * Recording a sample is a single array store, the work of sorting is only
+ * done when percentiles are read (e.g. by a JMX client). Samples are
+ * recorded by one thread; a reader on another thread may see a window that
+ * is a sample or two out of date, which is fine for monitoring.
+ */
+public class RollingHistogram {
+
+    /**
+     * The most recent samples, used as a ring
+     */
+    private final long[] samples;
+    /**
+     * The number of samples ever recorded
+     */
+    private long count;
+    /**
+     * The largest sample ever recorded
+     */
+    private long max;
+    /**
+     * The sum of every sample ever recorded
+     */
+    private long total;
+
+    /**
+     * Create an empty histogram
+     *
+     * @param window The number of recent samples to keep
+     */
+    public RollingHistogram(int window) {
+        this.samples = new long[window];
+    }
+
+    /**
+     * Record a sample
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+        samples[(int) (count % samples.length)] = value;
+        count++;
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Get percentiles of the samples in the window
+     *
+     * @param percentiles The percentiles to find, from 0 to 100
+     * @return The value at each percentile, 0 if nothing has been recorded
+     */
+    public long[] percentiles(double... percentiles) {
+        int size = (int) Math.min(count, samples.length);
+        long[] values = new long[percentiles.length];
+
+        if (size == 0) {
+            return values;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * size) - 1;
+
+            values[i] = sorted[Math.max(0, Math.min(size - 1, rank))];
+        }
+
+        return values;
+    }
+
+    /**
+     * @return The number of samples ever recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The largest sample ever recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The mean of every sample ever recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Forget every sample
+     */
+    public void reset() {
+        count = 0;
+        max = 0;
+        total = 0;
+    }
+}
@@ -1,7 +1,5 @@
 package spaceinvaders;
 
-import java.util.ArrayList;
-
 /**
  * The entity that represents the players ship
  * 
@@ -9,7 +7,11 @@ import java.util.ArrayList;
  */
 public class ShipEntity extends Entity {
 	/** The game in which the ship exists */
-	private Game game;
+	private GameWorld game;
+	/** The index of the player controlling this ship */
+	private int player;
+	/** True if this ship has been destroyed while other players carry on */
+	private boolean destroyed;
 	
 	/**
 	 * Create a new entity to represent the players ship
@@ -19,43 +21,118 @@ public class ShipEntity extends Entity {
 	 * @param x The initial x location of the player's ship
 	 * @param y The initial y location of the player's ship
 	 */
-	public ShipEntity(Game game,String ref,int x,int y) {
+	public ShipEntity(GameWorld game,String ref,int x,int y) {
+		this(game,ref,x,y,0);
+	}
+	
+	/**
+	 * Create a new entity to represent one of the players' ships
+	 *  
+	 * @param game The game in which the ship is being created
+	 * @param ref The reference to the sprite to show for the ship
+	 * @param x The initial x location of the ship
+	 * @param y The initial y location of the ship
+	 * @param player The index of the player controlling the ship
+	 */
+	public ShipEntity(GameWorld game,String ref,int x,int y,int player) {
 		super(ref,x,y);
 		
 		this.game = game;
+		this.player = player;
+		setCollisionLayer(CollisionLayer.SHIP);
 	}
 	
 	/**
-	 * Request that the ship move itself based on an elapsed ammount of
-	 * time
+	 * Request that the ships in an archetype move themselves based on an
+	 * elapsed ammount of time
 	 * 
+	 * @param ships The archetype holding the ships
 	 * @param delta The time that has elapsed since last move (ms)
 	 */
-	public void move(long delta) {
+	static void moveAll(EntityStore.Archetype ships, long delta) {
+		double[] x = ships.x, y = ships.y, dx = ships.dx, dy = ships.dy;
+		
+		for (int i = 0; i < ships.size; i++) {
+			if (!canMove(x[i], dx[i])) {
+				continue;
+			}
+			
+			x[i] += (delta * dx[i]) / 1000;
+			y[i] += (delta * dy[i]) / 1000;
+		}
+	}
+	
+	/**
+	 * Check if a ship is free to move, a client predicting its ship
+	 * moves it by the same rule
+	 * 
+	 * @param x The x location of the ship
+	 * @param dx The horizontal speed of the ship (pixels/sec)
+	 * @return False if the ship has reached the side of the screen it's
+	 * moving toward
+	 */
+	static boolean canMove(double x, double dx) {
 		// if we're moving left and have reached the left hand side
 		// of the screen, don't move
 		if ((dx < 0) && (x < 10)) {
-			return;
+			return false;
 		}
 		// if we're moving right and have reached the right hand side
 		// of the screen, don't move
 		if ((dx > 0) && (x > 750)) {
-			return;
+			return false;
 		}
 		
-		super.move(delta);
+		return true;
 	}
 	
 	/**
-	 * Notification that the player's ship has collided with something
+	 * Get the horizontal speed a ship is given by the controls held. If
+	 * neither or both directions are held the ship stands still.
 	 * 
-	 * @param other The entity with which the ship has collided
+	 * @param controls The controls held, as {@link InputState} bits
+	 * @param speed The speed the ship moves at (pixels/sec)
+	 * @return The horizontal speed of the ship (pixels/sec)
 	 */
-	public void collidedWith(Entity other) {
-		// if its an alien, notify the game that the player
-		// is dead
-		if (other instanceof AlienEntity || other instanceof ShotEntity) {
-			game.notifyDeath();
+	static double speedFor(int controls, double speed) {
+		boolean left = (controls & InputState.LEFT) != 0, right = (controls & InputState.RIGHT) != 0;
+		
+		if (left && !right) {
+			return -speed;
+		} else if (right && !left) {
+			return speed;
 		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Notification that the player's ship has been hit by something
+	 * deadly (an alien, an alien's shot or a meteor)
+	 */
+	public void hit() {
+		game.notifyShipHit(this);
+	}
+	
+	/**
+	 * Take this ship out of the game, leaving the other players to carry on
+	 */
+	void destroy() {
+		destroyed = true;
+	}
+	
+	/**
+	 * @return True if this ship has been destroyed while other players
+	 * carry on
+	 */
+	public boolean isDestroyed() {
+		return destroyed;
+	}
+	
+	/**
+	 * @return The index of the player controlling this ship
+	 */
+	public int getPlayer() {
+		return player;
 	}
-}
\ No newline at end of file
+}
@@ -9,7 +9,7 @@ public class ShotEntity extends Entity {
 	/** The vertical speed at which the players shot moves */
 	private double moveSpeed = -300;
 	/** The game in which this entity exists */
-	private Game game;
+	private GameWorld game;
 	/** True if this shot has been "used", i.e. its hit something */
 	private boolean used = false;
 	
@@ -21,55 +21,78 @@ public class ShotEntity extends Entity {
 	 * @param x The initial x location of the shot
 	 * @param y The initial y location of the shot
 	 */
-	public ShotEntity(Game game,String sprite,int x,int y) {
+	public ShotEntity(GameWorld game,String sprite,int x,int y) {
 		super(sprite,x,y);
 		
 		this.game = game;
 		
-		dy = moveSpeed;
+		setVerticalMovement(moveSpeed);
+		setCollisionLayer(CollisionLayer.PLAYER_SHOT);
                 
 	}
 
 	/**
-	 * Request that this shot moved based on time elapsed
+	 * Prepare this shot to be fired again after being reused from a pool
 	 * 
+	 * @param x The x location to fire from
+	 * @param y The y location to fire from
+	 * @param dy The vertical speed of the shot (pixels/sec)
+	 */
+	void reset(int x,int y,double dy) {
+		setLocation(x,y);
+		setHorizontalMovement(0);
+		setVerticalMovement(dy);
+		used = false;
+	}
+	
+	/**
+	 * Request that the shots in an archetype move based on time elapsed
+	 * 
+	 * @param shots The archetype holding the shots
 	 * @param delta The time that has elapsed since last move
+	 * @param game The game in which the shots exist
 	 */
-	public void move(long delta) {
+	static void moveAll(EntityStore.Archetype shots, long delta, GameWorld game) {
 		// proceed with normal move
-		super.move(delta);
+		shots.move(delta);
 		
 		// if we shot off the screen, remove ourselfs
-		if (y < -100 || y > 600) {
-			game.removeEntity(this);
+		double[] y = shots.y;
+		
+		for (int i = 0; i < shots.size; i++) {
+			if ((y[i] < -100 || y[i] > 600) && shots.views[i] != null) {
+				game.removeEntity(shots.views[i]);
+			}
 		}
 	}
 	
 	/**
-	 * Notification that this shot has collided with another
-	 * entity
+	 * Notification that this shot has hit an alien
 	 * 
-	 * @parma other The other entity with which we've collided
+	 * @return True if the alien was killed, false if this shot had
+	 * already been used up
 	 */
-	public void collidedWith(Entity other) {
-		// prevents double kills, if we've already hit something,
+	public boolean hitAlien() {
+		// prevents double kills, if we've already hit something
 		// don't collide
 		if (used) {
-			return;
+			return false;
 		}
 		
-		// if we've hit an alien, kill it!
-		if (other instanceof AlienEntity) {
-			// remove the affected entities
-			game.removeEntity(this);
-			game.removeEntity(other);
-			
-			// notify the game that the alien has been killed
-			game.notifyAlienKilled();
-			used = true;
-		}else if(other instanceof ShipEntity){
-                    game.removeEntity(this);
-                    game.notifyDeath();
-                }
+		// remove ourselves, the game removes the alien
+		game.removeEntity(this);
+		used = true;
+		
+		return true;
+	}
+	
+	/**
+	 * Notification that this shot has hit a player's ship
+	 * 
+	 * @param ship The ship that was hit
+	 */
+	public void hitShip(ShipEntity ship) {
+		game.removeEntity(this);
+		ship.hit();
 	}
-}
\ No newline at end of file
+}
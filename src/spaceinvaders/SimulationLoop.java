@@ -0,0 +1,199 @@
+package spaceinvaders;
+
+/**
+ * Drives a {@link GameWorld} in fixed size steps from a {@link GameClock}.
+ *
+ * Each update measures how much time has passed on the clock, scales it by
+ * the time scale and adds it to an accumulator. The world is then stepped
+ * once for every whole step in the accumulator, so the simulation behaves
+ * the same however fast or slow frames are rendered. The time left over is
+ * reported as an interpolation factor so that rendering can place entities
+ * between their previous and current positions.
+ */
+public class SimulationLoop {
+
+    /**
+     * The default length of a simulation step (10 ms, i.e. 100 steps a second)
+     */
+    public static final long DEFAULT_STEP_NANOS = 10000000L;
+
+    /**
+     * The world being simulated
+     */
+    private final GameWorld world;
+    /**
+     * The clock measuring real time
+     */
+    private final GameClock clock;
+    /**
+     * The amount of simulated time each step advances by (ns)
+     */
+    private final long stepNanos;
+    /**
+     * The number of simulated nanoseconds per real nanosecond
+     */
+    private double timeScale = 1;
+    /**
+     * The most steps a single update may take before dropping time, so that
+     * a slow machine doesn't fall further and further behind
+     */
+    private int maxStepsPerUpdate = 10;
+    /**
+     * The simulated time waiting to be stepped (ns)
+     */
+    private long accumulator;
+    /**
+     * The clock reading at the last update
+     */
+    private long lastTime;
+
+    /**
+     * Create a loop driving a world in steps of the default length
+     *
+     * @param world The world to simulate
+     * @param clock The clock measuring real time
+     */
+    public SimulationLoop(GameWorld world, GameClock clock) {
+        this(world, clock, DEFAULT_STEP_NANOS);
+    }
+
+    /**
+     * Create a loop driving a world
+     *
+     * @param world The world to simulate
+     * @param clock The clock measuring real time
+     * @param stepNanos The amount of simulated time each step advances by
+     */
+    public SimulationLoop(GameWorld world, GameClock clock, long stepNanos) {
+        this.world = world;
+        this.clock = clock;
+        this.stepNanos = stepNanos;
+        this.lastTime = clock.nanoTime();
+    }
+
+    /**
+     * Set how fast simulated time passes compared to real time, e.g. 100
+     * to run the game at 100x real time
+     *
+     * @param timeScale The number of simulated seconds per real second,
+     * which must be more than 0 as the wait until the next step is divided
+     * by it
+     */
+    public void setTimeScale(double timeScale) {
+        if (!(timeScale > 0)) {
+            throw new IllegalArgumentException("The time scale must be more than 0: " + timeScale);
+        }
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * @return The number of simulated seconds per real second
+     */
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * Set the most steps a single update may take at a time scale of 1, the
+     * limit grows with the time scale
+     *
+     * @param maxStepsPerUpdate The most steps per update
+     */
+    public void setMaxStepsPerUpdate(int maxStepsPerUpdate) {
+        this.maxStepsPerUpdate = maxStepsPerUpdate;
+    }
+
+    /**
+     * Forget any time that has passed since the last update, e.g. after the
+     * game has been paused
+     */
+    public void reset() {
+        lastTime = clock.nanoTime();
+        accumulator = 0;
+    }
+
+    /**
+     * Step the world for the time that has passed on the clock since the
+     * last update
+     *
+     * @param input The state of the player's controls
+     * @return The number of steps taken
+     */
+    public int update(InputState input) {
+        long now = clock.nanoTime();
+        long elapsed = now - lastTime;
+        lastTime = now;
+
+        accumulator += (long) (elapsed * timeScale);
+
+        int limit = (int) Math.max(maxStepsPerUpdate, Math.ceil(maxStepsPerUpdate * timeScale));
+        int steps = 0;
+
+        while (accumulator >= stepNanos) {
+            if (steps == limit) {
+                // we can't keep up, drop the time rather than spiral
+                accumulator %= stepNanos;
+                break;
+            }
+
+            world.step(stepNanos, input);
+            accumulator -= stepNanos;
+            steps++;
+        }
+
+        return steps;
+    }
+
+    /**
+     * Step the world as fast as possible, without reference to the clock,
+     * until the given amount of simulated time has passed
+     *
+     * @param simulatedNanos The amount of simulated time to run for
+     * @param input The state of the player's controls
+     * @return The number of steps taken
+     */
+    public int runUncapped(long simulatedNanos, InputState input) {
+        int steps = 0;
+
+        for (long t = 0; t + stepNanos <= simulatedNanos; t += stepNanos) {
+            world.step(stepNanos, input);
+            steps++;
+        }
+
+        return steps;
+    }
+
+    /**
+     * @return The real time until the next step will be due (ns), 0 if
+     * one is due already
+     */
+    public long getNanosUntilNextStep() {
+        long due = lastTime + (long) ((stepNanos - accumulator) / timeScale);
+
+        return Math.max(0, due - clock.nanoTime());
+    }
+
+    /**
+     * @return The clock reading at the last update
+     */
+    public long getLastUpdateTime() {
+        return lastTime;
+    }
+
+    /**
+     * Get how far between the last two steps rendering should place the
+     * entities
+     *
+     * @return The fraction of a step left in the accumulator, from 0 to 1
+     */
+    public double getInterpolation() {
+        return (double) accumulator / stepNanos;
+    }
+
+    /**
+     * @return The amount of simulated time each step advances by (ns)
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+}
@@ -0,0 +1,91 @@
+package spaceinvaders;
+
+/**
+ * Hands the latest snapshot of the world from the simulation thread to the
+ * render thread.
+ *
+ * Three snapshots are kept so that neither thread ever waits on the other:
+ * one being captured into by the simulation, one being drawn by the
+ * renderer, and the latest complete one between them. Publishing swaps the
+ * captured snapshot with the latest one, taking swaps the latest one with
+ * the drawn one if it is newer. A renderer that is slower than the
+ * simulation simply skips the snapshots it never took.
+ */
+public class SnapshotBuffer {
+
+    /**
+     * The snapshot being captured into by the simulation thread
+     */
+    private WorldSnapshot back = new WorldSnapshot();
+    /**
+     * The latest complete snapshot
+     */
+    private WorldSnapshot ready = new WorldSnapshot();
+    /**
+     * The snapshot being drawn by the render thread
+     */
+    private WorldSnapshot front = new WorldSnapshot();
+    /**
+     * True if the ready snapshot hasn't been taken yet
+     */
+    private boolean fresh;
+    /**
+     * The number of snapshots published and taken
+     */
+    private long published, taken;
+
+    /**
+     * Get the snapshot for the simulation thread to capture into. It is not
+     * seen by the renderer until it is published.
+     *
+     * @return The snapshot to capture into
+     */
+    public WorldSnapshot getBack() {
+        return back;
+    }
+
+    /**
+     * Make the captured snapshot the latest one
+     */
+    public synchronized void publish() {
+        WorldSnapshot swap = ready;
+        ready = back;
+        back = swap;
+        fresh = true;
+        published++;
+    }
+
+    /**
+     * Get the latest snapshot for the render thread to draw. It stays
+     * unchanged until the next call.
+     *
+     * @return The latest snapshot published, or the last one taken if
+     * nothing has been published since
+     */
+    public synchronized WorldSnapshot take() {
+        if (fresh) {
+            WorldSnapshot swap = front;
+            front = ready;
+            ready = swap;
+            fresh = false;
+            taken++;
+        }
+
+        return front;
+    }
+
+    /**
+     * @return The number of snapshots published
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return The number of snapshots taken, those published but not taken
+     * were skipped by a renderer that fell behind
+     */
+    public synchronized long getTaken() {
+        return taken;
+    }
+}
@@ -0,0 +1,232 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the background and entity layers straight into the pixels of an
+ * int RGB frame, without going through Java2D for each sprite.
+ *
+ * Each sprite is drawn by copying the spans of its rows (see
+ * {@link SpriteSpans}), which for the many small sprites of a busy frame
+ * costs far less than a drawImage call each. The frame can be split into
+ * horizontal strips drawn in parallel. Every strip draws every entity
+ * crossing it in the same order, only writing its own rows, so the frame
+ * is the same however it is split and the same as drawing it with Java2D.
+ */
+public class SoftwareRenderer {
+
+    /**
+     * The spans of each sprite, indexed by sprite id
+     */
+    private SpriteSpans[] spans = new SpriteSpans[0];
+    /**
+     * The sprite each spans were found for, so a reloaded sprite is found
+     * again
+     */
+    private Sprite[] spanSprites = new Sprite[0];
+    /**
+     * The pool drawing the strips, null if the frame is drawn in one piece
+     */
+    private final ForkJoinPool pool;
+    /**
+     * The number of strips the frame is split into
+     */
+    private final int strips;
+
+    /**
+     * The frame being drawn and what is drawn into it, only set while
+     * drawing
+     */
+    private int[] frame, background;
+    private WorldSnapshot snapshot;
+    private double alpha;
+    private int[] order;
+    private int beneath;
+
+    /**
+     * Draws a range of strips, splitting it in half until each half is a
+     * single strip
+     */
+    private class Strips extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The range of strips to draw
+         */
+        private final int from, to;
+
+        Strips(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                drawStrip(from * GameWorld.HEIGHT / strips, (from + 1) * GameWorld.HEIGHT / strips);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Strips(from, middle), new Strips(middle, to));
+        }
+    }
+
+    /**
+     * Create a renderer
+     *
+     * @param threads The number of threads to draw the frame with, each
+     * drawing its own strips of it
+     */
+    public SoftwareRenderer(int threads) {
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+            // a few strips a thread evens out strips that are busier
+            strips = threads * 4;
+        } else {
+            pool = null;
+            strips = 1;
+        }
+    }
+
+    /**
+     * Draw the background and the entities of a snapshot into a frame
+     *
+     * @param frame The pixels of the frame, an int RGB image the size of
+     * the screen
+     * @param background The pixels of the background, in the same form
+     * @param snapshot The snapshot to draw
+     * @param alpha How far between the last two simulation steps to draw the
+     * entities, from 0 to 1
+     * @param order The indices of the entities in the order to draw them
+     * @param beneath The position in the order at which to draw the aliens
+     * @return True if the frame was drawn, false if a sprite can't be drawn
+     * this way and the frame was left untouched
+     */
+    public boolean render(int[] frame, int[] background, WorldSnapshot snapshot, double alpha,
+            int[] order, int beneath) {
+        // find any spans not yet known before the strips share them
+        for (int i = 0; i < snapshot.count; i++) {
+            if (spansFor(snapshot.sprites[i]) == null) {
+                return false;
+            }
+        }
+        if (snapshot.hasFormation && spansFor(snapshot.formationSprite) == null) {
+            return false;
+        }
+
+        this.frame = frame;
+        this.background = background;
+        this.snapshot = snapshot;
+        this.alpha = alpha;
+        this.order = order;
+        this.beneath = beneath;
+
+        try {
+            if (pool == null) {
+                drawStrip(0, GameWorld.HEIGHT);
+            } else {
+                pool.invoke(new Strips(0, strips));
+            }
+        } finally {
+            this.frame = null;
+            this.background = null;
+            this.snapshot = null;
+            this.order = null;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the spans of a sprite, finding them the first time
+     *
+     * @param sprite The sprite
+     * @return The spans, or null if the sprite can't be drawn this way
+     */
+    private SpriteSpans spansFor(Sprite sprite) {
+        int id = sprite.id;
+
+        if (id >= spans.length) {
+            spans = Arrays.copyOf(spans, Math.max(id + 1, spans.length * 2));
+            spanSprites = Arrays.copyOf(spanSprites, spans.length);
+        }
+        if (spanSprites[id] != sprite) {
+            spans[id] = SpriteSpans.create(sprite);
+            spanSprites[id] = sprite;
+        }
+
+        return spans[id];
+    }
+
+    /**
+     * Draw the rows of the frame between the given bounds
+     *
+     * @param top The first row to draw
+     * @param bottom The row after the last to draw
+     */
+    private void drawStrip(int top, int bottom) {
+        System.arraycopy(background, top * GameWorld.WIDTH, frame, top * GameWorld.WIDTH,
+                (bottom - top) * GameWorld.WIDTH);
+
+        int count = snapshot.count;
+        for (int i = 0; i < count; i++) {
+            if (i == beneath) {
+                drawFormation(top, bottom);
+            }
+
+            int entity = order[i];
+            SpriteSpans sprite = spans[snapshot.sprites[entity].id];
+            int y = snapshot.getEntityY(entity, alpha);
+
+            if (y < bottom && y + sprite.height > top) {
+                sprite.draw(frame, GameWorld.WIDTH, snapshot.getEntityX(entity, alpha), y, top, bottom);
+            }
+        }
+        if (beneath == count) {
+            drawFormation(top, bottom);
+        }
+    }
+
+    /**
+     * Draw the aliens crossing the rows between the given bounds
+     */
+    private void drawFormation(int top, int bottom) {
+        if (!snapshot.hasFormation) {
+            return;
+        }
+
+        SpriteSpans sprite = spans[snapshot.formationSprite.id];
+        double renderX = snapshot.getFormationX(alpha);
+        double renderY = snapshot.getFormationY(alpha);
+        int columns = snapshot.columns;
+        long[] alive = snapshot.alive;
+
+        for (int word = 0; word < alive.length; word++) {
+            long bits = alive[word];
+
+            while (bits != 0) {
+                int alien = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int y = (int) (renderY + (alien / columns) * snapshot.spacingY);
+                if (y < bottom && y + sprite.height > top) {
+                    sprite.draw(frame, GameWorld.WIDTH, (int) (renderX + (alien % columns) * snapshot.spacingX), y,
+                            top, bottom);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the threads drawing the strips
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package spaceinvaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Plays short sound effects through a fixed pool of voices mixed in
+ * software onto a single audio line.
+ *
+ * Each effect is decoded once, when it is loaded, into 16 bit stereo PCM at
+ * the engine's sample rate, so playing it only claims a voice. Every effect
+ * has a cap on how many voices it may use at once; playing an effect that
+ * is at its cap, or when every voice is busy, steals the voice that has
+ * been playing longest. With stealing turned off those plays are dropped
+ * instead.
+ *
+ * The engine counts plays, stolen and dropped voices, and the latency from
+ * a play being requested to its first samples being mixed.
+ */
+public class SoundEngine {
+
+    /**
+     * The sample rate effects are mixed at (Hz)
+     */
+    public static final float SAMPLE_RATE = 44100;
+    /**
+     * The number of frames mixed at a time, about 6 ms
+     */
+    private static final int CHUNK_FRAMES = 256;
+
+    /**
+     * The format effects are decoded to and mixed in
+     */
+    private static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+
+    /**
+     * The line the mixed voices are written to
+     */
+    private final SourceDataLine line;
+    /**
+     * The effects that have been loaded
+     */
+    private final List<Effect> effects = new ArrayList<Effect>();
+
+    /**
+     * The effect each voice is playing, null if the voice is free
+     */
+    private final Effect[] voiceEffect;
+    /**
+     * The next sample each voice will mix
+     */
+    private final int[] voicePosition;
+    /**
+     * The order in which the voices were started, used to find the oldest
+     */
+    private final long[] voiceSequence;
+    /**
+     * The time each voice's play was requested, 0 once it has been mixed
+     */
+    private final long[] voiceRequested;
+    /**
+     * The number of voices started so far
+     */
+    private long sequence;
+    /**
+     * True if busy voices are stolen rather than new plays dropped
+     */
+    private boolean stealing = true;
+
+    /**
+     * The number of plays requested
+     */
+    private long plays;
+    /**
+     * The number of voices cut short to make room for another play
+     */
+    private long stolen;
+    /**
+     * The number of plays dropped because no voice was available
+     */
+    private long dropped;
+    /**
+     * The total and largest latency of plays that have started (ns)
+     */
+    private long latencyTotal, latencyMax;
+    /**
+     * The number of plays whose latency has been measured
+     */
+    private long latencyCount;
+
+    /**
+     * True while the mixer thread should keep running
+     */
+    private volatile boolean running;
+    /**
+     * The thread mixing the voices, null until the engine is started
+     */
+    private Thread mixer;
+
+    /**
+     * Create an engine playing through the default audio device
+     *
+     * @param voices The number of effects that can play at once
+     * @throws LineUnavailableException Indicates there is no audio device
+     * able to play the engine's format
+     */
+    public SoundEngine(int voices) throws LineUnavailableException {
+        this.voiceEffect = new Effect[voices];
+        this.voicePosition = new int[voices];
+        this.voiceSequence = new long[voices];
+        this.voiceRequested = new long[voices];
+
+        // keep only a few chunks queued on the line so plays start quickly
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+        } catch (IllegalArgumentException e) {
+            throw new LineUnavailableException("No audio line for " + FORMAT);
+        }
+        line.open(FORMAT, CHUNK_FRAMES * FORMAT.getFrameSize() * 4);
+    }
+
+    /**
+     * Load and decode a sound effect
+     *
+     * @param name The name of the effect used when reporting
+     * @param url The location of the effect's audio file
+     * @param maxVoices The most voices the effect may play on at once
+     * @return The decoded effect
+     * @throws IOException Indicates the file couldn't be read or is in a
+     * format that can't be decoded
+     */
+    public Effect load(String name, URL url, int maxVoices) throws IOException {
+        if (maxVoices < 1) {
+            throw new IllegalArgumentException("An effect needs at least one voice: " + maxVoices);
+        }
+
+        Effect effect = new Effect(name, decode(url), maxVoices);
+
+        synchronized (this) {
+            effects.add(effect);
+        }
+        return effect;
+    }
+
+    /**
+     * Start the thread mixing the voices onto the line
+     */
+    public synchronized void start() {
+        running = true;
+        line.start();
+
+        mixer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mixLoop();
+            }
+        }, "SoundEngine mixer");
+
+        mixer.setDaemon(true);
+        mixer.setPriority(Thread.MAX_PRIORITY);
+        mixer.start();
+    }
+
+    /**
+     * Stop mixing and close the line. If the engine was started the mixer
+     * thread closes the line once it has written its last chunk, otherwise
+     * the line is closed at once.
+     */
+    public synchronized void close() {
+        running = false;
+
+        if (mixer == null) {
+            line.close();
+        }
+    }
+
+    /**
+     * Set whether plays that find no voice available steal the oldest
+     * voice or are dropped
+     *
+     * @param stealing True to steal voices
+     */
+    public synchronized void setStealing(boolean stealing) {
+        this.stealing = stealing;
+    }
+
+    /**
+     * Play an effect from the start on a free voice, stealing a voice or
+     * dropping the play if none is free
+     *
+     * @param effect The effect to play
+     * @return True if the effect is playing, false if it was dropped
+     */
+    public synchronized boolean play(Effect effect) {
+        plays++;
+
+        int voice = -1;
+
+        if (effect.playing >= effect.maxVoices) {
+            // the effect is at its cap, restart its oldest voice
+            voice = oldestVoice(effect);
+        } else {
+            for (int i = 0; i < voiceEffect.length; i++) {
+                if (voiceEffect[i] == null) {
+                    voice = i;
+                    break;
+                }
+            }
+
+            if (voice < 0) {
+                voice = oldestVoice(null);
+            }
+        }
+
+        if (voiceEffect[voice] != null) {
+            if (!stealing) {
+                dropped++;
+                effect.dropped++;
+                return false;
+            }
+
+            stolen++;
+            voiceEffect[voice].playing--;
+        }
+
+        voiceEffect[voice] = effect;
+        voicePosition[voice] = 0;
+        voiceSequence[voice] = ++sequence;
+        voiceRequested[voice] = System.nanoTime();
+        effect.playing++;
+        effect.plays++;
+
+        return true;
+    }
+
+    /**
+     * Find the voice that has been playing longest
+     *
+     * @param effect The effect whose voices to look at, null for any voice
+     * @return The oldest voice
+     */
+    private int oldestVoice(Effect effect) {
+        int oldest = -1;
+
+        for (int i = 0; i < voiceEffect.length; i++) {
+            if (voiceEffect[i] != null && (effect == null || voiceEffect[i] == effect)
+                    && (oldest < 0 || voiceSequence[i] < voiceSequence[oldest])) {
+                oldest = i;
+            }
+        }
+
+        return oldest;
+    }
+
+    /**
+     * Mix chunks of the playing voices onto the line until stopped, the
+     * line blocks writes until it has room so this runs at the line's pace
+     */
+    private void mixLoop() {
+        int[] mix = new int[CHUNK_FRAMES * 2];
+        byte[] out = new byte[CHUNK_FRAMES * FORMAT.getFrameSize()];
+
+        while (running) {
+            mix(mix, out);
+            line.write(out, 0, out.length);
+        }
+
+        line.stop();
+        line.close();
+    }
+
+    /**
+     * Mix the next chunk of every playing voice
+     *
+     * @param mix The sum of the voices' samples
+     * @param out The clipped samples ready for the line
+     */
+    synchronized void mix(int[] mix, byte[] out) {
+        Arrays.fill(mix, 0);
+        long now = System.nanoTime();
+
+        for (int v = 0; v < voiceEffect.length; v++) {
+            Effect effect = voiceEffect[v];
+
+            if (effect == null) {
+                continue;
+            }
+
+            if (voiceRequested[v] != 0) {
+                long latency = now - voiceRequested[v];
+
+                latencyTotal += latency;
+                latencyMax = Math.max(latencyMax, latency);
+                latencyCount++;
+                voiceRequested[v] = 0;
+            }
+
+            short[] samples = effect.samples;
+            int position = voicePosition[v];
+            int count = Math.min(mix.length, samples.length - position);
+
+            for (int i = 0; i < count; i++) {
+                mix[i] += samples[position + i];
+            }
+
+            voicePosition[v] = position + count;
+            if (voicePosition[v] >= samples.length) {
+                voiceEffect[v] = null;
+                effect.playing--;
+            }
+        }
+
+        for (int i = 0; i < mix.length; i++) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+
+            out[i * 2] = (byte) sample;
+            out[i * 2 + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Decode an audio file into interleaved 16 bit stereo samples at the
+     * engine's sample rate
+     */
+    private static short[] decode(URL url) throws IOException {
+        AudioInputStream source;
+
+        try {
+            source = AudioSystem.getAudioInputStream(url);
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException("Can't decode " + url + ", is an audio decoder for it on the class path?", e);
+        }
+
+        try {
+            AudioFormat format = source.getFormat();
+            int channels = format.getChannels();
+            AudioFormat pcm = new AudioFormat(format.getSampleRate(), 16, channels, true, false);
+            byte[] bytes = readAll(AudioSystem.getAudioInputStream(pcm, source));
+
+            // read the samples and spread them over both channels
+            int frames = bytes.length / (2 * channels);
+            short[] stereo = new short[frames * 2];
+
+            for (int f = 0; f < frames; f++) {
+                for (int c = 0; c < 2; c++) {
+                    int i = (f * channels + Math.min(c, channels - 1)) * 2;
+
+                    stereo[f * 2 + c] = (short) ((bytes[i] & 0xff) | (bytes[i + 1] << 8));
+                }
+            }
+
+            return resample(stereo, pcm.getSampleRate());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Can't convert " + url + " to PCM", e);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Convert stereo samples to the engine's sample rate by linear
+     * interpolation
+     */
+    private static short[] resample(short[] stereo, float rate) {
+        if (rate == SAMPLE_RATE || rate == AudioSystem.NOT_SPECIFIED) {
+            return stereo;
+        }
+
+        int frames = stereo.length / 2;
+        int resampledFrames = (int) ((long) frames * SAMPLE_RATE / rate);
+        short[] resampled = new short[resampledFrames * 2];
+
+        for (int f = 0; f < resampledFrames; f++) {
+            double position = f * rate / SAMPLE_RATE;
+            int first = (int) position;
+            int second = Math.min(first + 1, frames - 1);
+            double fraction = position - first;
+
+            for (int c = 0; c < 2; c++) {
+                resampled[f * 2 + c] = (short) (stereo[first * 2 + c] * (1 - fraction)
+                        + stereo[second * 2 + c] * fraction);
+            }
+        }
+
+        return resampled;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return The number of plays requested
+     */
+    public synchronized long getPlays() {
+        return plays;
+    }
+
+    /**
+     * @return The number of voices cut short to make room for another play
+     */
+    public synchronized long getStolen() {
+        return stolen;
+    }
+
+    /**
+     * @return The number of plays dropped because no voice was available
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return The average time from a play being requested to its first
+     * samples being mixed (ns)
+     */
+    public synchronized long getAverageLatency() {
+        return latencyCount == 0 ? 0 : latencyTotal / latencyCount;
+    }
+
+    /**
+     * @return The longest time from a play being requested to its first
+     * samples being mixed (ns)
+     */
+    public synchronized long getMaxLatency() {
+        return latencyMax;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+
+        report.append("sounds: voices=").append(voiceEffect.length)
+                .append(" plays=").append(plays)
+                .append(" stolen=").append(stolen)
+                .append(" dropped=").append(dropped)
+                .append(" latencyAvg=").append(getAverageLatency() / 1000).append("us")
+                .append(" latencyMax=").append(latencyMax / 1000).append("us");
+
+        for (Effect effect : effects) {
+            report.append("\n  ").append(effect);
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * A decoded sound effect
+     */
+    public static class Effect {
+
+        /**
+         * The name of the effect used when reporting
+         */
+        private final String name;
+        /**
+         * The interleaved stereo samples of the effect
+         */
+        private final short[] samples;
+        /**
+         * The most voices the effect may play on at once
+         */
+        private final int maxVoices;
+        /**
+         * The number of voices the effect is playing on
+         */
+        private int playing;
+        /**
+         * The number of times the effect has started playing
+         */
+        private long plays;
+        /**
+         * The number of plays of the effect that were dropped
+         */
+        private long dropped;
+
+        private Effect(String name, short[] samples, int maxVoices) {
+            this.name = name;
+            this.samples = samples;
+            this.maxVoices = maxVoices;
+        }
+
+        /**
+         * @return The length of the effect (ms)
+         */
+        public long getLength() {
+            return (long) (samples.length / 2 * 1000 / SAMPLE_RATE);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": length=" + getLength() + "ms maxVoices=" + maxVoices
+                    + " plays=" + plays + " dropped=" + dropped;
+        }
+    }
+}
@@ -13,8 +13,18 @@ import java.awt.Image;
  * @author Kevin Glass
  */
 public class Sprite {
-	/** The image to be drawn for this sprite */
+	/** The image to be drawn for this sprite, possibly an atlas holding many sprites */
 	private Image image;
+	/** The location of this sprite's region within its image */
+	private int sourceX, sourceY;
+	/** The size of this sprite's region */
+	private int width, height;
+	/** True if this sprite is a region of a larger image rather than the whole of it */
+	private boolean region;
+	/** The index of this sprite in its store, used to batch draws by sprite */
+	int id;
+	/** The opaque pixels of this sprite, null until first needed */
+	private volatile SpriteMask mask;
 	
 	/**
 	 * Create a new sprite based on an image
@@ -23,6 +33,26 @@ public class Sprite {
 	 */
 	public Sprite(Image image) {
 		this.image = image;
+		this.width = image.getWidth(null);
+		this.height = image.getHeight(null);
+	}
+	
+	/**
+	 * Create a new sprite from a region of a larger image, e.g. an atlas
+	 * 
+	 * @param image The image holding the sprite
+	 * @param x The x location of the sprite's region within the image
+	 * @param y The y location of the sprite's region within the image
+	 * @param width The width of the sprite's region
+	 * @param height The height of the sprite's region
+	 */
+	public Sprite(Image image,int x,int y,int width,int height) {
+		this.image = image;
+		this.sourceX = x;
+		this.sourceY = y;
+		this.width = width;
+		this.height = height;
+		this.region = true;
 	}
 	
 	/**
@@ -31,7 +61,7 @@ public class Sprite {
 	 * @return The width in pixels of this sprite
 	 */
 	public int getWidth() {
-		return image.getWidth(null);
+		return width;
 	}
 
 	/**
@@ -40,7 +70,49 @@ public class Sprite {
 	 * @return The height in pixels of this sprite
 	 */
 	public int getHeight() {
-		return image.getHeight(null);
+		return height;
+	}
+	
+	/**
+	 * Get the image holding this sprite, which may hold other sprites too
+	 * 
+	 * @return The image this sprite is drawn from
+	 */
+	public Image getImage() {
+		return image;
+	}
+	
+	/**
+	 * @return The x location of this sprite within its image
+	 */
+	public int getSourceX() {
+		return sourceX;
+	}
+	
+	/**
+	 * @return The y location of this sprite within its image
+	 */
+	public int getSourceY() {
+		return sourceY;
+	}
+	
+	/**
+	 * Get which pixels of this sprite are opaque, for pixel accurate
+	 * collisions. The mask is made the first time it's needed, sprites
+	 * shared between threads may make it more than once but always
+	 * the same.
+	 * 
+	 * @return The mask of this sprite's opaque pixels
+	 */
+	public SpriteMask getMask() {
+		SpriteMask mask = this.mask;
+		
+		if (mask == null) {
+			mask = SpriteMask.create(this);
+			this.mask = mask;
+		}
+		
+		return mask;
 	}
 	
 	/**
@@ -51,6 +123,10 @@ public class Sprite {
 	 * @param y The y location at which to draw the sprite
 	 */
 	public void draw(Graphics g,int x,int y) {
-		g.drawImage(image,x,y,null);
+		if (region) {
+			g.drawImage(image,x,y,x+width,y+height,sourceX,sourceY,sourceX+width,sourceY+height,null);
+		} else {
+			g.drawImage(image,x,y,null);
+		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+package spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single image holding many small sprites, each drawn from its own
+ * region. Drawing every entity from one source image saves the rendering
+ * pipeline switching textures between sprites, and saves the overhead of
+ * many small images.
+ *
+ * The sprites are packed onto shelves: sorted tallest first and laid left
+ * to right, starting a new shelf below when a row is full.
+ */
+public class SpriteAtlas {
+
+    /**
+     * The widest the atlas will be made
+     */
+    private static final int MAX_WIDTH = 256;
+    /**
+     * The gap left around each sprite so filtering never picks up a
+     * neighbour's pixels
+     */
+    private static final int PADDING = 1;
+
+    /**
+     * The image holding every sprite
+     */
+    private final BufferedImage image;
+    /**
+     * The sprite for each reference, in the order the references were given
+     */
+    private final Map<String, Sprite> sprites = new LinkedHashMap<String, Sprite>();
+
+    /**
+     * Pack images into an atlas
+     *
+     * @param sources The images to pack, by reference. The sprites are
+     * listed in the same order.
+     */
+    public SpriteAtlas(final Map<String, BufferedImage> sources) {
+        List<String> refs = new ArrayList<String>(sources.keySet());
+
+        Collections.sort(refs, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return sources.get(b).getHeight() - sources.get(a).getHeight();
+            }
+        });
+
+        // lay out the shelves
+        Map<String, int[]> places = new LinkedHashMap<String, int[]>();
+        int x = 0, y = 0, shelfHeight = 0, width = 0;
+
+        for (String ref : refs) {
+            BufferedImage source = sources.get(ref);
+
+            if (x > 0 && x + source.getWidth() + PADDING > MAX_WIDTH) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+
+            places.put(ref, new int[]{x, y});
+            x += source.getWidth() + PADDING;
+            width = Math.max(width, x);
+            shelfHeight = Math.max(shelfHeight, source.getHeight() + PADDING);
+        }
+
+        image = createImage(Math.max(1, width), Math.max(1, y + shelfHeight));
+
+        Graphics2D g = image.createGraphics();
+
+        for (String ref : sources.keySet()) {
+            BufferedImage source = sources.get(ref);
+            int[] place = places.get(ref);
+
+            g.drawImage(source, place[0], place[1], null);
+            sprites.put(ref, new Sprite(image, place[0], place[1], source.getWidth(), source.getHeight()));
+        }
+
+        g.dispose();
+    }
+
+    /**
+     * Create an image for the atlas, accelerated if there is a display
+     */
+    private static BufferedImage createImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+
+        return gc.createCompatibleImage(width, height, Transparency.BITMASK);
+    }
+
+    /**
+     * @return The sprites in the atlas, by reference
+     */
+    public Map<String, Sprite> getSprites() {
+        return sprites;
+    }
+
+    /**
+     * @return The image holding every sprite
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+}
@@ -0,0 +1,212 @@
+package spaceinvaders;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Which pixels of a sprite are opaque, packed 64 to a long along each row,
+ * for telling whether two sprites whose bounds overlap actually touch.
+ *
+ * Column x of row y is bit (x & 63) of word y * wordsPerRow + (x >> 6).
+ * Two masks are tested by lining one's words up against the other's with
+ * shifts and ANDing them, a word of 64 pixels at a time. Before that the
+ * overlap is trimmed to the rows that have opaque pixels, and rejected
+ * outright if no column is opaque in both sprites. Sprites no wider than a
+ * word, which is all of the game's, are tested with a single shift a row.
+ * Sprites that are opaque all over are marked as solid so that the test is
+ * skipped altogether when both sprites are.
+ */
+public class SpriteMask {
+
+    /**
+     * The size of the sprite
+     */
+    private final int width, height;
+    /**
+     * The number of longs holding each row
+     */
+    private final int wordsPerRow;
+    /**
+     * The opaque pixels, row by row
+     */
+    private final long[] bits;
+    /**
+     * The opaque pixels of every row ORed together
+     */
+    private final long[] columns;
+    /**
+     * The first and last rows with an opaque pixel, the first is past the
+     * last if there are none
+     */
+    private final int firstRow, lastRow;
+    /**
+     * True if every pixel is opaque
+     */
+    private final boolean solid;
+
+    /**
+     * Create a mask from the opaque pixels of an image
+     *
+     * @param argb The colour of each pixel row by row, a pixel is opaque
+     * unless its alpha is 0
+     * @param width The width of the image
+     * @param height The height of the image
+     */
+    public SpriteMask(int[] argb, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >> 6;
+        this.bits = new long[wordsPerRow * height];
+
+        this.columns = new long[wordsPerRow];
+
+        boolean opaque = true;
+        int first = height, last = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (argb[y * width + x] >>> 24 != 0) {
+                    bits[y * wordsPerRow + (x >> 6)] |= 1L << (x & 63);
+                    columns[x >> 6] |= 1L << (x & 63);
+                    first = Math.min(first, y);
+                    last = y;
+                } else {
+                    opaque = false;
+                }
+            }
+        }
+        this.firstRow = first;
+        this.lastRow = last;
+        this.solid = opaque;
+    }
+
+    /**
+     * Create a mask of a sprite's opaque pixels
+     *
+     * @param sprite The sprite
+     * @return The mask, which is solid if the sprite's pixels can't be read
+     */
+    public static SpriteMask create(Sprite sprite) {
+        Image image = sprite.getImage();
+        int width = sprite.getWidth(), height = sprite.getHeight();
+        int[] argb = new int[width * height];
+
+        if (image instanceof BufferedImage) {
+            ((BufferedImage) image).getRGB(sprite.getSourceX(), sprite.getSourceY(), width, height, argb, 0, width);
+        } else {
+            Arrays.fill(argb, 0xff000000);
+        }
+
+        return new SpriteMask(argb, width, height);
+    }
+
+    /**
+     * Check if the opaque pixels of this mask overlap another's
+     *
+     * @param other The other mask
+     * @param dx The x location of the other mask relative to this one
+     * @param dy The y location of the other mask relative to this one
+     * @return True if an opaque pixel of each is in the same place
+     */
+    public boolean overlaps(SpriteMask other, int dx, int dy) {
+        int left = Math.max(0, dx), right = Math.min(width, dx + other.width);
+
+        if (left >= right) {
+            return false;
+        }
+        if (solid && other.solid) {
+            return dy < height && -dy < other.height;
+        }
+
+        // only the rows where both have opaque pixels need testing
+        int top = Math.max(firstRow, dy + other.firstRow);
+        int bottom = Math.min(lastRow, dy + other.lastRow) + 1;
+
+        if (top >= bottom) {
+            return false;
+        }
+
+        if (wordsPerRow == 1 && other.wordsPerRow == 1) {
+            return overlapsNarrow(other, dx, dy, top, bottom);
+        }
+
+        int firstWord = left >> 6, lastWord = (right - 1) >> 6;
+
+        for (int y = top; y < bottom; y++) {
+            int row = y * wordsPerRow;
+            int otherRow = (y - dy) * other.wordsPerRow;
+
+            for (int word = firstWord; word <= lastWord; word++) {
+                if ((bits[row + word] & other.bitsAt(otherRow, (word << 6) - dx)) != 0) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Test the rows between the given bounds for masks a word wide, lining
+     * each of the other's rows up with a single shift
+     */
+    private boolean overlapsNarrow(SpriteMask other, int dx, int dy, int top, int bottom) {
+        long[] otherBits = other.bits;
+
+        // the masks overlap horizontally, so the shift is under a word
+        if (dx >= 0) {
+            if ((columns[0] & other.columns[0] << dx) == 0) {
+                return false;
+            }
+            for (int y = top; y < bottom; y++) {
+                if ((bits[y] & otherBits[y - dy] << dx) != 0) {
+                    return true;
+                }
+            }
+        } else {
+            if ((columns[0] & other.columns[0] >>> -dx) == 0) {
+                return false;
+            }
+            for (int y = top; y < bottom; y++) {
+                if ((bits[y] & otherBits[y - dy] >>> -dx) != 0) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get 64 pixels of a row, starting from any column, with the pixels
+     * outside the mask transparent
+     *
+     * @param row The index of the row's first word
+     * @param start The column of the first pixel, which becomes bit 0
+     * @return The pixels
+     */
+    private long bitsAt(int row, int start) {
+        if (start >= width || start <= -64) {
+            return 0;
+        }
+        if (start < 0) {
+            return bits[row] << -start;
+        }
+
+        int word = start >> 6, shift = start & 63;
+        long result = bits[row + word] >>> shift;
+
+        if (shift != 0 && word + 1 < wordsPerRow) {
+            result |= bits[row + word + 1] << (64 - shift);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return True if every pixel is opaque
+     */
+    public boolean isSolid() {
+        return solid;
+    }
+}
@@ -0,0 +1,144 @@
+package spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A sprite's pixels ready to be copied straight into an int RGB frame,
+ * with the opaque pixels of each row listed as spans.
+ *
+ * The sprites use bitmask transparency, so each pixel is either drawn as it
+ * is or not drawn at all, and drawing a row is a copy of each of its spans.
+ * The pixel values are taken by having Java2D draw the sprite, so they are
+ * exactly what drawing the sprite through Java2D would write.
+ */
+public class SpriteSpans {
+
+    /**
+     * The size of the sprite
+     */
+    final int width, height;
+    /**
+     * The pixels of the sprite, row by row, as stored in an int RGB frame
+     */
+    final int[] pixels;
+    /**
+     * The index in the spans of each row's first span, with one more entry
+     * marking the end of the last row
+     */
+    final int[] rowStarts;
+    /**
+     * The start and end (exclusive) of each span, in pairs
+     */
+    final int[] spans;
+
+    private SpriteSpans(int width, int height, int[] pixels, int[] rowStarts, int[] spans) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.rowStarts = rowStarts;
+        this.spans = spans;
+    }
+
+    /**
+     * Find the spans of a sprite
+     *
+     * @param sprite The sprite to find the spans of
+     * @return The spans, or null if the sprite isn't held in a buffered
+     * image or has translucent pixels that would need blending
+     */
+    public static SpriteSpans create(Sprite sprite) {
+        Image image = sprite.getImage();
+        int width = sprite.getWidth(), height = sprite.getHeight();
+
+        if (!(image instanceof BufferedImage) || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        int[] argb = new int[width * height];
+        ((BufferedImage) image).getRGB(sprite.getSourceX(), sprite.getSourceY(), width, height, argb, 0, width);
+
+        // count the spans, giving up on any pixel that isn't fully opaque or
+        // fully transparent
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            boolean inSpan = false;
+
+            for (int x = 0; x < width; x++) {
+                int a = argb[y * width + x] >>> 24;
+
+                if (a != 0 && a != 0xff) {
+                    return null;
+                }
+                if (a != 0 && !inSpan) {
+                    count++;
+                }
+                inSpan = a != 0;
+            }
+        }
+
+        int[] rowStarts = new int[height + 1];
+        int[] spans = new int[count * 2];
+        int span = 0;
+
+        for (int y = 0; y < height; y++) {
+            rowStarts[y] = span;
+
+            for (int x = 0; x < width; x++) {
+                if (argb[y * width + x] >>> 24 == 0) {
+                    continue;
+                }
+
+                int start = x;
+                while (x < width && argb[y * width + x] >>> 24 != 0) {
+                    x++;
+                }
+                spans[span * 2] = start;
+                spans[span * 2 + 1] = x;
+                span++;
+            }
+        }
+        rowStarts[height] = span;
+
+        // let Java2D convert the pixels to the frame's format
+        BufferedImage converted = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = converted.createGraphics();
+        sprite.draw(g, 0, 0);
+        g.dispose();
+
+        int[] pixels = ((DataBufferInt) converted.getRaster().getDataBuffer()).getData();
+
+        return new SpriteSpans(width, height, pixels, rowStarts, spans);
+    }
+
+    /**
+     * Copy the sprite into a frame, only writing the rows between the given
+     * bounds
+     *
+     * @param frame The pixels of the frame, row by row
+     * @param frameWidth The width of the frame
+     * @param x The x location to draw the sprite at
+     * @param y The y location to draw the sprite at
+     * @param top The first row of the frame that may be written
+     * @param bottom The row of the frame after the last that may be written
+     */
+    void draw(int[] frame, int frameWidth, int x, int y, int top, int bottom) {
+        int first = Math.max(0, top - y), last = Math.min(height, bottom - y);
+
+        for (int row = first; row < last; row++) {
+            int source = row * width;
+            int target = (y + row) * frameWidth + x;
+
+            for (int span = rowStarts[row]; span < rowStarts[row + 1]; span++) {
+                int start = Math.max(spans[span * 2], -x);
+                int end = Math.min(spans[span * 2 + 1], frameWidth - x);
+
+                if (start < end) {
+                    System.arraycopy(pixels, source + start, frame, target + start, end - start);
+                }
+            }
+        }
+    }
+}
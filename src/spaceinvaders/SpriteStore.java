@@ -7,7 +7,15 @@ import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 
@@ -17,6 +25,13 @@ import javax.imageio.ImageIO;
  * it makes sense to have a central resource loader that goes away, gets
  * your resources and caches them for future use.
  * <p>
+ * The store can be used from any thread, and each image is only loaded
+ * once however many threads ask for it at the same time. Small sprites,
+ * which are used all the time, are pinned in memory. Large images, such as
+ * the level backgrounds, are kept within a memory budget and the least
+ * recently used are dropped when it is exceeded, to be loaded again if
+ * they are needed later.
+ * <p>
  * [singleton]
  * <p>
  * @author Kevin Glass
@@ -34,8 +49,44 @@ public class SpriteStore {
 		return single;
 	}
 	
-	/** The cached sprite map, from reference to sprite instance */
-	private HashMap<String, Sprite> sprites = new HashMap<String, Sprite>();
+	/** The images the game uses, listing the sprites packed into the atlas */
+	private AssetManifest manifest;
+	
+	/** Images at most this many bytes are pinned rather than kept within the budget */
+	private static final int PINNED_BYTES = 64 * 1024;
+	
+	/** The cached sprites that are never dropped, from reference to sprite instance */
+	private ConcurrentHashMap<String, Sprite> sprites = new ConcurrentHashMap<String, Sprite>();
+	
+	/** The cached large sprites, least recently used first, guarded by itself */
+	private LinkedHashMap<String, Sprite> largeSprites = new LinkedHashMap<String, Sprite>(16,0.75f,true);
+	
+	/** The loads in progress, so that other threads wait for them rather than loading again */
+	private ConcurrentHashMap<String, FutureTask<Sprite>> loading = new ConcurrentHashMap<String, FutureTask<Sprite>>();
+	
+	/** The cache of decoded images that dropped sprites are loaded again from, null if none */
+	private volatile DecodedImageCache decodedCache;
+	
+	/** The atlas the small sprites are drawn from, null until first needed */
+	private volatile SpriteAtlas atlas;
+	
+	/** The number of sprites created, each is given the next id */
+	private AtomicInteger spriteCount = new AtomicInteger();
+	
+	/** The id given to each reference, kept so a sprite loaded again keeps its id */
+	private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	
+	/** The most bytes of large images to keep */
+	private volatile long budget = Long.getLong("spaceinvaders.spriteBudget",4 * 1024 * 1024);
+	
+	/** The bytes of image held by all the cached sprites */
+	private AtomicLong residentBytes = new AtomicLong();
+	
+	/** The number of requests answered from the cache, and the number that had to load */
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+	
+	/** The number of large sprites dropped to stay within the budget */
+	private AtomicLong evictions = new AtomicLong();
 	
 	/**
 	 * Retrieve a sprite from the store
@@ -43,16 +94,384 @@ public class SpriteStore {
 	 * @param ref The reference to the image to use for the sprite
 	 * @return A sprite instance containing an accelerate image of the request reference
 	 */
-	public Sprite getSprite(String ref) {
+	public Sprite getSprite(final String ref) {
 		// if we've already got the sprite in the cache
 		// then just return the existing version
-		if (sprites.get(ref) != null) {
-			return (Sprite) sprites.get(ref);
+		Sprite sprite = cached(ref);
+		
+		if (sprite != null) {
+			hits.incrementAndGet();
+			return sprite;
 		}
 		
 		// otherwise, go away and grab the sprite from the resource
-		// loader
+		// loader. If another thread is already loading it wait for
+		// that load instead
+		FutureTask<Sprite> load = new FutureTask<Sprite>(new Callable<Sprite>() {
+			public Sprite call() {
+				return load(ref);
+			}
+		});
+		FutureTask<Sprite> existing = loading.putIfAbsent(ref,load);
+		
+		if (existing == null) {
+			// the sprite may have been cached as the last load finished
+			sprite = cached(ref);
+			if (sprite != null) {
+				loading.remove(ref,load);
+				hits.incrementAndGet();
+				return sprite;
+			}
+			
+			misses.incrementAndGet();
+			load.run();
+		} else {
+			hits.incrementAndGet();
+			load = existing;
+		}
+		
+		try {
+			return load.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted loading "+ref,e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to load "+ref,e.getCause());
+		} finally {
+			loading.remove(ref,load);
+		}
+	}
+	
+	/**
+	 * Look up a sprite in the cache, marking it as recently used
+	 * 
+	 * @param ref The reference to the image
+	 * @return The cached sprite or null if it isn't cached
+	 */
+	private Sprite cached(String ref) {
+		Sprite sprite = sprites.get(ref);
+		
+		if (sprite == null) {
+			synchronized (largeSprites) {
+				sprite = largeSprites.get(ref);
+			}
+		}
+		
+		return sprite;
+	}
+	
+	/**
+	 * Load the sprite for a reference and add it to the cache
+	 * 
+	 * @param ref The reference to the image
+	 * @return The loaded sprite
+	 */
+	private Sprite load(String ref) {
+		// the first request for a small sprite packs them all together
+		if (getManifest().getAtlasRefs().contains(ref)) {
+			loadAtlas();
+			return sprites.get(ref);
+		}
+		
+		return add(ref,createImage(loadImage(ref)));
+	}
+	
+	/**
+	 * Add a sprite for a whole image to the cache, pinning it if it's small
+	 * and otherwise dropping the least recently used large sprites until
+	 * they fit in the budget. If the reference is already cached the
+	 * sprite there is kept and its bytes aren't counted again.
+	 * 
+	 * @param ref The reference to the image
+	 * @param image The image of the sprite
+	 * @return The sprite cached for the reference
+	 */
+	private Sprite add(String ref,Image image) {
+		Sprite sprite = new Sprite(image);
+		sprite.id = idFor(ref);
+		
+		long bytes = bytes(sprite);
+		
+		if (bytes <= PINNED_BYTES) {
+			Sprite existing = sprites.putIfAbsent(ref,sprite);
+			if (existing != null) {
+				return existing;
+			}
+			residentBytes.addAndGet(bytes);
+		} else {
+			synchronized (largeSprites) {
+				Sprite existing = largeSprites.get(ref);
+				if (existing != null) {
+					return existing;
+				}
+				largeSprites.put(ref,sprite);
+				residentBytes.addAndGet(bytes);
+				evict(ref);
+			}
+		}
+		
+		return sprite;
+	}
+	
+	/**
+	 * Add the sprite for an image that has already been loaded, taking the
+	 * same single load of each reference as {@link #getSprite(String)}, so
+	 * nothing is added if the sprite is cached or being loaded already
+	 * 
+	 * @param ref The reference to the image
+	 * @param image The image as loaded
+	 */
+	private void addLoaded(final String ref,final BufferedImage image) {
+		FutureTask<Sprite> add = new FutureTask<Sprite>(new Callable<Sprite>() {
+			public Sprite call() {
+				return add(ref,createImage(image));
+			}
+		});
+		
+		if (loading.putIfAbsent(ref,add) != null) {
+			return;
+		}
+		
+		try {
+			if (cached(ref) == null) {
+				add.run();
+				add.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			fail("Failed to load: "+ref);
+		} finally {
+			loading.remove(ref,add);
+		}
+	}
+	
+	/**
+	 * Drop the least recently used large sprites until they fit in the
+	 * budget, the caller must hold the lock on the large sprites
+	 * 
+	 * @param keep The reference of a sprite that mustn't be dropped, as it's about to be used
+	 */
+	private void evict(String keep) {
+		Iterator<Map.Entry<String, Sprite>> entries = largeSprites.entrySet().iterator();
+		
+		while (largeBytes() > budget && entries.hasNext()) {
+			Map.Entry<String, Sprite> entry = entries.next();
+			
+			if (entry.getKey().equals(keep)) {
+				continue;
+			}
+			
+			entries.remove();
+			residentBytes.addAndGet(-bytes(entry.getValue()));
+			evictions.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return The bytes held by the large sprites, the caller must hold their lock
+	 */
+	private long largeBytes() {
+		long total = 0;
+		
+		for (Sprite sprite : largeSprites.values()) {
+			total += bytes(sprite);
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * @param sprite The sprite to measure
+	 * @return The bytes of image the sprite holds on its own
+	 */
+	private static long bytes(Sprite sprite) {
+		return 4L * sprite.getWidth() * sprite.getHeight();
+	}
+	
+	/**
+	 * @param ref The reference to the image
+	 * @return The id sprites for the reference are given
+	 */
+	private int idFor(String ref) {
+		Integer id = ids.get(ref);
+		
+		if (id == null) {
+			synchronized (ids) {
+				id = ids.get(ref);
+				if (id == null) {
+					id = spriteCount.getAndIncrement();
+					ids.put(ref,id);
+				}
+			}
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Load every image in the manifest in parallel, from the cache of
+	 * decoded images where possible, and turn them into sprites. Doing this
+	 * at startup saves stalling the game the first time each sprite is
+	 * drawn.
+	 * 
+	 * @return The time taken to load each image and to have every sprite ready
+	 */
+	public AssetLoader.Report preload() {
+		long start = System.nanoTime();
+		DecodedImageCache cache = DecodedImageCache.openDefault();
+		AssetLoader.Report report = null;
+		
+		try {
+			report = AssetLoader.load(getManifest().getAllRefs(),cache,Runtime.getRuntime().availableProcessors());
+		} catch (IOException e) {
+			fail("Failed to load assets: "+e.getMessage());
+		}
+		
+		Map<String, BufferedImage> atlasSources = new LinkedHashMap<String, BufferedImage>();
+		
+		for (AssetLoader.Asset asset : report.getAssets()) {
+			if (getManifest().getAtlasRefs().contains(asset.getRef())) {
+				atlasSources.put(asset.getRef(),asset.toImage());
+			} else if (fits(asset)) {
+				addLoaded(asset.getRef(),asset.toImage());
+			}
+		}
+		
+		createAtlas(atlasSources);
+		report.readyNanos = System.nanoTime() - start;
+		
+		// keep the decoded images for next time, images that didn't fit in
+		// the budget will be loaded from there when they're needed
+		decodedCache = cache;
+		if (cache != null) {
+			try {
+				cache.save();
+			} catch (IOException e) {
+				System.err.println("Unable to save asset cache "+cache.getFile()+": "+e.getMessage());
+			}
+		}
+		
+		return report;
+	}
+	
+	/**
+	 * Check if a loaded image can be kept without dropping another
+	 * 
+	 * @param asset The loaded image
+	 * @return True if the image is small or fits in what's left of the budget
+	 */
+	private boolean fits(AssetLoader.Asset asset) {
+		long bytes = 4L * asset.getWidth() * asset.getHeight();
+		
+		if (bytes <= PINNED_BYTES) {
+			return true;
+		}
+		
+		synchronized (largeSprites) {
+			return largeBytes() + bytes <= budget;
+		}
+	}
+	
+	/**
+	 * Copy an image into one suited to drawing on the screen
+	 * 
+	 * @param sourceImage The image to copy
+	 * @return An accelerated copy of the image
+	 */
+	private Image createImage(BufferedImage sourceImage) {
+		// create an accelerated image of the right size to store our sprite in,
+		// when there is no display (e.g. a headless simulation) there is nothing
+		// to accelerate for so a plain image will do
+		Image image;
+		
+		if (GraphicsEnvironment.isHeadless()) {
+			image = new BufferedImage(sourceImage.getWidth(),sourceImage.getHeight(),BufferedImage.TYPE_INT_ARGB);
+		} else {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+			image = gc.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
+		}
+		
+		// draw our source image into the accelerated image
+		image.getGraphics().drawImage(sourceImage,0,0,null);
+		
+		return image;
+	}
+	
+	/**
+	 * Load every small sprite and pack them into the atlas, the sprites
+	 * are numbered in atlas order so batched drawing layers them that way
+	 */
+	private synchronized void loadAtlas() {
+		if (atlas != null) {
+			return;
+		}
+		
+		Map<String, BufferedImage> sources = new LinkedHashMap<String, BufferedImage>();
+		
+		for (String ref : getManifest().getAtlasRefs()) {
+			sources.put(ref,loadImage(ref));
+		}
+		
+		createAtlas(sources);
+	}
+	
+	/**
+	 * Pack the small sprites into the atlas
+	 * 
+	 * @param sources The images of the sprites in the order of the manifest
+	 */
+	private synchronized void createAtlas(Map<String, BufferedImage> sources) {
+		if (atlas != null) {
+			return;
+		}
+		
+		SpriteAtlas packed = new SpriteAtlas(sources);
+		
+		for (Map.Entry<String, Sprite> entry : packed.getSprites().entrySet()) {
+			entry.getValue().id = idFor(entry.getKey());
+			sprites.put(entry.getKey(),entry.getValue());
+		}
+		
+		residentBytes.addAndGet(4L * packed.getImage().getWidth() * packed.getImage().getHeight());
+		atlas = packed;
+	}
+	
+	/**
+	 * Get the manifest of the game's images, reading it the first time
+	 * 
+	 * @return The manifest of images
+	 */
+	private synchronized AssetManifest getManifest() {
+		if (manifest == null) {
+			try {
+				manifest = AssetManifest.load(AssetManifest.DEFAULT);
+			} catch (IOException e) {
+				fail(e.getMessage());
+			}
+		}
+		
+		return manifest;
+	}
+	
+	/**
+	 * Read an image from the resources
+	 * 
+	 * @param ref The reference to the image
+	 * @return The image as read from its file
+	 */
+	private BufferedImage loadImage(String ref) {
 		BufferedImage sourceImage = null;
+		DecodedImageCache cache = decodedCache;
+		
+		// images that have been preloaded once are in the decoded cache
+		if (cache != null) {
+			try {
+				return AssetLoader.loadAsset(ref,cache).toImage();
+			} catch (IOException e) {
+				fail("Failed to load: "+ref);
+			}
+		}
 		
 		try {
 			// The ClassLoader.getResource() ensures we get the sprite
@@ -71,18 +490,72 @@ public class SpriteStore {
 			fail("Failed to load: "+ref);
 		}
 		
-		// create an accelerated image of the right size to store our sprite in
-		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
-		Image image = gc.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
-		
-		// draw our source image into the accelerated image
-		image.getGraphics().drawImage(sourceImage,0,0,null);
-		
-		// create a sprite, add it the cache then return it
-		Sprite sprite = new Sprite(image);
-		sprites.put(ref,sprite);
+		return sourceImage;
+	}
+	
+	/**
+	 * Get the number of sprites the store has created, every sprite's id
+	 * is less than this
+	 * 
+	 * @return The number of sprites created
+	 */
+	public int getSpriteCount() {
+		return spriteCount.get();
+	}
+	
+	/**
+	 * Set the most bytes of large images to keep, dropping the least
+	 * recently used at once if they no longer fit
+	 * 
+	 * @param budget The budget in bytes
+	 */
+	public void setBudget(long budget) {
+		this.budget = budget;
 		
-		return sprite;
+		synchronized (largeSprites) {
+			evict(null);
+		}
+	}
+	
+	/**
+	 * @return The most bytes of large images to keep
+	 */
+	public long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * @return The number of requests answered without loading
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return The number of requests that had to load the image
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return The number of large sprites dropped to stay within the budget
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	/**
+	 * @return The bytes of image held by the cached sprites
+	 */
+	public long getResidentBytes() {
+		return residentBytes.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "sprites: hits="+hits+" misses="+misses+" evictions="+evictions
+				+" resident="+residentBytes.get()/1024+"KB budget="+budget/1024+"KB";
 	}
 	
 	/**
@@ -96,4 +569,4 @@ public class SpriteStore {
 		System.err.println(message);
 		System.exit(0);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,311 @@
+package spaceinvaders;
+
+/**
+ * A hierarchical timing wheel that runs timed tasks (sprite animation,
+ * delayed removals, timed effects) from the simulation rather than from
+ * threads of their own.
+ *
+ * Time is measured in whole ticks of simulated milliseconds and only passes
+ * when {@link #advanceTo(long)} is called, normally once per simulation
+ * step, so timers pause with the game and run deterministically. The wheel
+ * has four levels of 64 slots; timers due within 64 ticks sit in the first
+ * level and timers further away sit in coarser levels, cascading down as
+ * their time approaches. Scheduling and cancelling are O(1) whatever the
+ * number of timers.
+ */
+public class TimerWheel {
+
+    /**
+     * The number of bits of the tick used to index each level
+     */
+    private static final int BITS = 6;
+    /**
+     * The number of slots in each level
+     */
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    /**
+     * The number of levels in the wheel
+     */
+    private static final int LEVELS = 4;
+    /**
+     * The furthest ahead a timer can be placed, timers due later are parked
+     * in the last level and placed again as time passes
+     */
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    /**
+     * The list heads of each slot, indexed by level * SLOTS + slot
+     */
+    private final Timer[] slots = new Timer[LEVELS * SLOTS];
+    /**
+     * The next tick to be processed, every tick before it has run
+     */
+    private long nextTick = 1;
+    /**
+     * The number of timers waiting to run
+     */
+    private int size;
+
+    /**
+     * Create an empty wheel at tick 0
+     */
+    public TimerWheel() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Timer(0, 0, null);
+            slots[i].next = slots[i];
+            slots[i].prev = slots[i];
+        }
+    }
+
+    /**
+     * Run a task once after a delay
+     *
+     * @param delay The number of ticks from now to run the task
+     * @param task The task to run
+     * @return The timer, which can be used to cancel the task
+     */
+    public Timer schedule(long delay, Runnable task) {
+        return add(new Timer(nextTick - 1 + delay, 0, task));
+    }
+
+    /**
+     * Schedule a timer created up front to run once after a delay, so that
+     * scheduling allocates nothing. A timer that is already waiting is moved
+     * to the new time.
+     *
+     * @param timer The timer to schedule
+     * @param delay The number of ticks from now to run its task
+     * @return The timer
+     */
+    public Timer schedule(Timer timer, long delay) {
+        if (timer.wheel != null) {
+            timer.wheel.unlink(timer);
+        }
+
+        timer.deadline = nextTick - 1 + delay;
+        timer.cancelled = false;
+
+        return add(timer);
+    }
+
+    /**
+     * Run a task repeatedly
+     *
+     * @param delay The number of ticks from now to first run the task
+     * @param period The number of ticks between runs
+     * @param task The task to run
+     * @return The timer, which can be used to cancel the task
+     */
+    public Timer scheduleRepeating(long delay, long period, Runnable task) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+
+        return add(new Timer(nextTick - 1 + delay, period, task));
+    }
+
+    /**
+     * Run every task that is due up to and including the given tick, in
+     * deadline order
+     *
+     * @param tick The tick to advance to
+     */
+    public void advanceTo(long tick) {
+        while (nextTick <= tick) {
+            if (size == 0) {
+                // nothing to run, so no need to walk through each tick
+                nextTick = tick + 1;
+                return;
+            }
+
+            int index = (int) (nextTick & MASK);
+
+            // as the first level wraps round, bring the timers in the
+            // next slot of the coarser levels down
+            if (index == 0) {
+                for (int level = 1; level < LEVELS; level++) {
+                    int coarse = (int) ((nextTick >> (BITS * level)) & MASK);
+
+                    cascade(level, coarse);
+                    if (coarse != 0) {
+                        break;
+                    }
+                }
+            }
+
+            // timers scheduled for this tick by the tasks being run
+            // join the end of the list and run before we move on
+            Timer head = slots[index];
+
+            while (head.next != head) {
+                Timer timer = head.next;
+
+                unlink(timer);
+                timer.task.run();
+
+                if (timer.period > 0 && !timer.cancelled) {
+                    timer.deadline += timer.period;
+                    add(timer);
+                }
+            }
+
+            nextTick++;
+        }
+    }
+
+    /**
+     * Cancel every timer, keeping the current tick
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            Timer head = slots[i];
+
+            while (head.next != head) {
+                Timer timer = head.next;
+
+                unlink(timer);
+                timer.cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * @return The number of timers waiting to run
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The last tick that has been processed
+     */
+    public long getCurrentTick() {
+        return nextTick - 1;
+    }
+
+    /**
+     * Place a timer in the slot for its deadline
+     */
+    private Timer add(Timer timer) {
+        // a timer can't be placed in a tick that has already been processed
+        long expires = Math.max(timer.deadline, nextTick);
+        long delta = expires - nextTick;
+
+        if (delta > MAX_DELTA) {
+            delta = MAX_DELTA;
+            expires = nextTick + MAX_DELTA;
+        }
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+
+        Timer head = slots[level * SLOTS + (int) ((expires >> (BITS * level)) & MASK)];
+
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+        timer.wheel = this;
+        size++;
+
+        return timer;
+    }
+
+    /**
+     * Place all the timers in a slot of a coarse level again, which moves
+     * them down to finer levels
+     */
+    private void cascade(int level, int index) {
+        Timer head = slots[level * SLOTS + index];
+        Timer timer = head.next;
+
+        head.next = head;
+        head.prev = head;
+
+        while (timer != head) {
+            Timer next = timer.next;
+
+            size--;
+            add(timer);
+            timer = next;
+        }
+    }
+
+    private void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.next = null;
+        timer.prev = null;
+        timer.wheel = null;
+        size--;
+    }
+
+    /**
+     * A task scheduled on a wheel
+     */
+    public static class Timer {
+
+        /**
+         * The tick at which the task should next run
+         */
+        private long deadline;
+        /**
+         * The ticks between runs, 0 if the task only runs once
+         */
+        private final long period;
+        /**
+         * The task to run
+         */
+        private final Runnable task;
+        /**
+         * True once the timer has been cancelled
+         */
+        private boolean cancelled;
+        /**
+         * The neighbours of this timer in its slot's list
+         */
+        private Timer next, prev;
+        /**
+         * The wheel this timer is waiting in, null while not waiting
+         */
+        private TimerWheel wheel;
+
+        /**
+         * Create a timer to run a task once, to be scheduled later with
+         * {@link TimerWheel#schedule(Timer, long)}
+         *
+         * @param task The task to run
+         */
+        public Timer(Runnable task) {
+            this(0, 0, task);
+        }
+
+        private Timer(long deadline, long period, Runnable task) {
+            this.deadline = deadline;
+            this.period = period;
+            this.task = task;
+        }
+
+        /**
+         * Stop the task from running again. Cancelling a timer from inside
+         * its own task stops it repeating.
+         */
+        public void cancel() {
+            cancelled = true;
+
+            if (wheel != null) {
+                wheel.unlink(this);
+            }
+        }
+
+        /**
+         * @return True if the timer has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package spaceinvaders;
+
+import java.util.List;
+
+/**
+ * An agent that fires constantly while lining the ship up under the
+ * nearest column of aliens, moving out of the way of any shot or meteor
+ * about to fall on it.
+ */
+public class TrackingAgent implements Agent {
+
+    /**
+     * Creates tracking agents
+     */
+    public static final Agent.Factory FACTORY = new Agent.Factory() {
+        public Agent create(long seed) {
+            return new TrackingAgent();
+        }
+    };
+
+    /**
+     * How close to its target the ship must be before it stops moving
+     */
+    private static final int SLACK = 4;
+    /**
+     * How close to the ship's sides something falling must be to be
+     * dodged, and how low it must have got
+     */
+    private static final int DANGER = 10, WATCH_Y = 300;
+
+    public void act(GameWorld world, InputState input) {
+        ShipEntity ship = world.getShip();
+        int shipX = ship.getX();
+        AlienFormation formation = world.getFormation();
+        Entity threat = findThreat(world, ship);
+
+        input.setFire(true);
+
+        if (threat != null) {
+            // move away from it, unless that would run into the edge
+            int center = shipX + ship.sprite.getWidth() / 2;
+            int threatCenter = threat.getX() + threat.sprite.getWidth() / 2;
+            boolean left = threatCenter > center ? shipX > 40 : shipX > GameWorld.WIDTH - 80;
+
+            input.setLeft(left);
+            input.setRight(!left);
+        } else if (formation != null && formation.getAliveCount() > 0) {
+            moveToward(input, shipX, nearestColumnX(formation, shipX));
+        } else {
+            input.setLeft(false);
+            input.setRight(false);
+        }
+    }
+
+    /**
+     * Find the x location of the column of aliens nearest the ship
+     */
+    private int nearestColumnX(AlienFormation formation, int shipX) {
+        int best = shipX, distance = Integer.MAX_VALUE;
+
+        for (int column = 0; column < formation.getColumns(); column++) {
+            if (formation.getShooter(column) < 0) {
+                continue;
+            }
+
+            int x = formation.getColumnX(column);
+            if (Math.abs(x - shipX) < distance) {
+                distance = Math.abs(x - shipX);
+                best = x;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Find the lowest alien shot or meteor falling on the ship
+     *
+     * @return The threat, or null if nothing is falling on the ship
+     */
+    private Entity findThreat(GameWorld world, ShipEntity ship) {
+        List<Entity> entities = world.getEntities();
+        int left = ship.getX() - DANGER, right = ship.getX() + ship.sprite.getWidth() + DANGER;
+        Entity threat = null;
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            int layer = entity.getCollisionLayer();
+
+            if ((layer == CollisionLayer.ALIEN_SHOT || layer == CollisionLayer.METEOR)
+                    && entity.getX() + entity.sprite.getWidth() > left && entity.getX() < right
+                    && entity.getY() > WATCH_Y
+                    && (threat == null || entity.getY() > threat.getY())) {
+                threat = entity;
+            }
+        }
+
+        return threat;
+    }
+
+    /**
+     * Set the controls to move the ship toward a target
+     */
+    private void moveToward(InputState input, int shipX, int targetX) {
+        input.setLeft(targetX < shipX - SLACK);
+        input.setRight(targetX > shipX + SLACK);
+    }
+}
@@ -0,0 +1,17 @@
+package spaceinvaders;
+
+/**
+ * A change to a {@link GameWorld} requested from outside the simulation
+ * step, e.g. from a timer, an audio callback or the network. Commands are
+ * posted to the world's {@link CommandQueue} from any thread and applied by
+ * the simulation at the start of its next step.
+ */
+public interface WorldCommand {
+
+    /**
+     * Apply the change to the world, called on the simulation thread
+     *
+     * @param world The world to change
+     */
+    void apply(GameWorld world);
+}
@@ -0,0 +1,317 @@
+package spaceinvaders;
+
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything needed to draw a frame of the world, copied out of it at the
+ * end of a simulation step so that it can be drawn on another thread while
+ * the world carries on stepping.
+ *
+ * Each entity is held as its sprite and its location at the start and end
+ * of the last step, so the renderer can interpolate between them. The
+ * aliens are held as the formation's origins and a copy of its alive
+ * bitmask. A snapshot's arrays are reused each time it is captured into, so
+ * capturing allocates nothing once they have grown to fit.
+ */
+public class WorldSnapshot {
+
+    /**
+     * The number of entities held
+     */
+    int count;
+    /**
+     * The sprite of each entity
+     */
+    Sprite[] sprites = new Sprite[64];
+    /**
+     * The location of each entity at the start and end of the last step
+     */
+    double[] px = new double[64], py = new double[64], x = new double[64], y = new double[64];
+
+    /**
+     * True if there is a formation of aliens to draw
+     */
+    boolean hasFormation;
+    /**
+     * The sprite currently shown for every alien
+     */
+    Sprite formationSprite;
+    /**
+     * The formation's origin at the start and end of the last step
+     */
+    double formationPX, formationPY, formationX, formationY;
+    /**
+     * The layout of the formation's grid
+     */
+    int columns, spacingX, spacingY;
+    /**
+     * A bit for each alien in the grid, set while the alien is alive
+     */
+    long[] alive = new long[0];
+
+    /**
+     * The level being played
+     */
+    int level;
+    /**
+     * True if play is held up waiting for a key press
+     */
+    boolean waiting;
+    /**
+     * The message to display while waiting
+     */
+    String message;
+
+    /**
+     * How far past the last step the simulation had got when the snapshot
+     * was captured, in steps
+     */
+    double interpolation;
+    /**
+     * The clock reading at the update the snapshot was captured after (ns)
+     */
+    long updatedAt;
+    /**
+     * The number of simulated nanoseconds in a step, divided by the number
+     * of simulated nanoseconds per real nanosecond
+     */
+    double realStepNanos = SimulationLoop.DEFAULT_STEP_NANOS;
+
+    /**
+     * Copy the drawable state of a world into this snapshot
+     *
+     * @param world The world to copy, which must not be stepped while it is
+     * being copied
+     */
+    public void capture(GameWorld world) {
+        List<Entity> entities = world.getEntities();
+
+        count = entities.size();
+        if (sprites.length < count) {
+            int capacity = Math.max(count, sprites.length * 2);
+
+            sprites = Arrays.copyOf(sprites, capacity);
+            px = Arrays.copyOf(px, capacity);
+            py = Arrays.copyOf(py, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities.get(i);
+
+            sprites[i] = entity.sprite;
+            px[i] = entity.getRenderX(0);
+            py[i] = entity.getRenderY(0);
+            x[i] = entity.getExactX();
+            y[i] = entity.getExactY();
+        }
+
+        AlienFormation formation = world.getFormation();
+        hasFormation = formation != null;
+        if (hasFormation) {
+            formation.capture(this);
+        }
+
+        level = world.getLevel();
+        waiting = world.isWaitingForKeyPress();
+        message = world.getMessage();
+    }
+
+    /**
+     * Note how the simulation stood when the snapshot was captured, so that
+     * the renderer can work out how far past the last step to draw
+     *
+     * @param loop The loop stepping the world
+     */
+    public void setTiming(SimulationLoop loop) {
+        interpolation = loop.getInterpolation();
+        realStepNanos = loop.getStepNanos() / loop.getTimeScale();
+        updatedAt = loop.getLastUpdateTime();
+    }
+
+    /**
+     * Get how far between the last two steps to draw at a given time,
+     * assuming the simulation has carried on at its usual pace since the
+     * snapshot was captured
+     *
+     * @param now The time the frame is drawn (ns), on the clock the loop
+     * was updated from
+     * @return How far between the two locations to draw, from 0 to 1
+     */
+    public double getInterpolation(long now) {
+        return Math.min(1, interpolation + (now - updatedAt) / realStepNanos);
+    }
+
+    /**
+     * Draw an entity part way between where it was at the start of the
+     * last step and where it is now
+     *
+     * @param g The graphics context on which to draw
+     * @param i The index of the entity
+     * @param alpha How far between the two locations to draw, from 0 to 1
+     */
+    void drawEntity(Graphics g, int i, double alpha) {
+        sprites[i].draw(g, getEntityX(i, alpha), getEntityY(i, alpha));
+    }
+
+    /**
+     * Get where an entity is drawn, part way between where it was at the
+     * start of the last step and where it is now
+     *
+     * @param i The index of the entity
+     * @param alpha How far between the two locations, from 0 to 1
+     * @return The x location the entity is drawn at
+     */
+    int getEntityX(int i, double alpha) {
+        return (int) (px[i] + (x[i] - px[i]) * alpha);
+    }
+
+    /**
+     * @param i The index of the entity
+     * @param alpha How far between the two locations, from 0 to 1
+     * @return The y location the entity is drawn at
+     */
+    int getEntityY(int i, double alpha) {
+        return (int) (py[i] + (y[i] - py[i]) * alpha);
+    }
+
+    /**
+     * Get where the formation's origin is drawn, part way between where it
+     * was at the start of the last step and where it is now
+     *
+     * @param alpha How far between the two locations, from 0 to 1
+     * @return The x location of the origin
+     */
+    double getFormationX(double alpha) {
+        return formationPX + (formationX - formationPX) * alpha;
+    }
+
+    /**
+     * @param alpha How far between the two locations, from 0 to 1
+     * @return The y location of the origin
+     */
+    double getFormationY(double alpha) {
+        return formationPY + (formationY - formationPY) * alpha;
+    }
+
+    /**
+     * Draw every alien alive part way between where the formation was at
+     * the start of the last step and where it is now
+     *
+     * @param g The graphics context on which to draw
+     * @param alpha How far between the two locations to draw, from 0 to 1
+     */
+    void drawFormation(Graphics g, double alpha) {
+        double renderX = getFormationX(alpha);
+        double renderY = getFormationY(alpha);
+
+        for (int word = 0; word < alive.length; word++) {
+            long bits = alive[word];
+
+            while (bits != 0) {
+                int alien = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                formationSprite.draw(g, (int) (renderX + (alien % columns) * spacingX),
+                        (int) (renderY + (alien / columns) * spacingY));
+            }
+        }
+    }
+
+    /**
+     * Draw the aliens alive that cross a rectangle, as
+     * {@link #drawFormation(Graphics, double)} draws them
+     *
+     * @param g The graphics context on which to draw
+     * @param alpha How far between the two locations to draw, from 0 to 1
+     * @param x The x location of the rectangle
+     * @param y The y location of the rectangle
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    void drawFormation(Graphics g, double alpha, int x, int y, int width, int height) {
+        double renderX = getFormationX(alpha);
+        double renderY = getFormationY(alpha);
+        int alienWidth = formationSprite.getWidth(), alienHeight = formationSprite.getHeight();
+
+        for (int word = 0; word < alive.length; word++) {
+            long bits = alive[word];
+
+            while (bits != 0) {
+                int alien = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int ax = (int) (renderX + (alien % columns) * spacingX);
+                int ay = (int) (renderY + (alien / columns) * spacingY);
+                if (ax < x + width && x < ax + alienWidth && ay < y + height && y < ay + alienHeight) {
+                    formationSprite.draw(g, ax, ay);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the area covered by every entity and alien, drawn part way
+     * between where they were at the start of the last step and where they
+     * are now
+     *
+     * @param region The region to add the bounds to
+     * @param alpha How far between the two locations, from 0 to 1
+     */
+    void addBounds(DirtyRegion region, double alpha) {
+        for (int i = 0; i < count; i++) {
+            region.add(getEntityX(i, alpha), getEntityY(i, alpha), sprites[i].getWidth(), sprites[i].getHeight());
+        }
+
+        if (!hasFormation) {
+            return;
+        }
+
+        double renderX = getFormationX(alpha);
+        double renderY = getFormationY(alpha);
+        int width = formationSprite.getWidth(), height = formationSprite.getHeight();
+
+        for (int word = 0; word < alive.length; word++) {
+            long bits = alive[word];
+
+            while (bits != 0) {
+                int alien = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                region.add((int) (renderX + (alien % columns) * spacingX),
+                        (int) (renderY + (alien / columns) * spacingY), width, height);
+            }
+        }
+    }
+
+    /**
+     * @return The number of entities held
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The level being played
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return True if play is held up waiting for a key press
+     */
+    public boolean isWaitingForKeyPress() {
+        return waiting;
+    }
+
+    /**
+     * @return The message to display while waiting
+     */
+    public String getMessage() {
+        return message;
+    }
+}